@@ -0,0 +1,24 @@
+package net.omniscimus.bukkit.proposalvoting.benchmarks;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Walks through the players and proposals of a {@link Fixture}, so that
+ * consecutive invocations do not hit the same data.
+ */
+@State(Scope.Thread)
+public class Cursor {
+
+    private long next;
+
+    /**
+     * Moves to the next invocation.
+     * 
+     * @return the number of this invocation.
+     */
+    long next() {
+        return next++;
+    }
+
+}
@@ -0,0 +1,175 @@
+package net.omniscimus.bukkit.proposalvoting.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import net.omniscimus.bukkit.proposalvoting.Electorate;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.Voter;
+import net.omniscimus.bukkit.proposalvoting.metrics.LatencyHistogram;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalRegistry;
+import net.omniscimus.bukkit.proposalvoting.model.VoterRegistry;
+import net.omniscimus.bukkit.proposalvoting.storage.PlayerDictionary;
+import net.omniscimus.bukkit.proposalvoting.storage.PlaytimeLedger;
+import net.omniscimus.bukkit.proposalvoting.storage.PlaytimeWindow;
+import net.omniscimus.bukkit.proposalvoting.storage.ProposalTextStore;
+import net.omniscimus.bukkit.proposalvoting.storage.WriteBehindSaver;
+import net.omniscimus.bukkit.proposalvoting.storage.YamlStorage;
+
+/**
+ * A synthetic plugin state: a number of players who have all opted in, are
+ * all online and all meet the playtime requirement, and a number of enabled
+ * proposals with three options each. The data is kept in a temporary
+ * directory, using the YAML storage backend. The state is installed into
+ * {@link Main} as if the plugin had been enabled, but no server is running.
+ */
+@State(Scope.Benchmark)
+public class Fixture {
+
+    static final String WEEK = "2016_42";
+    static final int OPTIONS = 3;
+
+    @Param({ "1000", "10000", "100000" })
+    int players;
+
+    @Param({ "10", "100", "1000" })
+    int proposals;
+
+    Path directory;
+    UUID[] playerIds;
+    YamlConfiguration data;
+    YamlStorage storage;
+    PlayerDictionary dictionary;
+    PlaytimeLedger ledger;
+    PlaytimeWindow window;
+    ProposalTextStore texts;
+    VoterRegistry voterRegistry;
+    ProposalRegistry proposalRegistry;
+    Voter[] voters;
+
+    @Setup
+    public void setUp() throws IOException, ReflectiveOperationException {
+        directory = Files.createTempDirectory("proposalvoting-benchmark");
+        data = new YamlConfiguration();
+        storage = new YamlStorage(data,
+                new WriteBehindSaver(stubPlugin(), new File(directory.toFile(), "data.yml"), data::saveToString,
+                        new LatencyHistogram()));
+        dictionary = new PlayerDictionary(new File(directory.toFile(), "players.dat"));
+        dictionary.open();
+        texts = new ProposalTextStore(new File(directory.toFile(), "proposal-texts.dat"));
+        texts.open();
+        ledger = new PlaytimeLedger(new File(directory.toFile(), "playtime"));
+        ledger.open();
+        window = new PlaytimeWindow(new File(directory.toFile(), "playtime-window.dat"), 86400000L, 7);
+        window.open(System.currentTimeMillis());
+
+        Random random = new Random(42L);
+        voterRegistry = new VoterRegistry(storage, dictionary);
+        playerIds = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            playerIds[i] = new UUID(random.nextLong(), random.nextLong());
+            voterRegistry.load(playerIds[i], true);
+            ledger.setPlaytime(voterRegistry.getIndex(playerIds[i]), WEEK, 3600000L);
+            window.addPlaytime(voterRegistry.getIndex(playerIds[i]), 3600000L);
+        }
+        resetProposals();
+
+        Electorate electorate = new Electorate(voterRegistry, window, 0L);
+        install("currentWeek", WEEK);
+        install("players", dictionary);
+        install("storage", storage);
+        install("playtime", ledger);
+        install("window", window);
+        install("voters", voterRegistry);
+        install("electorate", electorate);
+        electorate.rebuild();
+
+        voters = new Voter[players];
+        for (int i = 0; i < players; i++) {
+            voters[i] = new Voter(playerIds[i]);
+            Main.getSessions().add(voters[i]);
+        }
+    }
+
+    /**
+     * Replaces all proposals by new ones on which nobody has voted yet.
+     * 
+     * @throws ReflectiveOperationException
+     *             If the proposals could not be installed into Main.
+     */
+    void resetProposals() throws ReflectiveOperationException {
+        proposalRegistry = new ProposalRegistry(storage, dictionary, texts);
+        for (int id = 1; id <= proposals; id++) {
+            Proposal proposal = proposalRegistry.load(id);
+            proposal.load("Proposal " + id, "A synthetic proposal for benchmarking.", true);
+            for (int option = 1; option <= OPTIONS; option++)
+                proposal.loadOption(option, "Option " + option, 0);
+        }
+        install("proposals", proposalRegistry);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (UUID playerId : playerIds)
+            Main.getSessions().remove(playerId);
+        window.close();
+        ledger.close();
+        texts.close();
+        dictionary.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static void install(String name, Object value) throws ReflectiveOperationException {
+        Field field = Main.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(null, value);
+    }
+
+    /**
+     * Creates a Plugin which only has a name and a logger; anything else
+     * returns {@code null}.
+     */
+    private static Plugin stubPlugin() {
+        Logger logger = Logger.getLogger("ProposalVoting");
+        return (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[] { Plugin.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getName":
+                        return "ProposalVoting";
+                    case "getLogger":
+                        return logger;
+                    case "isEnabled":
+                        return false;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "ProposalVoting";
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,40 @@
+package net.omniscimus.bukkit.proposalvoting.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.omniscimus.bukkit.proposalvoting.Main;
+
+/**
+ * Handing out proposal IDs, and listing the proposals.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProposalBenchmark {
+
+    @Benchmark
+    public int reserveId(Fixture fixture) {
+        return Main.getProposals().reserveId();
+    }
+
+    @Benchmark
+    public int[] getAllIds(Fixture fixture) {
+        return Main.getProposals().getIds(false);
+    }
+
+    @Benchmark
+    public int[] getEnabledIds(Fixture fixture) {
+        return Main.getProposals().getIds(true);
+    }
+
+}
@@ -0,0 +1,57 @@
+package net.omniscimus.bukkit.proposalvoting.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+
+/**
+ * Reads and writes of the playtime ledger and the playtime window, which hold
+ * the playtime, and of the YAML storage backend, with the snapshot that is
+ * taken of it on every save.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+
+    @Benchmark
+    public long readPlaytime(Fixture fixture, Cursor cursor) throws IOException {
+        return fixture.ledger.getPlaytime(fixture.voters[(int) (cursor.next() % fixture.players)].getIndex(),
+                Fixture.WEEK);
+    }
+
+    @Benchmark
+    public long writePlaytime(Fixture fixture, Cursor cursor) throws IOException {
+        return fixture.ledger.addPlaytime(fixture.voters[(int) (cursor.next() % fixture.players)].getIndex(),
+                Fixture.WEEK, 1L);
+    }
+
+    @Benchmark
+    public long readRecentPlaytime(Fixture fixture, Cursor cursor) {
+        return fixture.window.getPlaytime(fixture.voters[(int) (cursor.next() % fixture.players)].getIndex());
+    }
+
+    @Benchmark
+    public void writeProposal(Fixture fixture, Cursor cursor) {
+        Proposal proposal = fixture.proposalRegistry.get(1 + (int) (cursor.next() % fixture.proposals));
+        fixture.storage.proposalChanged(proposal);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String snapshot(Fixture fixture) {
+        return fixture.data.saveToString();
+    }
+
+}
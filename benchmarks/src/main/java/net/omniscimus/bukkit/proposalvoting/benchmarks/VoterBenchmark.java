@@ -0,0 +1,116 @@
+package net.omniscimus.bukkit.proposalvoting.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.Voter;
+
+/**
+ * The paths that are taken for the players who are online: voting, saving
+ * playtime and looking up their sessions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoterBenchmark {
+
+    /**
+     * Measures votes that are cast: every invocation is a player's first vote
+     * on a proposal.
+     */
+    @Benchmark
+    public boolean voteAccepted(NewVote vote) {
+        return vote.voter.vote(vote.proposalId, vote.optionId);
+    }
+
+    /**
+     * Measures votes that are rejected because the player has voted on the
+     * proposal already.
+     */
+    @Benchmark
+    public boolean voteRejected(Fixture fixture, CastVotes votes, Cursor cursor) {
+        int player = (int) (cursor.next() % fixture.players);
+        return fixture.voters[player].vote(votes.getProposalId(fixture, player), 1);
+    }
+
+    @Benchmark
+    public Voter updatePlaytime(Fixture fixture, Cursor cursor) throws IOException {
+        Voter voter = fixture.voters[(int) (cursor.next() % fixture.players)];
+        voter.setLoginTime(1000L);
+        voter.setLogoutTime(2000L);
+        voter.updatePlaytime();
+        return voter;
+    }
+
+    @Benchmark
+    public Voter getVoter(Fixture fixture, Cursor cursor) {
+        return Main.getSessions().get(fixture.playerIds[(int) (cursor.next() % fixture.players)]);
+    }
+
+    /**
+     * Picks a player and a proposal on which they have not voted yet before
+     * every invocation. Invocation i lets player i vote on the first proposal,
+     * until every player has voted; then it moves on to the next proposal.
+     * Once every player has voted on every proposal, the proposals are
+     * replaced by new ones, outside of the measurement.
+     */
+    @State(Scope.Thread)
+    public static class NewVote {
+
+        private long next;
+        Voter voter;
+        int proposalId;
+        int optionId;
+
+        @Setup(Level.Invocation)
+        public void pick(Fixture fixture) throws ReflectiveOperationException {
+            if (next == (long) fixture.players * fixture.proposals) {
+                fixture.resetProposals();
+                next = 0;
+            }
+            voter = fixture.voters[(int) (next % fixture.players)];
+            proposalId = 1 + (int) (next / fixture.players);
+            optionId = 1 + (int) (next % Fixture.OPTIONS);
+            next++;
+        }
+
+    }
+
+    /**
+     * Lets every player vote on one proposal before the measurement, so that
+     * voting on it again is rejected.
+     */
+    @State(Scope.Thread)
+    public static class CastVotes {
+
+        @Setup(Level.Trial)
+        public void cast(Fixture fixture) {
+            for (int player = 0; player < fixture.players; player++) {
+                if (!fixture.voters[player].vote(getProposalId(fixture, player), 1))
+                    throw new IllegalStateException("Player " + player + " could not vote");
+            }
+        }
+
+        int getProposalId(Fixture fixture, int player) {
+            return 1 + player % fixture.proposals;
+        }
+
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * JMH benchmarks for the storage, voting and playtime paths of the plugin.
+ */
+package net.omniscimus.bukkit.proposalvoting.benchmarks;
@@ -0,0 +1,59 @@
+package net.omniscimus.bukkit.proposalvoting;
+
+/**
+ * The type of an argument that a {@link PluginCommand} declares. The
+ * {@link CommandTree} checks the arguments against these types before the
+ * command is run, so the command can read them without checking again.
+ */
+public enum ArgumentType {
+
+    /**
+     * A whole number.
+     */
+    INTEGER(false),
+    /**
+     * A single word.
+     */
+    WORD(false),
+    /**
+     * One or more whole numbers; only allowed as the last argument.
+     */
+    INTEGERS(true),
+    /**
+     * One or more words, e.g. a title; only allowed as the last argument.
+     */
+    TEXT(true);
+
+    private final boolean rest;
+
+    private ArgumentType(boolean rest) {
+        this.rest = rest;
+    }
+
+    /**
+     * Gets whether this argument takes all remaining words.
+     * 
+     * @return {@code true} if it takes the rest of the command.
+     */
+    public boolean isRest() {
+        return rest;
+    }
+
+    /**
+     * Checks if a word is a valid value of this type.
+     * 
+     * @param word
+     *            The word.
+     * @return {@code true} if it is valid.
+     */
+    public boolean accepts(String word) {
+        switch (this) {
+        case INTEGER:
+        case INTEGERS:
+            return CommandArguments.parseInt(word) != CommandArguments.INVALID;
+        default:
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package net.omniscimus.bukkit.proposalvoting;
+
+/**
+ * The arguments of a command: a view of the words that follow the
+ * subcommand, without copying them out of the array that Bukkit passed.
+ * Numbers are parsed without throwing exceptions; invalid numbers are turned
+ * away by the {@link CommandTree} before a command sees them.
+ */
+public final class CommandArguments {
+
+    /**
+     * Returned by {@link #parseInt(String)} for words that are not a whole
+     * number in the range of an int.
+     */
+    static final long INVALID = Long.MIN_VALUE;
+
+    private final String[] words;
+    private final int offset;
+
+    /**
+     * Creates a new CommandArguments instance.
+     * 
+     * @param words
+     *            All words of the command.
+     * @param offset
+     *            The index of the first argument in {@code words}.
+     */
+    public CommandArguments(String[] words, int offset) {
+        this.words = words;
+        this.offset = offset;
+    }
+
+    /**
+     * Gets the number of arguments.
+     * 
+     * @return the amount of arguments.
+     */
+    public int size() {
+        return words.length - offset;
+    }
+
+    /**
+     * Gets an argument.
+     * 
+     * @param index
+     *            The index of the argument.
+     * @return the argument.
+     */
+    public String get(int index) {
+        return words[offset + index];
+    }
+
+    /**
+     * Checks if an argument is a whole number.
+     * 
+     * @param index
+     *            The index of the argument.
+     * @return {@code true} if the argument can be read by
+     *         {@link #getInt(int)}.
+     */
+    public boolean isInt(int index) {
+        return parseInt(get(index)) != INVALID;
+    }
+
+    /**
+     * Gets an argument as a whole number. This should only be called for
+     * arguments that have been declared as numbers, or checked with
+     * {@link #isInt(int)}.
+     * 
+     * @param index
+     *            The index of the argument.
+     * @return the number, or 0 if the argument is not a number.
+     */
+    public int getInt(int index) {
+        long value = parseInt(get(index));
+        return value == INVALID ? 0 : (int) value;
+    }
+
+    /**
+     * Gets the arguments from a certain index on as whole numbers.
+     * 
+     * @param from
+     *            The index of the first argument.
+     * @return a new array containing the numbers.
+     */
+    public int[] getInts(int from) {
+        int[] values = new int[size() - from];
+        for (int i = 0; i < values.length; i++)
+            values[i] = getInt(from + i);
+        return values;
+    }
+
+    /**
+     * Gets the arguments from a certain index on, with a space in between
+     * each of them.
+     * 
+     * @param from
+     *            The index of the first argument.
+     * @return the text.
+     */
+    public String getText(int from) {
+        StringBuilder text = new StringBuilder();
+        for (int i = offset + from; i < words.length; i++) {
+            if (text.length() > 0)
+                text.append(' ');
+            text.append(words[i]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Parses a whole number in the range of an int.
+     * 
+     * @param word
+     *            The word to parse.
+     * @return the number, or {@link #INVALID} if the word is not a number.
+     */
+    static long parseInt(String word) {
+        int length = word.length();
+        int start = length > 0 && (word.charAt(0) == '-' || word.charAt(0) == '+') ? 1 : 0;
+        if (start == length || length - start > 10)
+            return INVALID;
+        long value = 0;
+        for (int i = start; i < length; i++) {
+            char c = word.charAt(i);
+            if (c < '0' || c > '9')
+                return INVALID;
+            value = value * 10 + (c - '0');
+        }
+        if (word.charAt(0) == '-')
+            value = -value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? INVALID : value;
+    }
+
+}
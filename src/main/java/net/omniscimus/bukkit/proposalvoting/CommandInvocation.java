@@ -0,0 +1,77 @@
+package net.omniscimus.bukkit.proposalvoting;
+
+import org.bukkit.command.CommandSender;
+
+/**
+ * One use of a command: the command that was found in the
+ * {@link CommandTree}, who sent it and with which arguments. If the command
+ * could not be found, or the checks of the tree failed, it holds the reason
+ * instead.
+ */
+public final class CommandInvocation {
+
+    private final String name;
+    private final PluginCommand command;
+    private final CommandSender sender;
+    private final CommandArguments arguments;
+    private final CommandResult check;
+
+    CommandInvocation(String name, PluginCommand command, CommandSender sender, CommandArguments arguments,
+            CommandResult check) {
+        this.name = name;
+        this.command = command;
+        this.sender = sender;
+        this.arguments = arguments;
+        this.check = check;
+    }
+
+    /**
+     * Gets the name under which the execution time is recorded.
+     * 
+     * @return the name of the command.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the sender of the command.
+     * 
+     * @return the CommandSender.
+     */
+    public CommandSender getSender() {
+        return sender;
+    }
+
+    /**
+     * Gets whether the command changes data that has to be stored.
+     * 
+     * @return {@code true} if the command needs the storage.
+     * @see PluginCommand#needsStorage()
+     */
+    public boolean needsStorage() {
+        return check == CommandResult.SUCCESS && command.needsStorage();
+    }
+
+    /**
+     * Gets whether the command creates, changes or removes proposals.
+     * 
+     * @return {@code true} if the command changes proposals.
+     * @see PluginCommand#changesProposals()
+     */
+    public boolean changesProposals() {
+        return check == CommandResult.SUCCESS && command.changesProposals();
+    }
+
+    /**
+     * Runs the command, unless the checks of the tree failed.
+     * 
+     * @return the result of the command, or of the checks.
+     */
+    public CommandResult run() {
+        if (check != CommandResult.SUCCESS)
+            return check;
+        return command.run(sender, arguments);
+    }
+
+}
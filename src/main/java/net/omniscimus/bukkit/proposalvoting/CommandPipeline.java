@@ -0,0 +1,224 @@
+package net.omniscimus.bukkit.proposalvoting;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Executes PluginCommands. Commands that only read the in-memory data run
+ * immediately; commands that use stored data run on a bounded pool of worker
+ * threads. The commands of one sender run one after another, in the order in
+ * which they were sent, so that two quick commands of the same player can not
+ * race: while a sender has commands waiting or running in a lane, all of their
+ * later commands join that lane, even those that would otherwise run
+ * immediately. Commands that change proposals share a single lane, so that
+ * those of different senders can not race either; one that joins the lane of
+ * its sender instead still runs while holding the lock of that shared lane.
+ */
+public class CommandPipeline {
+
+    /**
+     * The messages that are sent to the command sender when their command
+     * could not be executed at all. The other reasons are
+     * {@link CommandResult}s.
+     */
+    private static final String BUSY = ChatColor.RED + "The server is busy; please try again in a moment.",
+            INTERNAL_ERROR = ChatColor.RED + "An internal error occurred while executing this command.";
+
+    private final Plugin plugin;
+    private final ThreadPoolExecutor workers;
+    private final int maxPerSender;
+
+    /**
+     * The queues of commands per sender that are waiting or running. Guarded
+     * by itself.
+     */
+    private final Map<Object, Lane> lanes = new HashMap<>();
+    /**
+     * The lane in which each sender has commands waiting or running. Guarded
+     * by {@link #lanes}.
+     */
+    private final Map<Object, Lane> senderLanes = new HashMap<>();
+    /**
+     * The key of the lane of the commands that change proposals.
+     */
+    private final Object proposalsKey = new Object();
+
+    /**
+     * Creates a new CommandPipeline instance and starts its worker threads.
+     * 
+     * @param plugin
+     *            The plugin that owns the commands.
+     * @param threads
+     *            The number of worker threads.
+     * @param queueSize
+     *            The number of senders whose commands may wait for a worker.
+     * @param maxPerSender
+     *            The number of commands that one sender may have waiting.
+     */
+    public CommandPipeline(Plugin plugin, int threads, int queueSize, int maxPerSender) {
+        this.plugin = plugin;
+        this.maxPerSender = maxPerSender;
+        AtomicInteger count = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread thread = new Thread(r, plugin.getName() + " command worker " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Executes a command, in the background if it uses stored data or if the
+     * sender still has commands waiting in the background. This must be
+     * called on the main server thread.
+     * 
+     * @param command
+     *            The use of the command to execute.
+     */
+    public void dispatch(CommandInvocation command) {
+        CommandSender sender = command.getSender();
+        Object senderKey = getKey(sender);
+        Lane lane;
+        boolean started = false;
+        synchronized (lanes) {
+            lane = senderLanes.get(senderKey);
+            if (lane == null && command.needsStorage()) {
+                Object key = command.changesProposals() ? proposalsKey : senderKey;
+                lane = lanes.get(key);
+                if (lane == null) {
+                    lane = new Lane(key);
+                    lanes.put(key, lane);
+                    started = true;
+                }
+            }
+            if (lane != null) {
+                if (lane.queue.size() >= maxPerSender) {
+                    sender.sendMessage(BUSY);
+                    return;
+                }
+                lane.queue.add(command);
+                lane.senders.merge(senderKey, 1, Integer::sum);
+                senderLanes.put(senderKey, lane);
+            }
+        }
+        if (lane == null) {
+            execute(command);
+            return;
+        }
+        if (!started)
+            return;
+        try {
+            workers.execute(lane);
+        } catch (RejectedExecutionException e) {
+            synchronized (lanes) {
+                lanes.remove(lane.key);
+                senderLanes.remove(senderKey);
+            }
+            sender.sendMessage(BUSY);
+        }
+    }
+
+    /**
+     * Gets the key under which the commands of a sender are kept apart.
+     */
+    private static Object getKey(CommandSender sender) {
+        return sender instanceof Player ? ((Player) sender).getUniqueId() : sender;
+    }
+
+    /**
+     * Runs a command on the current thread, and tells the sender if it failed.
+     * The execution time is recorded under the command's name.
+     * 
+     * @param command
+     *            The use of the command to run.
+     */
+    private void execute(CommandInvocation command) {
+        long start = System.nanoTime();
+        try {
+            String message;
+            if (command.changesProposals()) {
+                synchronized (proposalsKey) {
+                    message = command.run().getMessage();
+                }
+            } else {
+                message = command.run().getMessage();
+            }
+            if (message != null)
+                PluginCommand.reply(command.getSender(), message);
+        } catch (RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not execute a command of " + command.getSender().getName(),
+                    e);
+            PluginCommand.reply(command.getSender(), INTERNAL_ERROR);
+        } finally {
+            Main.getMetrics().getCommand(command.getName()).recordSince(start);
+        }
+    }
+
+    /**
+     * Runs the commands that are still waiting, and stops the worker threads.
+     */
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS))
+                plugin.getLogger().warning("Some commands were still running at shutdown.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The commands of one sender, or the commands that change proposals, which
+     * are run one at a time by a single worker.
+     */
+    private class Lane implements Runnable {
+
+        private final Object key;
+        private final ArrayDeque<CommandInvocation> queue = new ArrayDeque<>();
+        /**
+         * The number of commands that each sender has waiting or running in
+         * this lane.
+         */
+        private final Map<Object, Integer> senders = new HashMap<>();
+
+        Lane(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                CommandInvocation command;
+                synchronized (lanes) {
+                    command = queue.poll();
+                    if (command == null) {
+                        lanes.remove(key);
+                        return;
+                    }
+                }
+                execute(command);
+                synchronized (lanes) {
+                    Object senderKey = getKey(command.getSender());
+                    if (senders.merge(senderKey, -1, Integer::sum) == 0) {
+                        senders.remove(senderKey);
+                        senderLanes.remove(senderKey);
+                    }
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+package net.omniscimus.bukkit.proposalvoting;
+
+import org.bukkit.ChatColor;
+
+/**
+ * The outcome of a {@link PluginCommand}. A command that could not be executed
+ * returns the reason, and the {@link CommandPipeline} tells the sender.
+ */
+public enum CommandResult {
+
+    /**
+     * The command was executed; it has told the sender what happened.
+     */
+    SUCCESS(null),
+    /**
+     * The command syntax is incorrect, e.g. a number was expected.
+     */
+    WRONG_SYNTAX(ChatColor.RED + "Wrong command syntax."),
+    /**
+     * The sender is of an inappropriate type, e.g. it is a console while it
+     * should have been a player.
+     */
+    WRONG_SENDER_TYPE(ChatColor.RED + "You can't use this command from here."),
+    /**
+     * The sender used too many or too few arguments.
+     */
+    WRONG_ARGUMENTS_NUMBER(ChatColor.RED + "Wrong number of arguments."),
+    /**
+     * The sender does not have permission to execute the command.
+     */
+    NO_PERMISSION(ChatColor.RED + "You don't have permission to do that.");
+
+    private final String message;
+
+    private CommandResult(String message) {
+        this.message = message;
+    }
+
+    /**
+     * Gets the message that is sent to the command sender.
+     * 
+     * @return the message, or {@code null} if the command was executed.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+}
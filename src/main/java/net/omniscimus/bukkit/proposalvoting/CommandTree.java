@@ -0,0 +1,233 @@
+package net.omniscimus.bukkit.proposalvoting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+/**
+ * Finds the command that a sender used. The commands are registered under
+ * paths of subcommands, e.g. {@code proposal edit}, which form a prefix tree:
+ * the words of a command are followed down the tree as far as they match, and
+ * the remaining words are the arguments of the command that was registered
+ * there. The arguments, the permission and the sender type that the command
+ * declares are checked before it is run.
+ * <p>
+ * The subcommands of every node are kept in alphabetical order, so the ones
+ * that start with what a sender is typing are found in a single range, for tab
+ * completion. Only the subcommands that the sender may use are suggested.
+ * <p>
+ * The tree is built once, before it is used, and is only read afterwards, so
+ * it may be used on any thread.
+ */
+public class CommandTree {
+
+    private final Node root = new Node("");
+
+    /**
+     * Registers a command.
+     * 
+     * @param path
+     *            The subcommands under which to register the command,
+     *            separated by spaces, or an empty String for the command that
+     *            is used without subcommands.
+     * @param command
+     *            The command.
+     * @throws IllegalArgumentException
+     *             If a command is already registered under this path, or if
+     *             the command declares an argument that takes the rest of the
+     *             command anywhere but at the end.
+     */
+    public void register(String path, PluginCommand command) {
+        Node node = root;
+        if (!path.isEmpty()) {
+            for (String word : path.split(" ")) {
+                Node child = node.children.get(word);
+                if (child == null) {
+                    child = new Node(node == root ? word : node.name + " " + word);
+                    node.children.put(word, child);
+                }
+                node = child;
+            }
+        }
+        if (node.command != null)
+            throw new IllegalArgumentException("A command is already registered under '" + path + "'");
+        ArgumentType[] arguments = command.getArguments();
+        for (int i = 0; i < arguments.length - 1; i++) {
+            if (arguments[i].isRest())
+                throw new IllegalArgumentException("Only the last argument may take the rest of the command");
+        }
+        node.command = command;
+        node.arguments = arguments;
+        node.required = command.getRequiredArguments();
+        if (node == root)
+            node.name = command.getName();
+    }
+
+    /**
+     * Finds the command that a sender used, and checks if they may use it
+     * like this.
+     * 
+     * @param sender
+     *            The sender of the command.
+     * @param words
+     *            The words that followed the name of the command.
+     * @return the invocation of the command, which holds the reason if it can
+     *         not be run.
+     */
+    public CommandInvocation parse(CommandSender sender, String[] words) {
+        Node node = root;
+        int depth = 0;
+        while (depth < words.length) {
+            Node child = node.children.get(words[depth]);
+            if (child == null)
+                break;
+            node = child;
+            depth++;
+        }
+        CommandArguments arguments = new CommandArguments(words, depth);
+        // A word that is not a subcommand, where the command takes no
+        // arguments, is a mistyped subcommand.
+        if (node.command == null || depth < words.length && node.arguments.length == 0 && !node.children.isEmpty())
+            return new CommandInvocation(node == root ? "unknown" : node.name, null, sender, arguments,
+                    CommandResult.WRONG_SYNTAX);
+        return new CommandInvocation(node.name, node.command, sender, arguments, node.check(sender, arguments));
+    }
+
+    /**
+     * Suggests completions for the word that a sender is typing: the
+     * subcommands that may follow the words before it, and the values that the
+     * command registered there suggests for its argument. Nothing but the tree
+     * and the commands is read, so this is cheap enough to run on every
+     * keystroke.
+     * 
+     * @param sender
+     *            The sender of the command.
+     * @param words
+     *            The words that followed the name of the command; the last
+     *            one is incomplete, and may be empty.
+     * @return the completions.
+     */
+    public List<String> complete(CommandSender sender, String[] words) {
+        List<String> completions = new ArrayList<>();
+        if (words.length == 0)
+            return completions;
+        Node node = root;
+        int depth = 0;
+        while (depth < words.length - 1) {
+            Node child = node.children.get(words[depth]);
+            if (child == null)
+                break;
+            node = child;
+            depth++;
+        }
+        String typing = words[words.length - 1];
+        if (depth == words.length - 1) {
+            for (Map.Entry<String, Node> entry : node.children
+                    .subMap(typing, true, typing + Character.MAX_VALUE, false).entrySet()) {
+                if (entry.getValue().isVisibleTo(sender))
+                    completions.add(entry.getKey());
+            }
+        }
+        int argument = words.length - 1 - depth;
+        if (node.command != null && node.mayUse(sender) && (argument < node.arguments.length
+                || node.arguments.length > 0 && node.arguments[node.arguments.length - 1].isRest()))
+            completions.addAll(node.command.complete(sender, new CommandArguments(words, depth)));
+        return completions;
+    }
+
+    /**
+     * Gets the subcommands that a sender may use, e.g. for a help message.
+     * The command that is used without subcommands is not included.
+     * 
+     * @param sender
+     *            The sender of the command.
+     * @return the paths of the subcommands, in alphabetical order.
+     */
+    public List<String> getUsablePaths(CommandSender sender) {
+        List<String> paths = new ArrayList<>();
+        for (Node child : root.children.values())
+            child.addUsablePaths(sender, paths);
+        return paths;
+    }
+
+    /**
+     * A subcommand, and the command that is registered under it, if any.
+     */
+    private static final class Node {
+
+        private String name;
+        private final NavigableMap<String, Node> children = new TreeMap<>();
+        private PluginCommand command;
+        private ArgumentType[] arguments = new ArgumentType[0];
+        private int required;
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Checks if a sender may use the command of this node with certain
+         * arguments.
+         */
+        private CommandResult check(CommandSender sender, CommandArguments args) {
+            if (command.isPlayerOnly() && !(sender instanceof Player))
+                return CommandResult.WRONG_SENDER_TYPE;
+            if (!hasPermission(sender))
+                return CommandResult.NO_PERMISSION;
+            int size = args.size();
+            boolean rest = arguments.length > 0 && arguments[arguments.length - 1].isRest();
+            if (size < required || size > arguments.length && !rest)
+                return CommandResult.WRONG_ARGUMENTS_NUMBER;
+            for (int i = 0; i < size; i++) {
+                ArgumentType type = arguments[Math.min(i, arguments.length - 1)];
+                if (!type.accepts(args.get(i)))
+                    return CommandResult.WRONG_SYNTAX;
+            }
+            return CommandResult.SUCCESS;
+        }
+
+        private boolean hasPermission(CommandSender sender) {
+            String permission = command.getPermission();
+            return permission == null || sender.hasPermission(permission);
+        }
+
+        /**
+         * Checks if a sender may use the command of this node at all.
+         */
+        private boolean mayUse(CommandSender sender) {
+            return (!command.isPlayerOnly() || sender instanceof Player) && hasPermission(sender);
+        }
+
+        /**
+         * Checks if a sender may use the command of this node, or of one of
+         * the nodes below it.
+         */
+        private boolean isVisibleTo(CommandSender sender) {
+            if (command != null && mayUse(sender))
+                return true;
+            for (Node child : children.values()) {
+                if (child.isVisibleTo(sender))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Adds the paths of this node and the nodes below it whose commands a
+         * sender may use.
+         */
+        private void addUsablePaths(CommandSender sender, List<String> paths) {
+            if (command != null && mayUse(sender))
+                paths.add(name);
+            for (Node child : children.values())
+                child.addUsablePaths(sender, paths);
+        }
+
+    }
+
+}
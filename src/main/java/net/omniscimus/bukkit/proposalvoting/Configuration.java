@@ -1,97 +1,99 @@
 package net.omniscimus.bukkit.proposalvoting;
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.UUID;
+import java.io.File;
 
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
+import net.omniscimus.bukkit.proposalvoting.storage.JournaledStorage;
+import net.omniscimus.bukkit.proposalvoting.storage.SqliteStorage;
+import net.omniscimus.bukkit.proposalvoting.storage.Storage;
+import net.omniscimus.bukkit.proposalvoting.storage.VoteJournal;
+import net.omniscimus.bukkit.proposalvoting.storage.WriteBehindSaver;
+import net.omniscimus.bukkit.proposalvoting.storage.YamlStorage;
+
 /**
  * Represents the plugin's configuration. These values are stored in the file
- * 'config.yml'.
+ * 'config.yml'. The plugin's data is kept by the {@link Storage} backend that
+ * is selected here.
  */
 public class Configuration {
 
     // TODO config version
     // TODO don't store playtime in milliseconds, lol
 
-    private static Main plugin;
     private static FileConfiguration config;
+    private static WriteBehindSaver saver;
 
     /**
-     * Sets the FileConfiguration to use for the configuration options, and
-     * keeps the Main instance for saving it.
+     * Sets the FileConfiguration to use for the configuration options.
      * 
-     * @param config
-     *            the FileConfiguration to use
+     * @param plugin
+     *            the Main instance whose FileConfiguration to use
      */
     public static void init(Main plugin) {
-        Configuration.plugin = plugin;
         Configuration.config = plugin.getConfig();
+        saver = new WriteBehindSaver(plugin, new File(plugin.getDataFolder(), "config.yml"), () -> {
+            synchronized (config) {
+                return config.saveToString();
+            }
+        }, Main.getMetrics().getStorageFlushes());
     }
 
     /**
-     * Saves the configuration values to the file.
+     * Marks the configuration values as changed. They will be saved to the
+     * file in the background at the end of the current flush interval.
      */
     public static void saveConfig() {
-        plugin.saveConfig();
+        saver.markDirty();
+    }
+
+    /**
+     * Saves all changed configuration values to the file immediately, and
+     * stops saving in the background. Should be called when the plugin
+     * disables, after the storage has been closed.
+     */
+    public static void close() {
+        saver.close();
     }
 
     /**
-     * Gets whether a player has opted in to the ProposalVoting system, thereby
-     * approving of logging his playtime.
+     * Gets the configured amount of time during which changes are collected
+     * before they are saved to the file.
      * 
-     * @param playerId
-     *            The Unique User ID of this player, as generated by Minecraft.
-     * @return {@code true} if the player has opted in.
+     * @return the flush interval, in milliseconds.
      */
-    public static boolean playerHasOptedIn(UUID playerId) {
-        return config.getBoolean("player." + playerId + ".opt-in", false);
+    public static long getFlushInterval() {
+        return config.getLong("storage.flush-interval", 5000L);
     }
 
     /**
-     * Changes whether a player has opted in to the ProposalVoting system,
-     * thereby approving of logging his playtime.
+     * Gets the configured amount of time between two checkpoints, at which
+     * the playtime of the online players is saved.
      * 
-     * @param playerId
-     *            The Unique User ID of this player, as generated by Minecraft.
-     * @param optIn
-     *            A boolean indicating whether this player has opted in.
+     * @return the checkpoint interval, in milliseconds.
      */
-    public static void setPlayerOptIn(UUID playerId, boolean optIn) {
-        config.set("player." + playerId + ".opt-in", optIn);
-        saveConfig();
+    public static long getCheckpointInterval() {
+        return config.getLong("storage.checkpoint-interval", 60000L);
     }
 
     /**
-     * Gets the player's amount of played time over the specified week.
+     * Gets the configured number of most recent weeks whose playtime is kept
+     * in the live ledger. Older weeks are archived.
      * 
-     * @param playerId
-     *            The Unique User ID of this player, as generated by Minecraft.
-     * @param year_week
-     *            A String indicating the year and week over which to look up
-     *            the playtime, formatted as in %y_%w.
-     * @return the player's amount of played time, in milliseconds.
+     * @return the archive horizon, in weeks; at least 1.
      */
-    public static long getPlaytime(UUID playerId, String year_week) {
-        return config.getLong("playtime." + year_week + "." + playerId, 0L);
+    public static int getArchiveHorizon() {
+        return Math.max(1, config.getInt("storage.playtime-archive.horizon", 4));
     }
 
     /**
-     * Changes the player's amount of played time over the specified week.
+     * Gets whether archived weeks should only be kept as every player's total
+     * playtime, instead of per week.
      * 
-     * @param playerId
-     *            The Unique User ID of this player, as generated by Minecraft.
-     * @param year_week
-     *            A String indicating the year and week over which to look up
-     *            the playtime, formatted as in %y_%w.
-     * @param playtime
-     *            The player's amount of played time, in milliseconds.
+     * @return {@code true} if only the totals should be kept.
      */
-    public static void setPlaytime(UUID playerId, String year_week, long playtime) {
-        config.set("playtime." + year_week + "." + playerId, playtime);
-        saveConfig();
+    public static boolean isArchiveAggregateOnly() {
+        return config.getBoolean("storage.playtime-archive.aggregate-only", false);
     }
 
     /**
@@ -105,254 +107,77 @@ public class Configuration {
     }
 
     /**
-     * Changes the configured amount of playtime that is required for a player
-     * to be allowed to vote.
+     * Gets the configured length of the buckets in which the playtime window
+     * counts playtime.
      * 
-     * @param playtime
-     *            The playtime requirement, in milliseconds.
+     * @return the bucket length, in milliseconds: an hour if the granularity
+     *         is hourly, a day otherwise.
      */
-    public static void setPlaytimeRequirement(long playtime) {
-        config.set("electorate-requirements.playtime", playtime);
-        saveConfig();
+    public static long getWindowBucketLength() {
+        String granularity = config.getString("electorate-requirements.granularity", "daily");
+        return "hourly".equalsIgnoreCase(granularity) ? 3600000L : 86400000L;
     }
 
     /**
-     * Gets an ID that may be used for a new proposal.
+     * Gets the configured number of buckets in the playtime window: the
+     * configured window length, rounded up to whole buckets.
      * 
-     * @return the next still unused proposal ID.
+     * @return the number of buckets, including the current one; at least 1.
      */
-    public static int getNextProposalId() {
-        ConfigurationSection proposals = config.getConfigurationSection("proposals");
-        if (proposals == null)
-            return 1;
-        int highestId = 0;
-        for (String idStr : proposals.getKeys(false)) {
-            int id = Integer.parseInt(idStr);
-            if (id > highestId)
-                highestId = id;
-        }
-        return highestId++;
+    public static int getWindowBuckets() {
+        long window = config.getLong("electorate-requirements.window", 604800000L);
+        long bucket = getWindowBucketLength();
+        return (int) Math.max(1L, Math.min(Integer.MAX_VALUE, (window + bucket - 1) / bucket));
     }
 
     /**
-     * Gets all used proposal IDs.
+     * Changes the configured amount of playtime that is required for a player
+     * to be allowed to vote. Use {@link Electorate#setRequirement(long)}
+     * instead, so that the electorate is updated as well; this is what
+     * {@code /pv requirement} does.
      * 
-     * @param active
-     *            A boolean indicating if only the IDs of the currently active
-     *            proposals should be returned.
-     * @return a Set containing used proposal IDs, in String format; these
-     *         should be parsable to Integers.
+     * @param playtime
+     *            The playtime requirement, in milliseconds.
      */
-    public Set<String> getProposalIds(boolean active) {
-        ConfigurationSection propSection = config.getConfigurationSection("proposals.");
-        if (propSection == null)
-            return new HashSet<String>();
-        Set<String> proposals = propSection.getKeys(false);
-        if (!active)
-            return proposals;
-        else {
-            Set<String> activeProposals = new HashSet<>();
-            for (String s : proposals) {
-                if (propSection.getBoolean(s + ".active", false))
-                    activeProposals.add(s);
-            }
-            return activeProposals;
+    public static void setPlaytimeRequirement(long playtime) {
+        synchronized (config) {
+            config.set("electorate-requirements.playtime", playtime);
         }
-    }
-
-    /**
-     * Gets the title of a certain proposal.
-     * 
-     * @param id
-     *            The ID of the proposal of which the title should be looked up.
-     * @return the title of the proposal
-     */
-    public static String getProposalTitle(int id) {
-        return config.getString("proposals." + id + ".title");
-    }
-
-    /**
-     * Changes the title of a certain proposal.
-     * 
-     * @param id
-     *            The ID of the proposal of which the title should be changed.
-     * @param newTitle
-     *            The new title for the proposal.
-     */
-    public static void updateProposalTitle(int id, String newTitle) {
-        config.set("proposals." + id + ".title", newTitle);
-        saveConfig();
-    }
-
-    /**
-     * Gets the description of a certain proposal.
-     * 
-     * @param id
-     *            The ID of the proposal of which the description should be
-     *            looked up.
-     * @return the description of the proposal
-     */
-    public static String getProposalDescription(int id) {
-        return config.getString("proposals." + id + ".description");
-    }
-
-    /**
-     * Changes the description of a certain proposal.
-     * 
-     * @param id
-     *            The ID of the proposal of which the description should be
-     *            changed.
-     * @param newDescription
-     *            The new description for the proposal.
-     */
-    public static void updateProposalDescription(int id, String newDescription) {
-        config.set("proposals." + id + ".description", newDescription);
-        saveConfig();
-    }
-
-    /**
-     * Gets all option IDs for a certain proposal.
-     * 
-     * @param proposalId
-     *            The ID of the proposal.
-     * @return a Set containing used option IDs, in String format; these should
-     *         be parsable to Integers.
-     */
-    public Set<String> getProposalOptionIds(int proposalId) {
-        ConfigurationSection optionsSection = config.getConfigurationSection("proposals." + proposalId + ".options");
-        if (optionsSection == null)
-            return new HashSet<String>();
-        return optionsSection.getKeys(false);
-    }
-
-    /**
-     * Gets the description of an option on which players can vote for a certain
-     * proposal.
-     * 
-     * @param proposalId
-     *            The ID of the proposal.
-     * @param optionId
-     *            The ID of the option.
-     * @return the description of the option.
-     */
-    public static String getProposalOptionDescription(int proposalId, int optionId) {
-        return config.getString("proposals." + proposalId + ".options." + optionId + ".description");
-    }
-
-    /**
-     * Changes the description of an option on which players can vote for a
-     * certain proposal.
-     * 
-     * @param proposalId
-     *            The ID of the proposal of which an option should be changed.
-     * @param optionId
-     *            The ID of the option which should be changed.
-     * @param option
-     *            The new description for the option.
-     */
-    public static void setProposalOptionDescription(int proposalId, int optionId, String option) {
-        config.set("proposals." + proposalId + ".options." + optionId + ".description", option);
-        saveConfig();
-    }
-
-    /**
-     * Gets the amount of votes on an option of a certain proposal.
-     * 
-     * @param proposalId
-     *            The ID of the proposal.
-     * @param optionId
-     *            The ID of the option.
-     * @return the amount of votes
-     */
-    public static int getProposalOptionVotes(int proposalId, int optionId) {
-        return config.getInt("proposals." + proposalId + ".options." + optionId + ".votes");
-    }
-
-    /**
-     * Changes the amount of votes on an option of a certain proposal.
-     * 
-     * @param proposalId
-     *            The ID of the proposal.
-     * @param optionId
-     *            The ID of the option.
-     * @param votes
-     *            The new amount of votes.
-     */
-    public static void setProposalOptionVotes(int proposalId, int optionId, int votes) {
-        config.set("proposals." + proposalId + ".options." + optionId + ".votes", votes);
         saveConfig();
     }
 
     /**
-     * Gets whether a player has voted on a certain proposal.
-     * 
-     * @param proposalId
-     *            The ID of the proposal.
-     * @param playerId
-     *            The Unique User ID of the player, as generated by Minecraft.
-     * @return {@code true} if the player has voted on this proposal.
-     */
-    public static boolean playerHasVoted(int proposalId, UUID playerId) {
-        return config.getBoolean("proposals." + proposalId + ".players-voted." + playerId);
-    }
-
-    /**
-     * Changes if a player has voted on a certain proposal. Note: this does not
-     * remove the player's actual vote, but only the check on the player
-     * himself.
-     * 
-     * @param proposalId
-     *            The ID of the proposal.
-     * @param playerId
-     *            The Unique User ID of the player, as generated by Minecraft.
-     * @param hasVoted
-     *            A boolean indicating whether this player has voted on this
-     *            proposal.
-     */
-    public static void setPlayerHasVoted(int proposalId, UUID playerId, boolean hasVoted) {
-        config.set("proposals." + proposalId + ".players-voted." + playerId, hasVoted);
-        saveConfig();
-    }
-
-    /**
-     * Gets if voting is enabled for a certain proposal.
-     * 
-     * @param id
-     *            The ID of the proposal.
-     * @return {@code true} if voting is enabled.
-     */
-    public static boolean getVotingEnabled(int id) {
-        return config.getBoolean("proposals." + id + ".enabled", false);
-    }
-
-    /**
-     * Changes if voting is enabled for a certain proposal.
-     * 
-     * @param id
-     *            The ID of the proposal.
-     * @param enabled
-     *            A boolean indicating whether voting should be enabled for this
-     *            proposal.
-     */
-    public static void setVotingEnabled(int id, boolean enabled) {
-        config.set("proposals." + id + ".enabled", enabled);
-        saveConfig();
-    }
-
-    /**
-     * Permanently deletes an entire proposal, including its options and votes.
-     * 
-     * @param id
-     *            The ID of the proposal.
-     * @return {@code true} if the proposal was deleted; {@code false} if the
-     *         proposal did not exist.
-     */
-    public static boolean deleteProposal(int id) {
-        if (config.getConfigurationSection("proposals." + id) == null)
-            return false;
-        config.set("proposals." + id, null);
-        saveConfig();
-        return true;
+     * Creates the storage backend that is selected in the configuration, and
+     * starts saving the configuration file in the background.
+     * 
+     * @param plugin
+     *            the Main instance
+     * @return a new, unopened Storage.
+     */
+    public static Storage createStorage(Main plugin) {
+        boolean journaled = config.getBoolean("storage.journal.enabled", true);
+        // With a journal, the backend only writes when the journal is
+        // compacted.
+        long flushInterval = journaled ? 0L : getFlushInterval();
+        String backend = config.getString("storage.backend", "yaml").toLowerCase();
+        Storage storage;
+        if (backend.equals("sqlite")) {
+            storage = new SqliteStorage(plugin, new File(plugin.getDataFolder(), "data.db"), flushInterval,
+                    Main.getMetrics().getStorageFlushes());
+            saver.start(getFlushInterval());
+        } else {
+            if (!backend.equals("yaml"))
+                plugin.getLogger().warning("Unknown storage backend '" + backend + "'; using yaml instead.");
+            storage = new YamlStorage(config, saver);
+            if (flushInterval > 0)
+                saver.start(flushInterval);
+        }
+        if (!journaled)
+            return storage;
+        return new JournaledStorage(plugin, storage,
+                new VoteJournal(new File(plugin.getDataFolder(), "journal"), plugin.getLogger()),
+                config.getLong("storage.journal.sync-interval", 100L),
+                config.getLong("storage.journal.compaction-interval", 300000L));
     }
 
 }
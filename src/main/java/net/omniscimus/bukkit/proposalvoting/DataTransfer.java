@@ -0,0 +1,562 @@
+package net.omniscimus.bukkit.proposalvoting;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bukkit.Bukkit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalOption;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalRegistry;
+import net.omniscimus.bukkit.proposalvoting.model.RankedBallots;
+import net.omniscimus.bukkit.proposalvoting.model.VoterRegistry;
+import net.omniscimus.bukkit.proposalvoting.storage.PlaytimeLedger;
+import net.omniscimus.bukkit.proposalvoting.storage.PlaytimeWindow;
+
+/**
+ * Exports all data of the plugin to a JSON Lines file, and imports it again.
+ * Each line is one record: a proposal, an option and its tally, a batch of
+ * ballots or of rankings, a player, a player's playtime in one week or in
+ * total over the weeks that were archived as totals only, or a player's
+ * playtime in the buckets of the rolling window. Both directions
+ * stream the records, so the memory that is used does not depend on the
+ * amount of data.
+ * <p>
+ * Transfers run one at a time on a background thread. An import is applied
+ * through the in-memory registries, which pass the changes on to the storage
+ * backend as usual; the storage is flushed after every chunk of records, so
+ * that its queue of changes stays small. Importing the same file twice has
+ * the same effect as importing it once: the values of records with the same
+ * IDs are replaced, ballots are only added, and the rankings of a proposal
+ * are replaced by those in the file. Once an import is done, the electorate is
+ * determined anew, so that players who were allowed to vote on the server
+ * that exported the file are allowed to vote right away.
+ */
+public class DataTransfer {
+
+    private static final int FORMAT = 1;
+    /**
+     * The number of records after which the storage is flushed while
+     * importing.
+     */
+    private static final int CHUNK = 10000;
+    /**
+     * The maximum number of players in one ballots record.
+     */
+    private static final int BALLOTS_PER_RECORD = 1000;
+    /**
+     * The maximum number of rankings in one rankings record.
+     */
+    private static final int RANKINGS_PER_RECORD = 1000;
+
+    private final Main plugin;
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private final ExecutorService worker;
+    private final AtomicBoolean busy = new AtomicBoolean(false);
+    private volatile boolean stopping;
+
+    /**
+     * Creates a new DataTransfer instance.
+     * 
+     * @param plugin
+     *            The Main instance.
+     */
+    public DataTransfer(Main plugin) {
+        this.plugin = plugin;
+        worker = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, plugin.getName() + " data transfer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the file with a certain name in the plugin's export directory.
+     * 
+     * @param name
+     *            The name of the export, without extension. Only letters,
+     *            digits, dashes and underscores are allowed.
+     * @return the file, or {@code null} if the name is not allowed.
+     */
+    public File getFile(String name) {
+        if (!name.matches("[A-Za-z0-9_-]+"))
+            return null;
+        return new File(new File(plugin.getDataFolder(), "exports"), name + ".jsonl");
+    }
+
+    /**
+     * Starts exporting all data to a file, in the background. An existing file
+     * is replaced once the export is complete.
+     * 
+     * @param file
+     *            The file to export to.
+     * @return a future that completes with the number of records that were
+     *         written, or completes exceptionally if the export failed; or
+     *         {@code null} if another transfer is running.
+     */
+    public CompletableFuture<Long> exportAsync(File file) {
+        return submit(() -> export(file));
+    }
+
+    /**
+     * Starts importing data from a file, in the background.
+     * 
+     * @param file
+     *            The file to import from.
+     * @return a future that completes with the number of records that were
+     *         read, or completes exceptionally if the import failed; or
+     *         {@code null} if another transfer is running.
+     */
+    public CompletableFuture<Long> importAsync(File file) {
+        return submit(() -> importFrom(file));
+    }
+
+    /**
+     * Cancels the running transfer, if any, and stops the background thread.
+     * This must be called on the main server thread, before the storage is
+     * closed.
+     */
+    public void shutdown() {
+        stopping = true;
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(30, TimeUnit.SECONDS))
+                plugin.getLogger().warning("A data transfer was still running at shutdown.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Long> submit(Transfer transfer) {
+        if (!busy.compareAndSet(false, true))
+            return null;
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        worker.execute(() -> {
+            try {
+                future.complete(transfer.run());
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                busy.set(false);
+            }
+        });
+        return future;
+    }
+
+    private long export(File file) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Path temporary = new File(file.getParentFile(), file.getName() + ".tmp").toPath();
+        long records = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            JsonObject header = record("header");
+            header.addProperty("format", FORMAT);
+            header.addProperty("week", Main.getCurrentWeek());
+            write(out, header);
+            records++;
+
+            ProposalRegistry proposals = Main.getProposals();
+            for (int id : proposals.getIds(false)) {
+                checkStopping();
+                Proposal proposal = proposals.get(id);
+                if (proposal != null)
+                    records += exportProposal(out, proposal);
+            }
+            // Written after the proposals, whose IDs would otherwise raise it.
+            JsonObject nextId = record("next-proposal-id");
+            nextId.addProperty("id", proposals.getNextId());
+            write(out, nextId);
+            records++;
+
+            VoterRegistry voters = Main.getVoters();
+            int players = voters.size();
+            for (int index = 0; index < players; index++) {
+                checkStopping();
+                JsonObject player = record("player");
+                player.addProperty("id", voters.getId(index).toString());
+                player.addProperty("opt-in", voters.isOptedIn(index));
+                write(out, player);
+                records++;
+            }
+
+            PlaytimeLedger ledger = Main.getPlaytimeLedger();
+            for (String week : ledger.getWeeks()) {
+                for (int index = 0; index < players; index++) {
+                    checkStopping();
+                    long playtime = ledger.getPlaytime(index, week);
+                    if (playtime == 0)
+                        continue;
+                    JsonObject record = record("playtime");
+                    record.addProperty("week", week);
+                    record.addProperty("player", voters.getId(index).toString());
+                    record.addProperty("playtime", playtime);
+                    write(out, record);
+                    records++;
+                }
+            }
+
+            List<String> aggregated = ledger.getAggregatedWeeks();
+            if (!aggregated.isEmpty()) {
+                JsonObject record = record("aggregated-weeks");
+                JsonArray weeks = new JsonArray();
+                for (String week : aggregated)
+                    weeks.add(new JsonPrimitive(week));
+                record.add("weeks", weeks);
+                write(out, record);
+                records++;
+                for (int index = 0; index < players; index++) {
+                    checkStopping();
+                    long playtime = ledger.getAggregatedPlaytime(index);
+                    if (playtime == 0)
+                        continue;
+                    record = record("aggregated-playtime");
+                    record.addProperty("player", voters.getId(index).toString());
+                    record.addProperty("playtime", playtime);
+                    write(out, record);
+                    records++;
+                }
+            }
+
+            PlaytimeWindow window = Main.getPlaytimeWindow();
+            for (int index = 0; index < players; index++) {
+                checkStopping();
+                long first;
+                long[] buckets;
+                synchronized (window) {
+                    first = window.getCurrentBucket() - window.getBucketCount() + 1;
+                    buckets = window.getBuckets(index);
+                }
+                JsonArray playtime = new JsonArray();
+                boolean played = false;
+                for (long bucket : buckets) {
+                    playtime.add(new JsonPrimitive(bucket));
+                    played |= bucket != 0;
+                }
+                if (!played)
+                    continue;
+                JsonObject record = record("window");
+                record.addProperty("player", voters.getId(index).toString());
+                record.addProperty("bucket-length", window.getBucketLength());
+                record.addProperty("first-bucket", first);
+                record.add("playtime", playtime);
+                write(out, record);
+                records++;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        try {
+            Files.move(temporary, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return records;
+    }
+
+    private long exportProposal(Writer out, Proposal proposal) throws IOException {
+        long records = 0;
+        JsonObject record = record("proposal");
+        record.addProperty("id", proposal.getId());
+        record.addProperty("title", proposal.getTitle());
+        record.addProperty("description", proposal.getDescription());
+        record.addProperty("enabled", proposal.isEnabled());
+        write(out, record);
+        records++;
+        for (ProposalOption option : proposal.getOptions()) {
+            record = record("option");
+            record.addProperty("proposal", proposal.getId());
+            record.addProperty("id", option.getId());
+            record.addProperty("description", option.getDescription());
+            record.addProperty("votes", option.getVotes());
+            write(out, record);
+            records++;
+        }
+        // The ballots are written in batches, so that a proposal with many
+        // voters does not end up on one huge line.
+        VoterRegistry voters = Main.getVoters();
+        JsonArray[] batch = { new JsonArray() };
+        long[] batches = { 0 };
+        try {
+            proposal.getBallots().forEach(index -> {
+                batch[0].add(new JsonPrimitive(voters.getId(index).toString()));
+                if (batch[0].size() == BALLOTS_PER_RECORD) {
+                    writeBallots(out, proposal, batch[0]);
+                    batch[0] = new JsonArray();
+                    batches[0]++;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (batch[0].size() > 0) {
+            writeBallots(out, proposal, batch[0]);
+            batches[0]++;
+        }
+        RankedBallots.Snapshot rankings = proposal.getRankings().snapshot();
+        JsonArray rankingBatch = new JsonArray();
+        for (int i = 0; i < rankings.size(); i++) {
+            JsonArray ranking = new JsonArray();
+            for (int position = rankings.start(i); position < rankings.end(i); position++)
+                ranking.add(new JsonPrimitive(rankings.getPreference(position)));
+            rankingBatch.add(ranking);
+            if (rankingBatch.size() == RANKINGS_PER_RECORD || i == rankings.size() - 1) {
+                record = record("rankings");
+                record.addProperty("proposal", proposal.getId());
+                record.add("rankings", rankingBatch);
+                write(out, record);
+                rankingBatch = new JsonArray();
+                records++;
+            }
+        }
+        return records + batches[0];
+    }
+
+    private void writeBallots(Writer out, Proposal proposal, JsonArray players) {
+        JsonObject record = record("ballots");
+        record.addProperty("proposal", proposal.getId());
+        record.add("players", players);
+        try {
+            write(out, record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long importFrom(File file) throws IOException {
+        ProposalRegistry proposals = Main.getProposals();
+        PlaytimeLedger ledger = Main.getPlaytimeLedger();
+        PlaytimeWindow window = Main.getPlaytimeWindow();
+        // Playtime in buckets which have already ended here would be dropped.
+        window.advanceTo(System.currentTimeMillis());
+        JsonParser parser = new JsonParser();
+        long records = 0;
+        // The first rankings record of a proposal replaces its rankings, and
+        // the following ones are added to them.
+        Set<Integer> rankedProposals = new HashSet<>();
+        // The totals over the aggregated weeks are written at once at the end,
+        // as the whole segment is rewritten for every change.
+        Set<String> aggregatedWeeks = new HashSet<>();
+        Map<Integer, Long> aggregatedPlaytime = new HashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            boolean headerRead = false;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                checkStopping();
+                if (line.trim().isEmpty())
+                    continue;
+                try {
+                    JsonObject record = parser.parse(line).getAsJsonObject();
+                    String type = get(record, "type").getAsString();
+                    if (!headerRead) {
+                        headerRead = true;
+                        if (!type.equals("header") || get(record, "format").getAsInt() > FORMAT)
+                            throw new IOException(file.getName() + " is not an export of a supported format");
+                        continue;
+                    }
+                    switch (type) {
+                    case "next-proposal-id":
+                        proposals.advanceNextId(get(record, "id").getAsInt());
+                        break;
+                    case "proposal":
+                        Proposal proposal = proposals.getOrCreate(get(record, "id").getAsInt());
+                        proposal.setTitle(getString(record, "title"));
+                        proposal.setDescription(getString(record, "description"));
+                        proposal.setEnabled(get(record, "enabled").getAsBoolean());
+                        break;
+                    case "option":
+                        proposals.getOrCreate(get(record, "proposal").getAsInt()).importOption(
+                                get(record, "id").getAsInt(), getString(record, "description"),
+                                get(record, "votes").getAsInt());
+                        break;
+                    case "ballots":
+                        List<UUID> players = new ArrayList<>();
+                        for (JsonElement player : get(record, "players").getAsJsonArray())
+                            players.add(UUID.fromString(player.getAsString()));
+                        proposals.getOrCreate(get(record, "proposal").getAsInt()).importBallots(players);
+                        break;
+                    case "rankings":
+                        int proposalId = get(record, "proposal").getAsInt();
+                        List<int[]> rankings = new ArrayList<>();
+                        for (JsonElement element : get(record, "rankings").getAsJsonArray()) {
+                            JsonArray preferences = element.getAsJsonArray();
+                            int[] ranking = new int[preferences.size()];
+                            for (int i = 0; i < ranking.length; i++)
+                                ranking[i] = preferences.get(i).getAsInt();
+                            rankings.add(ranking);
+                        }
+                        proposals.getOrCreate(proposalId).importRankings(rankings, rankedProposals.add(proposalId));
+                        break;
+                    case "player":
+                        Main.getElectorate().setOptedIn(UUID.fromString(get(record, "id").getAsString()),
+                                get(record, "opt-in").getAsBoolean());
+                        break;
+                    case "playtime":
+                        String week = get(record, "week").getAsString();
+                        int index = Main.getVoters().getIndex(UUID.fromString(get(record, "player").getAsString()));
+                        ledger.setPlaytime(index, week, get(record, "playtime").getAsLong());
+                        break;
+                    case "aggregated-weeks":
+                        for (JsonElement element : get(record, "weeks").getAsJsonArray())
+                            aggregatedWeeks.add(element.getAsString());
+                        break;
+                    case "aggregated-playtime":
+                        aggregatedPlaytime.put(
+                                Main.getVoters().getIndex(UUID.fromString(get(record, "player").getAsString())),
+                                get(record, "playtime").getAsLong());
+                        break;
+                    case "window":
+                        importWindow(window, record);
+                        break;
+                    default:
+                        // Written by a newer version; skipped.
+                        continue;
+                    }
+                } catch (JsonParseException | IllegalStateException | IllegalArgumentException e) {
+                    throw new IOException("Invalid record on line " + lineNumber + " of " + file.getName(), e);
+                }
+                if (++records % CHUNK == 0) {
+                    ledger.force();
+                    flushStorage();
+                }
+            }
+        }
+        if (!aggregatedWeeks.isEmpty() || !aggregatedPlaytime.isEmpty())
+            ledger.setAggregatedPlaytime(aggregatedWeeks, aggregatedPlaytime);
+        ledger.force();
+        window.force();
+        flushStorage();
+        Main.getElectorate().rebuild();
+        return records;
+    }
+
+    /**
+     * Imports a player's playtime in the buckets of the window. The buckets
+     * in the file may have a different length than those here; their playtime
+     * is then added up in the buckets here in which they start. Buckets that
+     * are not in the window here are skipped.
+     */
+    private static void importWindow(PlaytimeWindow window, JsonObject record) throws IOException {
+        int index = Main.getVoters().getIndex(UUID.fromString(get(record, "player").getAsString()));
+        long length = get(record, "bucket-length").getAsLong();
+        long first = get(record, "first-bucket").getAsLong();
+        JsonArray playtime = get(record, "playtime").getAsJsonArray();
+        if (length <= 0)
+            throw new JsonParseException("Invalid bucket length " + length);
+        long current = window.getCurrentBucket();
+        long oldest = current - window.getBucketCount() + 1;
+        long[] imported = new long[window.getBucketCount()];
+        boolean[] touched = new boolean[imported.length];
+        for (int i = 0; i < playtime.size(); i++) {
+            long bucket = (first + i) * length / window.getBucketLength();
+            if (bucket < oldest || bucket > current)
+                continue;
+            imported[(int) (bucket - oldest)] += playtime.get(i).getAsLong();
+            touched[(int) (bucket - oldest)] = true;
+        }
+        for (int i = 0; i < imported.length; i++) {
+            if (touched[i])
+                window.setPlaytime(index, oldest + i, imported[i]);
+        }
+    }
+
+    private static JsonElement get(JsonObject record, String property) {
+        JsonElement value = record.get(property);
+        if (value == null || value.isJsonNull())
+            throw new JsonParseException("Missing property " + property);
+        return value;
+    }
+
+    private static String getString(JsonObject record, String property) {
+        JsonElement value = record.get(property);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    private static JsonObject record(String type) {
+        JsonObject record = new JsonObject();
+        record.addProperty("type", type);
+        return record;
+    }
+
+    private void write(Writer out, JsonObject record) throws IOException {
+        out.write(gson.toJson(record));
+        out.write('\n');
+    }
+
+    /**
+     * Flushes the storage on the main server thread, and waits until the
+     * changes have been written.
+     * 
+     * @throws IOException
+     *             If the changes could not be written, or if the plugin is
+     *             being disabled.
+     */
+    private void flushStorage() throws IOException {
+        Future<CompletableFuture<Void>> scheduled = Bukkit.getScheduler().callSyncMethod(plugin,
+                () -> Main.getStorage().flushAsync());
+        try {
+            while (true) {
+                checkStopping();
+                try {
+                    scheduled.get(1, TimeUnit.SECONDS).join();
+                    return;
+                } catch (TimeoutException e) {
+                    // The main thread is busy; keep waiting unless disabling.
+                }
+            }
+        } catch (ExecutionException | CompletionException e) {
+            throw new IOException("Could not write the imported data to the storage", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the imported data", e);
+        }
+    }
+
+    private void checkStopping() throws IOException {
+        if (stopping)
+            throw new IOException("The transfer was cancelled because the plugin is being disabled");
+    }
+
+    @FunctionalInterface
+    private interface Transfer {
+
+        long run() throws IOException;
+
+    }
+
+}
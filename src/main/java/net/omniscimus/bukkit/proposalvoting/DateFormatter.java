@@ -33,12 +33,42 @@ public class DateFormatter {
     }
 
     /**
-     * Gets the year.
+     * Gets the year to which this date's week belongs. Around New Year, this
+     * may differ from the calendar year, e.g. when the last days of December
+     * are already in week 1.
      * 
      * @return the year.
      */
     public int getYear() {
+        if (calendar.isWeekDateSupported())
+            return calendar.getWeekYear();
         return calendar.get(Calendar.YEAR);
     }
 
+    /**
+     * Gets the year and the week number, formatted as in %y_%w.
+     * 
+     * @return the year and week.
+     */
+    public String getYearWeek() {
+        return getYear() + "_" + getWeekNumber();
+    }
+
+    /**
+     * Gets the moment at which the week after this date's week starts.
+     * 
+     * @return the start of the next week, in milliseconds since the Unix
+     *         Epoch.
+     */
+    public long getNextWeekStart() {
+        Calendar start = (Calendar) calendar.clone();
+        int daysIntoWeek = (start.get(Calendar.DAY_OF_WEEK) - start.getFirstDayOfWeek() + 7) % 7;
+        start.add(Calendar.DAY_OF_MONTH, 7 - daysIntoWeek);
+        start.set(Calendar.HOUR_OF_DAY, 0);
+        start.set(Calendar.MINUTE, 0);
+        start.set(Calendar.SECOND, 0);
+        start.set(Calendar.MILLISECOND, 0);
+        return start.getTimeInMillis();
+    }
+
 }
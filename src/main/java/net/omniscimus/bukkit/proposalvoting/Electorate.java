@@ -0,0 +1,135 @@
+package net.omniscimus.bukkit.proposalvoting;
+
+import java.util.BitSet;
+import java.util.UUID;
+
+import net.omniscimus.bukkit.proposalvoting.model.VoterRegistry;
+import net.omniscimus.bukkit.proposalvoting.storage.PlaytimeWindow;
+
+/**
+ * Keeps track of which players are allowed to vote: those who have opted in
+ * and who have met the playtime requirement within the rolling playtime
+ * window. Eligibility is kept in a bitset over the player indexes, so that
+ * checking it is a single bit test. The bitset is updated whenever one of the
+ * conditions changes.
+ */
+public class Electorate {
+
+    private final VoterRegistry voters;
+    private final PlaytimeWindow window;
+
+    private final BitSet eligible = new BitSet();
+    private int size;
+    private long requirement;
+
+    /**
+     * Creates a new, empty Electorate instance. It must be filled with
+     * {@link #rebuild()} before it is used.
+     * 
+     * @param voters
+     *            The registry that knows which players have opted in.
+     * @param window
+     *            The window that holds the players' recent playtime.
+     * @param requirement
+     *            The amount of playtime that is required to vote, in
+     *            milliseconds.
+     */
+    public Electorate(VoterRegistry voters, PlaytimeWindow window, long requirement) {
+        this.voters = voters;
+        this.window = window;
+        this.requirement = requirement;
+    }
+
+    /**
+     * Checks if a player is allowed to vote.
+     * 
+     * @param index
+     *            The index of the player.
+     * @return {@code true} if the player is in the electorate.
+     */
+    public synchronized boolean contains(int index) {
+        return eligible.get(index);
+    }
+
+    /**
+     * Gets the number of players who are allowed to vote.
+     * 
+     * @return the size of the electorate.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the amount of playtime that is required to vote.
+     * 
+     * @return the playtime requirement, in milliseconds.
+     */
+    public synchronized long getRequirement() {
+        return requirement;
+    }
+
+    /**
+     * Changes the amount of playtime that is required to vote, saves it to the
+     * configuration and determines the electorate anew.
+     * 
+     * @param requirement
+     *            The new playtime requirement, in milliseconds.
+     */
+    public synchronized void setRequirement(long requirement) {
+        this.requirement = requirement;
+        Configuration.setPlaytimeRequirement(requirement);
+        rebuild();
+    }
+
+    /**
+     * Changes whether a player has opted in to the ProposalVoting system, and
+     * updates his eligibility.
+     * 
+     * @param playerId
+     *            The Unique User ID of the player, as generated by Minecraft.
+     * @param optIn
+     *            A boolean indicating whether the player has opted in.
+     */
+    public void setOptedIn(UUID playerId, boolean optIn) {
+        voters.setOptedIn(playerId, optIn);
+        int index = voters.getIndex(playerId);
+        playtimeChanged(index, optIn ? window.getPlaytime(index) : 0L);
+    }
+
+    /**
+     * Updates the eligibility of a player after their playtime within the
+     * window has changed.
+     * 
+     * @param index
+     *            The index of the player.
+     * @param playtime
+     *            The player's new playtime within the window, in
+     *            milliseconds.
+     */
+    public synchronized void playtimeChanged(int index, long playtime) {
+        set(index, playtime >= requirement && voters.isOptedIn(index));
+    }
+
+    /**
+     * Determines the eligibility of every known player anew. This is necessary
+     * when the window has moved on to a new bucket, because playtime has then
+     * fallen out of it.
+     */
+    public synchronized void rebuild() {
+        eligible.clear();
+        size = 0;
+        for (int index = 0; index < voters.size(); index++) {
+            if (voters.isOptedIn(index) && window.getPlaytime(index) >= requirement)
+                set(index, true);
+        }
+    }
+
+    private void set(int index, boolean inElectorate) {
+        if (eligible.get(index) == inElectorate)
+            return;
+        eligible.set(index, inElectorate);
+        size += inElectorate ? 1 : -1;
+    }
+
+}
@@ -1,8 +1,16 @@
 package net.omniscimus.bukkit.proposalvoting;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 
 import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
@@ -15,15 +23,33 @@ import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitTask;
 
+import net.omniscimus.bukkit.proposalvoting.commands.AddProposalCommand;
+import net.omniscimus.bukkit.proposalvoting.commands.CheckProposalCommand;
+import net.omniscimus.bukkit.proposalvoting.commands.EditProposalCommand;
+import net.omniscimus.bukkit.proposalvoting.commands.ExportCommand;
+import net.omniscimus.bukkit.proposalvoting.commands.ImportCommand;
 import net.omniscimus.bukkit.proposalvoting.commands.InfoCommand;
+import net.omniscimus.bukkit.proposalvoting.commands.ListCommand;
 import net.omniscimus.bukkit.proposalvoting.commands.OptInCommand;
 import net.omniscimus.bukkit.proposalvoting.commands.OptOutCommand;
-import net.omniscimus.bukkit.proposalvoting.commands.ProposalCommand;
+import net.omniscimus.bukkit.proposalvoting.commands.ProposalMessages;
+import net.omniscimus.bukkit.proposalvoting.commands.RemoveProposalCommand;
+import net.omniscimus.bukkit.proposalvoting.commands.RequirementCommand;
+import net.omniscimus.bukkit.proposalvoting.commands.ResultProposalCommand;
+import net.omniscimus.bukkit.proposalvoting.commands.ShowCommand;
+import net.omniscimus.bukkit.proposalvoting.commands.StatsCommand;
+import net.omniscimus.bukkit.proposalvoting.commands.ToggleProposalCommand;
 import net.omniscimus.bukkit.proposalvoting.commands.VoteCommand;
-import net.omniscimus.bukkit.proposalvoting.exceptions.NoPermissionException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongArgumentsNumberException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSenderTypeException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
+import net.omniscimus.bukkit.proposalvoting.exceptions.StorageException;
+import net.omniscimus.bukkit.proposalvoting.metrics.PluginMetrics;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalRegistry;
+import net.omniscimus.bukkit.proposalvoting.model.VoterRegistry;
+import net.omniscimus.bukkit.proposalvoting.storage.PlayerDictionary;
+import net.omniscimus.bukkit.proposalvoting.storage.PlaytimeLedger;
+import net.omniscimus.bukkit.proposalvoting.storage.PlaytimeWindow;
+import net.omniscimus.bukkit.proposalvoting.storage.ProposalTextStore;
+import net.omniscimus.bukkit.proposalvoting.storage.Storage;
+import net.omniscimus.bukkit.proposalvoting.tally.TallyEngine;
 
 /**
  * Main class for this plugin. The path to this class is in plugin.yml.
@@ -32,18 +58,56 @@ import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
 public class Main extends JavaPlugin implements Listener {
 
     /**
-     * Used to see when we're entering a new week; necessary for logging
-     * playtime per week.
+     * The moment at which the next week starts, in milliseconds since the Unix
+     * Epoch; necessary for logging playtime per week.
      */
-    private int weekNumber;
+    private long nextWeekStart;
+    /**
+     * The length of a week, in milliseconds.
+     */
+    private static final long WEEK = 7L * 24 * 60 * 60 * 1000;
     private BukkitTask weekChangeChecker;
+    private BukkitTask playtimeCheckpoint;
+
+    /**
+     * Guards the current week while playtime is being saved, so that a
+     * checkpoint never saves playtime in a week that has just ended.
+     */
+    private final Object checkpointLock = new Object();
+    /**
+     * Whether the playtime files have been closed, so that a checkpoint which
+     * was already waiting for the lock does not use them. Guarded by the
+     * checkpoint lock.
+     */
+    private boolean playtimeClosed;
+    /**
+     * The playtime that could not be saved, by the index of the player. It is
+     * kept here instead of in the sessions, so that it is not lost when the
+     * player logs out, and saved at the next checkpoint.
+     */
+    private final Map<Integer, Long> unsavedPlaytime = new ConcurrentHashMap<>();
 
     /**
      * Used for the configuration file.
      */
-    private static String currentWeek;
+    private static volatile String currentWeek;
 
-    private ArrayList<Voter> onlineVoters = new ArrayList<>();
+    private static PlayerDictionary players;
+    private static ProposalTextStore texts;
+    private static Storage storage;
+    private static PlaytimeLedger playtime;
+    private static PlaytimeWindow window;
+    private static Electorate electorate;
+    private static CommandPipeline commands;
+    private static DataTransfer transfer;
+    private static ProposalRegistry proposals;
+    private static VoterRegistry voters;
+
+    private static final SessionRegistry sessions = new SessionRegistry();
+    private static final PluginMetrics metrics = new PluginMetrics(sessions::size);
+    private static final TallyEngine tallies = new TallyEngine();
+    private static final ProposalMessages messages = new ProposalMessages();
+    private static final CommandTree commandTree = createCommandTree();
 
     /**
      * Called by Bukkit when this plugin should enable.
@@ -52,10 +116,83 @@ public class Main extends JavaPlugin implements Listener {
     public void onEnable() {
         saveDefaultConfig();
         Configuration.init(this);
+        players = new PlayerDictionary(new File(getDataFolder(), "players.dat"));
+        try {
+            openPlayerDictionary();
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Could not open the player dictionary; disabling.", e);
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+        texts = new ProposalTextStore(new File(getDataFolder(), "proposal-texts.dat"));
+        try {
+            texts.open();
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Could not open the proposal texts; disabling.", e);
+            closePlayerDictionary();
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+        storage = Configuration.createStorage(this);
+        proposals = new ProposalRegistry(storage, players, texts);
+        voters = new VoterRegistry(storage, players);
+        try {
+            storage.open();
+            storage.load(proposals, voters);
+        } catch (StorageException e) {
+            getLogger().log(Level.SEVERE, "Could not load the plugin's data; disabling.", e);
+            storage.close();
+            closeProposalTexts();
+            closePlayerDictionary();
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
 
         DateFormatter date = new DateFormatter(new Date(System.currentTimeMillis()));
-        weekNumber = date.getWeekNumber();
-        currentWeek = date.getYear() + "_" + weekNumber;
+        currentWeek = date.getYearWeek();
+        nextWeekStart = date.getNextWeekStart();
+
+        playtime = new PlaytimeLedger(new File(getDataFolder(), "playtime"));
+        try {
+            playtime.open();
+            migratePlaytime();
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Could not open the playtime ledger; disabling.", e);
+            storage.close();
+            closeProposalTexts();
+            closePlayerDictionary();
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+
+        window = new PlaytimeWindow(new File(getDataFolder(), "playtime-window.dat"),
+                Configuration.getWindowBucketLength(), Configuration.getWindowBuckets());
+        try {
+            window.open(System.currentTimeMillis());
+            if (window.isNew())
+                seedPlaytimeWindow();
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Could not open the playtime window; disabling.", e);
+            storage.close();
+            closePlaytimeLedger();
+            closeProposalTexts();
+            closePlayerDictionary();
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+
+        String oldestLive = getWeekBefore(Configuration.getArchiveHorizon() - 1);
+        getServer().getScheduler().runTaskAsynchronously(this, () -> {
+            archivePlaytime(oldestLive);
+        });
+
+        electorate = new Electorate(voters, window, Configuration.getPlaytimeRequirement());
+        electorate.rebuild();
+        commands = new CommandPipeline(this, 2, 256, 8);
+        transfer = new DataTransfer(this);
+        metrics.register(getLogger());
+
+        getServer().getPluginManager().registerEvents(this, this);
 
         // Start logging playtime for anyone who's online right now.
         for (Player player : Bukkit.getOnlinePlayers()) {
@@ -64,7 +201,11 @@ public class Main extends JavaPlugin implements Listener {
 
         weekChangeChecker = getServer().getScheduler().runTaskTimer(this, () -> {
             checkWeekChange();
-        }, 0L, 20 * 60);
+        }, 1L, 1L);
+        long checkpointTicks = Math.max(1L, Configuration.getCheckpointInterval() / 50L);
+        playtimeCheckpoint = getServer().getScheduler().runTaskTimerAsynchronously(this, () -> {
+            checkpointPlaytime();
+        }, checkpointTicks, checkpointTicks);
     }
 
     /**
@@ -72,10 +213,39 @@ public class Main extends JavaPlugin implements Listener {
      */
     @Override
     public void onDisable() {
-        weekChangeChecker.cancel();
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            deregisterVoter(player);
+        if (weekChangeChecker != null) {
+            weekChangeChecker.cancel();
+            weekChangeChecker = null;
+            playtimeCheckpoint.cancel();
+            playtimeCheckpoint = null;
+            commands.shutdown();
+            transfer.shutdown();
+            metrics.unregister(getLogger());
+            // Waits for a checkpoint that is running, and keeps one that is
+            // about to run from using the playtime files once they are closed.
+            synchronized (checkpointLock) {
+                for (Player player : Bukkit.getOnlinePlayers()) {
+                    deregisterVoter(player);
+                }
+                if (!unsavedPlaytime.isEmpty())
+                    checkpointPlaytime(Math.min(System.currentTimeMillis(), nextWeekStart), currentWeek);
+                if (!unsavedPlaytime.isEmpty())
+                    getLogger().severe("The playtime of " + unsavedPlaytime.size() + " players could not be saved.");
+                playtimeClosed = true;
+                try {
+                    window.close();
+                } catch (IOException e) {
+                    getLogger().log(Level.SEVERE, "Could not close the playtime window.", e);
+                }
+                closePlaytimeLedger();
+            }
+            storage.close();
+            closeProposalTexts();
+            closePlayerDictionary();
+            messages.clear();
+            tallies.clearCache();
         }
+        Configuration.close();
     }
 
     /**
@@ -88,19 +258,206 @@ public class Main extends JavaPlugin implements Listener {
     }
 
     /**
-     * Gets the Voter object for a certain Player.
+     * Gets the backend in which the plugin's data is stored.
+     * 
+     * @return the Storage
+     */
+    public static Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Gets the ledger in which the players' playtime is stored.
+     * 
+     * @return the PlaytimeLedger
+     */
+    public static PlaytimeLedger getPlaytimeLedger() {
+        return playtime;
+    }
+
+    /**
+     * Gets the rolling window over the players' recent playtime, which
+     * determines whether they meet the playtime requirement.
+     * 
+     * @return the PlaytimeWindow
+     */
+    public static PlaytimeWindow getPlaytimeWindow() {
+        return window;
+    }
+
+    private void closePlaytimeLedger() {
+        try {
+            playtime.close();
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Could not close the playtime ledger.", e);
+        }
+    }
+
+    /**
+     * Opens the player dictionary. The players used to be numbered by the
+     * playtime ledger, in a file with the same layout; if that file exists, it
+     * becomes the dictionary, so that the numbers in the ledger stay valid.
      * 
-     * @param byPlayer
-     *            The Player object by which to look up the Voter.
-     * @return the Voter object associated with {@code byPlayer}
+     * @throws IOException
+     *             If the dictionary could not be opened.
      */
-    private Voter getVoter(Player byPlayer) {
-        UUID id = byPlayer.getUniqueId();
-        for (Voter voter : onlineVoters) {
-            if (voter.getId().equals(id))
-                return voter;
+    private void openPlayerDictionary() throws IOException {
+        File dictionary = new File(getDataFolder(), "players.dat");
+        File slots = new File(getDataFolder(), "playtime" + File.separator + "slots.dat");
+        if (!dictionary.exists() && slots.exists())
+            Files.move(slots.toPath(), dictionary.toPath());
+        players.open();
+    }
+
+    private void closeProposalTexts() {
+        try {
+            texts.close();
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Could not close the proposal texts.", e);
         }
-        return null;
+    }
+
+    private void closePlayerDictionary() {
+        try {
+            players.close();
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Could not close the player dictionary.", e);
+        }
+    }
+
+    /**
+     * Gets the players who are allowed to vote.
+     * 
+     * @return the Electorate
+     */
+    public static Electorate getElectorate() {
+        return electorate;
+    }
+
+    /**
+     * Moves the playtime of every week and every player out of the storage
+     * backend, where it was kept before there was a playtime ledger, and
+     * removes it from the backend. Players who are not in the dictionary yet
+     * are given an index. Where the ledger already holds playtime, e.g.
+     * because an older version copied the current week, the larger amount is
+     * kept, so nothing is counted twice. Weeks beyond the archive horizon are
+     * archived by {@link #archivePlaytime(String)}, like any other week.
+     * 
+     * @throws IOException
+     *             If the playtime could not be written to the ledger.
+     */
+    private void migratePlaytime() throws IOException {
+        Map<String, Map<UUID, Long>> legacy;
+        try {
+            legacy = storage.getLegacyPlaytime();
+        } catch (StorageException e) {
+            getLogger().log(Level.SEVERE, "Could not read the playtime to migrate; it is kept in the storage.", e);
+            return;
+        }
+        if (legacy.isEmpty())
+            return;
+        int migrated = 0;
+        for (Map.Entry<String, Map<UUID, Long>> week : legacy.entrySet()) {
+            for (Map.Entry<UUID, Long> entry : week.getValue().entrySet()) {
+                int player = voters.getIndex(entry.getKey());
+                long current = playtime.getPlaytime(player, week.getKey());
+                if (entry.getValue() > current)
+                    playtime.setPlaytime(player, week.getKey(), entry.getValue());
+                migrated++;
+            }
+        }
+        playtime.force();
+        storage.removeLegacyPlaytime();
+        storage.flush();
+        getLogger().info("Moved " + migrated + " playtime records of " + legacy.size()
+                + " weeks into the playtime ledger.");
+    }
+
+    /**
+     * Fills a new playtime window with the current week's playtime of all
+     * known players, so that players who were eligible before the window
+     * existed do not lose their eligibility. The playtime is counted in the
+     * current bucket.
+     * 
+     * @throws IOException
+     *             If the playtime could not be read or written.
+     */
+    private void seedPlaytimeWindow() throws IOException {
+        for (int player = 0; player < voters.size(); player++)
+            window.addPlaytime(player, playtime.getPlaytime(player, currentWeek));
+        window.force();
+    }
+
+    /**
+     * Gets the in-memory store of all proposals.
+     * 
+     * @return the ProposalRegistry
+     */
+    public static ProposalRegistry getProposals() {
+        return proposals;
+    }
+
+    /**
+     * Gets the in-memory store of all known players.
+     * 
+     * @return the VoterRegistry
+     */
+    public static VoterRegistry getVoters() {
+        return voters;
+    }
+
+    /**
+     * Gets the sessions of the players who are online.
+     * 
+     * @return the SessionRegistry
+     */
+    public static SessionRegistry getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Gets the exporter and importer of the plugin's data.
+     * 
+     * @return the DataTransfer
+     */
+    public static DataTransfer getDataTransfer() {
+        return transfer;
+    }
+
+    /**
+     * Gets the counters and latency histograms of the plugin.
+     * 
+     * @return the PluginMetrics
+     */
+    public static PluginMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the engine which determines the results of proposals.
+     * 
+     * @return the TallyEngine
+     */
+    public static TallyEngine getTallyEngine() {
+        return tallies;
+    }
+
+    /**
+     * Gets the subcommands of /pv.
+     * 
+     * @return the CommandTree
+     */
+    public static CommandTree getCommandTree() {
+        return commandTree;
+    }
+
+    /**
+     * Gets the cache of the chat lines that describe the proposals.
+     * 
+     * @return the ProposalMessages
+     */
+    public static ProposalMessages getProposalMessages() {
+        return messages;
     }
 
     /**
@@ -115,24 +472,122 @@ public class Main extends JavaPlugin implements Listener {
         long now = System.currentTimeMillis();
         Voter voter = new Voter(player.getUniqueId());
         voter.setLoginTime(now);
-        onlineVoters.add(voter);
+        sessions.add(voter);
     }
 
     /**
      * Releases the Voter object associated with {@code player}. The playtime
-     * counter of this player will be stopped and its value will be saved.
+     * counter of this player will be stopped and its value will be saved. If
+     * it can not be saved, it is saved at the next checkpoint instead.
      * 
      * @param player
      *            the Player whose Voter object to release
      */
     private void deregisterVoter(Player player) {
         long now = System.currentTimeMillis();
-        Voter voter = getVoter(player);
+        Voter voter = sessions.remove(player.getUniqueId());
         if (voter != null) {
             voter.setLogoutTime(now);
-            voter.updatePlaytime();
-            onlineVoters.remove(voter);
+            try {
+                voter.updatePlaytime();
+            } catch (IOException e) {
+                getLogger().log(Level.SEVERE,
+                        "Could not save the playtime of " + player.getName() + "; trying again at the next checkpoint.",
+                        e);
+                long unsaved = voter.accruePlaytime(now);
+                if (unsaved > 0)
+                    unsavedPlaytime.merge(voter.getIndex(), unsaved, Long::sum);
+            }
+        }
+    }
+
+    /**
+     * Saves the playtime that the online players have accrued since the last
+     * checkpoint, in one batch. This bounds the playtime that is lost if the
+     * server crashes, and spreads the writes over time instead of doing all of
+     * them when the players log out. It may be called from any thread.
+     */
+    private void checkpointPlaytime() {
+        synchronized (checkpointLock) {
+            if (playtimeClosed)
+                return;
+            checkpointPlaytime(Math.min(System.currentTimeMillis(), nextWeekStart), currentWeek);
+        }
+    }
+
+    /**
+     * Saves the playtime that the online players have accrued up to a certain
+     * moment in one batch. The playtime window is first moved on to the bucket
+     * that contains that moment, so that playtime which has fallen out of it
+     * no longer counts towards the electorate. If the playtime can not be
+     * saved, it is kept by the index of the player, and saved at the next
+     * checkpoint instead, together with the playtime that was accrued since.
+     * Must be called while holding the checkpoint lock.
+     * 
+     * @param upTo
+     *            The moment up to which to save the playtime, in milliseconds
+     *            since the Unix Epoch.
+     * @param year_week
+     *            The year and week in which to save the playtime, formatted
+     *            as in %y_%w.
+     */
+    private void checkpointPlaytime(long upTo, String year_week) {
+        Map<Integer, Long> retry = new HashMap<>();
+        for (Iterator<Map.Entry<Integer, Long>> it = unsavedPlaytime.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, Long> entry = it.next();
+            it.remove();
+            retry.merge(entry.getKey(), entry.getValue(), Long::sum);
         }
+        int capacity = sessions.size() + retry.size() + 16;
+        int[] indexes = new int[capacity];
+        long[] playedTime = new long[capacity];
+        int count = 0;
+        for (Voter voter : sessions.getAll()) {
+            if (count == capacity)
+                break; // The rest is saved at the next checkpoint.
+            indexes[count] = voter.getIndex();
+            Long unsaved = retry.remove(voter.getIndex());
+            playedTime[count] = voter.accruePlaytime(upTo) + (unsaved == null ? 0L : unsaved);
+            count++;
+        }
+        // Playtime of players who have logged out since it could not be saved.
+        for (Iterator<Map.Entry<Integer, Long>> it = retry.entrySet().iterator(); it.hasNext() && count < capacity;) {
+            Map.Entry<Integer, Long> entry = it.next();
+            it.remove();
+            indexes[count] = entry.getKey();
+            playedTime[count] = entry.getValue();
+            count++;
+        }
+        for (Map.Entry<Integer, Long> entry : retry.entrySet())
+            unsavedPlaytime.merge(entry.getKey(), entry.getValue(), Long::sum);
+        long[] recent;
+        try {
+            if (window.advanceTo(upTo))
+                electorate.rebuild();
+            if (count == 0)
+                return;
+            recent = window.addPlaytime(indexes, playedTime, count);
+            try {
+                playtime.addPlaytime(indexes, year_week, playedTime.clone(), count);
+            } catch (IOException e) {
+                long[] added = new long[count];
+                for (int i = 0; i < count; i++)
+                    added[i] = -playedTime[i];
+                window.addPlaytime(indexes, added, count);
+                throw e;
+            }
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE,
+                    "Could not save the playtime of the online players; trying again at the next checkpoint.", e);
+            for (int i = 0; i < count; i++) {
+                if (playedTime[i] > 0)
+                    unsavedPlaytime.merge(indexes[i], playedTime[i], Long::sum);
+            }
+            return;
+        }
+        window.force();
+        for (int i = 0; i < count; i++)
+            electorate.playtimeChanged(indexes[i], recent[i]);
     }
 
     /**
@@ -163,56 +618,109 @@ public class Main extends JavaPlugin implements Listener {
      */
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
-        // TODO check for permissions in all applicable commands.
-        try {
-            if (args.length == 0) {
-                new InfoCommand(sender, args).run();
-            } else {
-                String[] subArgs = PluginCommand.subArray(args, 1, args.length);
-                switch (args[0]) {
-                // TODO help command: /dc h, /dc help, /dc ?
-                case "opt-in":
-                    new OptInCommand(sender, subArgs).run();
-                    break;
-                case "opt-out":
-                    new OptOutCommand(sender, subArgs).run();
-                    break;
-                case "vote":
-                    new VoteCommand(sender, subArgs).run();
-                    break;
-                case "proposal":
-                    new ProposalCommand(sender, subArgs).run();
-                    break;
-                case "check-proposal":
-                    break;
-                case "toggle-proposal":
-                    break;
-                default:
-                    throw new WrongSyntaxException();
-                }
-            }
-        } catch (WrongSyntaxException e) {
-            // TODO
-        } catch (WrongSenderTypeException e) {
-            // TODO
-        } catch (WrongArgumentsNumberException e) {
-            // TODO
-        } catch (NoPermissionException e) {
-            // TODO
-        }
-
+        long start = System.nanoTime();
+        commands.dispatch(commandTree.parse(sender, args));
+        metrics.getMainThreadCommands().recordSince(start);
         return true;
     }
 
     /**
-     * Checks if the current week corresponds with the week stored in the
-     * {@code weeknumber} variable.
+     * Called by Bukkit whenever a sender presses tab while typing one of this
+     * plugin's commands. The suggestions come from the command tree and the
+     * proposals in memory; nothing is read from the storage.
+     */
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        return commandTree.complete(sender, args);
+    }
+
+    /**
+     * Registers the subcommands of /pv.
+     * 
+     * @return the CommandTree
+     */
+    private static CommandTree createCommandTree() {
+        CommandTree tree = new CommandTree();
+        tree.register("", new InfoCommand());
+        tree.register("help", new InfoCommand());
+        tree.register("opt-in", new OptInCommand());
+        tree.register("opt-out", new OptOutCommand());
+        tree.register("vote", new VoteCommand());
+        tree.register("list", new ListCommand());
+        tree.register("show", new ShowCommand());
+        tree.register("proposal check", new CheckProposalCommand());
+        tree.register("proposal result", new ResultProposalCommand());
+        tree.register("proposal add", new AddProposalCommand());
+        tree.register("proposal remove", new RemoveProposalCommand());
+        tree.register("proposal edit", new EditProposalCommand());
+        tree.register("proposal toggle", new ToggleProposalCommand());
+        tree.register("stats", new StatsCommand());
+        tree.register("requirement", new RequirementCommand());
+        tree.register("export", new ExportCommand());
+        tree.register("import", new ImportCommand());
+        return tree;
+    }
+
+    /**
+     * Checks if the next week has started, and if so, rolls over to it.
      */
     public void checkWeekChange() {
-        DateFormatter date = new DateFormatter(new Date(System.currentTimeMillis()));
-        if (weekNumber != date.getWeekNumber()) {
-            onDisable();
-            onEnable();
+        if (System.currentTimeMillis() >= nextWeekStart)
+            rollOverWeek();
+    }
+
+    /**
+     * Moves on to the next week. The sessions of the online players are split
+     * at the start of the new week: the part before it is saved in the week
+     * that has ended, in one batch, and the rest counts towards the new week.
+     */
+    private void rollOverWeek() {
+        long start = System.nanoTime();
+        String oldestLive;
+        synchronized (checkpointLock) {
+            long boundary = nextWeekStart;
+            checkpointPlaytime(boundary, currentWeek);
+            DateFormatter date = new DateFormatter(new Date(boundary));
+            currentWeek = date.getYearWeek();
+            nextWeekStart = date.getNextWeekStart();
+            oldestLive = getWeekBefore(Configuration.getArchiveHorizon() - 1);
+        }
+        metrics.getWeekRollovers().recordSince(start);
+        getLogger().info("A new week has started: " + currentWeek);
+        getServer().getScheduler().runTaskAsynchronously(this, () -> {
+            archivePlaytime(oldestLive);
+        });
+    }
+
+    /**
+     * Gets the week a number of weeks before the current week.
+     * 
+     * @param weeks
+     *            The number of weeks to go back.
+     * @return the year and week, formatted as in %y_%w.
+     */
+    private String getWeekBefore(int weeks) {
+        // Counted from the middle of the current week, so that a change to or
+        // from daylight saving time can not end up in a neighbouring week.
+        long middle = nextWeekStart - WEEK / 2;
+        return new DateFormatter(new Date(middle - weeks * WEEK)).getYearWeek();
+    }
+
+    /**
+     * Moves the playtime of weeks beyond the configured horizon out of the
+     * live ledger, into compressed archive segments. This takes a while, so it
+     * should not be called on the main server thread.
+     * 
+     * @param oldestLive
+     *            The oldest week to keep live, formatted as in %y_%w.
+     */
+    private void archivePlaytime(String oldestLive) {
+        try {
+            List<String> archived = playtime.archive(oldestLive, Configuration.isArchiveAggregateOnly());
+            if (!archived.isEmpty())
+                getLogger().info("Archived the playtime of " + archived.size() + " weeks.");
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Could not archive old playtime.", e);
         }
     }
 
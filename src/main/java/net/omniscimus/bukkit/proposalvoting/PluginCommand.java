@@ -1,68 +1,221 @@
 package net.omniscimus.bukkit.proposalvoting;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.java.JavaPlugin;
 
-import net.omniscimus.bukkit.proposalvoting.exceptions.NoPermissionException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongArgumentsNumberException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSenderTypeException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
 
 /**
- * Represents a user command for this plugin.
+ * Represents a user command for this plugin. A command holds no state of its
+ * own; one instance is registered in the {@link CommandTree} and handles every
+ * use of the command. It declares the arguments it takes, the permission it
+ * requires and whether only players may use it, and the tree checks those
+ * before it is run, and before it is asked to complete an argument.
  */
 public abstract class PluginCommand {
 
-    protected CommandSender sender;
-    protected String[] args;
+    private static final ArgumentType[] NO_ARGUMENTS = new ArgumentType[0];
+
+    /**
+     * Gets the name under which the execution time of this command is
+     * recorded, if it is not registered under a subcommand. By default, it is
+     * derived from the class name; e.g. the name of InfoCommand is
+     * {@code info}.
+     * 
+     * @return the name of this command.
+     */
+    public String getName() {
+        String name = getClass().getSimpleName().replaceFirst("Command$", "");
+        return name.replaceAll("([a-z])([A-Z])", "$1-$2").toLowerCase();
+    }
+
+    /**
+     * Gets the types of the arguments that this command takes. Only the last
+     * argument may be of a type that takes the rest of the command.
+     * 
+     * @return the argument types, in order; the array should not be changed.
+     */
+    public ArgumentType[] getArguments() {
+        return NO_ARGUMENTS;
+    }
+
+    /**
+     * Gets the number of arguments that must be given. By default, all
+     * arguments are required; the ones after this number are optional.
+     * 
+     * @return the amount of required arguments.
+     */
+    public int getRequiredArguments() {
+        return getArguments().length;
+    }
+
+    /**
+     * Gets the permission that is required to use this command.
+     * 
+     * @return the name of the permission, or {@code null} if everyone may use
+     *         it.
+     */
+    public String getPermission() {
+        return null;
+    }
+
+    /**
+     * Gets whether only players may use this command.
+     * 
+     * @return {@code true} if the console may not use it.
+     */
+    public boolean isPlayerOnly() {
+        return false;
+    }
+
+    /**
+     * Gets whether this command changes data that has to be stored, or reads
+     * data that may have to be read from the disk. Such commands are executed
+     * in the background by the {@link CommandPipeline}, one at a time per
+     * sender; other commands are executed immediately on the main server
+     * thread, unless the sender still has commands waiting in the background.
+     * 
+     * @return {@code true} if this command needs the storage.
+     */
+    public boolean needsStorage() {
+        return false;
+    }
+
+    /**
+     * Gets whether this command creates, changes or removes proposals. Of all
+     * senders, only one such command is executed at a time, so that e.g. a
+     * proposal that is being removed can not be edited at the same time. This
+     * only applies to commands that {@link #needsStorage() need the storage}.
+     * 
+     * @return {@code true} if this command changes proposals.
+     */
+    public boolean changesProposals() {
+        return false;
+    }
 
     /**
-     * Creates a new PluginCommand instance.
+     * Suggests values for the argument that a sender is typing. This is called
+     * on every keystroke, so it should only read in-memory data.
      * 
      * @param sender
-     *            The instance which sent this command.
+     *            The sender, who may use this command.
      * @param args
-     *            The command arguments.
+     *            The arguments typed so far; the last one is incomplete, and
+     *            may be empty.
+     * @return the values that the last argument may take which start with
+     *         what has been typed; an empty list if there are no suggestions.
+     */
+    public List<String> complete(CommandSender sender, CommandArguments args) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Finds the IDs whose decimal forms start with a prefix. The IDs that
+     * start with e.g. {@code 4} are 4, 40 to 49, 400 to 499 and so on; each
+     * of these ranges is found by a binary search, so only the matching IDs
+     * are visited.
+     * 
+     * @param ids
+     *            The IDs, in ascending order.
+     * @param prefix
+     *            The beginning of an ID.
+     * @return the matching IDs as Strings, shortest first.
      */
-    public PluginCommand(CommandSender sender, String[] args) {
-        this.sender = sender;
-        this.args = args;
+    protected static List<String> completeIds(int[] ids, String prefix) {
+        List<String> completions = new ArrayList<>();
+        boolean digits = !prefix.isEmpty() && Character.isDigit(prefix.charAt(0))
+                && (prefix.charAt(0) != '0' || prefix.length() == 1);
+        long value = digits ? CommandArguments.parseInt(prefix) : CommandArguments.INVALID;
+        if (value == CommandArguments.INVALID) {
+            // Nothing typed yet, negative IDs, which are rare, or typing that
+            // is not an ID.
+            for (int id : ids) {
+                String text = Integer.toString(id);
+                if (text.startsWith(prefix))
+                    completions.add(text);
+            }
+            return completions;
+        }
+        for (long low = value, high = value; low <= Integer.MAX_VALUE; low *= 10, high = high * 10 + 9) {
+            int position = Arrays.binarySearch(ids, (int) low);
+            if (position < 0)
+                position = -position - 1;
+            for (; position < ids.length && ids[position] <= high; position++)
+                completions.add(Integer.toString(ids[position]));
+            if (value == 0)
+                break;
+        }
+        return completions;
     }
 
     /**
-     * Executes this command.
+     * Gets the options of the proposal whose ID is the first argument.
      * 
-     * @throws WrongArgumentsNumberException
-     *             If the sender used too many or too few arguments.
-     * @throws WrongSenderTypeException
-     *             If the sender is of an appropriate type, e.g. it is a console
-     *             while it should have been a player.
-     * @throws WrongSyntaxException
-     *             If the command syntax is incorrect.
-     * @throws NoPermissionException
-     *             If the sender does not have permission to execute this
-     *             command.
+     * @param args
+     *            The arguments typed so far.
+     * @return the option IDs, in ascending order; none if the first argument
+     *         is not the ID of a proposal.
      */
-    public abstract void run()
-            throws WrongArgumentsNumberException, WrongSenderTypeException, WrongSyntaxException, NoPermissionException;
+    protected static int[] getOptionIds(CommandArguments args) {
+        Proposal proposal = args.size() > 0 && args.isInt(0) ? Main.getProposals().get(args.getInt(0)) : null;
+        return proposal == null ? new int[0] : proposal.getOptionIds();
+    }
 
     /**
-     * Cuts some elements off an array.
+     * Finds the words that start with a prefix.
      * 
-     * @param array
-     *            The array to prune.
-     * @param start
-     *            The array entry from which the new array should start.
-     * @param end
-     *            The array entry where the new array should end (exclusive).
-     * @return a new array which ranges from {@code array[start]} to
-     *         {@code array[end - 1]}.
+     * @param words
+     *            The words.
+     * @param prefix
+     *            The beginning of a word.
+     * @return the matching words, in the same order.
      */
-    public static String[] subArray(String[] array, int start, int end) {
-        String[] subArray = new String[end - start];
-        for (int i = 0; i < subArray.length; i++) {
-            subArray[i] = array[start + i];
+    protected static List<String> completeWords(List<String> words, String prefix) {
+        List<String> completions = new ArrayList<>();
+        for (String word : words) {
+            if (word.startsWith(prefix))
+                completions.add(word);
         }
-        return subArray;
+        return completions;
     }
 
+    /**
+     * Sends a message to a command sender. This may be called from any
+     * thread; the message is sent on the main server thread.
+     * 
+     * @param sender
+     *            The sender of the command.
+     * @param message
+     *            The message to send.
+     */
+    public static void reply(CommandSender sender, String message) {
+        if (Bukkit.isPrimaryThread()) {
+            sender.sendMessage(message);
+        } else {
+            Main plugin = JavaPlugin.getPlugin(Main.class);
+            if (plugin.isEnabled())
+                Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage(message));
+        }
+    }
+
+    /**
+     * Executes this command. The arguments have already been checked against
+     * the declared types, and the sender against the declared permission and
+     * sender type.
+     * 
+     * @param sender
+     *            The instance which sent this command.
+     * @param args
+     *            The command arguments.
+     * @return {@link CommandResult#SUCCESS}, or the reason why the command
+     *         could not be executed.
+     */
+    public abstract CommandResult run(CommandSender sender, CommandArguments args);
+
 }
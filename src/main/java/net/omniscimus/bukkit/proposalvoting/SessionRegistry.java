@@ -0,0 +1,73 @@
+package net.omniscimus.bukkit.proposalvoting;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the Voters who are online at the moment. It may be used from
+ * any thread.
+ */
+public class SessionRegistry {
+
+    private final ConcurrentMap<UUID, Voter> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the Voter of an online player.
+     * 
+     * @param playerId
+     *            The Unique User ID of the player, as generated by Minecraft.
+     * @return the Voter, or {@code null} if the player has no session.
+     */
+    public Voter get(UUID playerId) {
+        return sessions.get(playerId);
+    }
+
+    /**
+     * Starts a session for a Voter. An earlier session of the same player is
+     * replaced.
+     * 
+     * @param voter
+     *            The Voter whose session starts.
+     * @return the Voter whose session was replaced, or {@code null} if there
+     *         was none.
+     */
+    public Voter add(Voter voter) {
+        return sessions.put(voter.getId(), voter);
+    }
+
+    /**
+     * Ends the session of a player.
+     * 
+     * @param playerId
+     *            The Unique User ID of the player, as generated by Minecraft.
+     * @return the Voter whose session ended, or {@code null} if the player had
+     *         no session.
+     */
+    public Voter remove(UUID playerId) {
+        return sessions.remove(playerId);
+    }
+
+    /**
+     * Gets all online Voters. The returned collection is a live view, not a
+     * copy: iterating over it never blocks and never fails, and it reflects
+     * the sessions that were started or ended while iterating only in part.
+     * 
+     * @return an unmodifiable view of the online Voters.
+     */
+    public Collection<Voter> getAll() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * Gets the number of online Voters.
+     * 
+     * @return the amount of sessions.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+}
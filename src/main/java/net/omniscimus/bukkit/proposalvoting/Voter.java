@@ -1,7 +1,10 @@
 package net.omniscimus.bukkit.proposalvoting;
 
+import java.io.IOException;
 import java.util.UUID;
 
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+
 /**
  * Represents a player who might try to vote on a proposal.
  */
@@ -9,6 +12,7 @@ public class Voter {
 
     private long loginTime, logoutTime;
     private UUID playerId;
+    private int index;
 
     /**
      * Creates a new Voter instance.
@@ -18,6 +22,7 @@ public class Voter {
      */
     public Voter(UUID playerId) {
         this.playerId = playerId;
+        this.index = Main.getVoters().getIndex(playerId);
     }
 
     /**
@@ -35,7 +40,7 @@ public class Voter {
      * @param loginTime
      *            The new login time, in milliseconds since the Unix Epoch.
      */
-    public void setLoginTime(long loginTime) {
+    public synchronized void setLoginTime(long loginTime) {
         this.loginTime = loginTime;
     }
 
@@ -45,19 +50,71 @@ public class Voter {
      * @param logoutTime
      *            The new logout time, in milliseconds since the Unix Epoch.
      */
-    public void setLogoutTime(long logoutTime) {
+    public synchronized void setLogoutTime(long logoutTime) {
         this.logoutTime = logoutTime;
     }
 
     /**
-     * Adds the playtime of this session to the saved amount of playtime for the
-     * current week. This function requires that the login time and the logout
-     * time have been set for this Voter.
+     * Gets the index of the player, as assigned by the player dictionary.
+     * 
+     * @return the player's index.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Takes the playtime of this session that has not been saved yet. The
+     * session is counted up to {@code now}, or up to the logout time if that
+     * has been set and is earlier; from then on, it counts from that point.
+     * 
+     * @param now
+     *            The current time, in milliseconds since the Unix Epoch.
+     * @return the playtime that has not been saved yet, in milliseconds.
+     */
+    public synchronized long accruePlaytime(long now) {
+        long end = logoutTime != 0 ? Math.min(now, logoutTime) : now;
+        if (end <= loginTime)
+            return 0L;
+        long playedTime = end - loginTime;
+        loginTime = end;
+        return playedTime;
+    }
+
+    /**
+     * Hands back playtime that was taken by {@link #accruePlaytime(long)} but
+     * could not be saved, so that it is taken again the next time.
+     * 
+     * @param playtime
+     *            The playtime that was taken, in milliseconds.
      */
-    public void updatePlaytime() {
-        long playedTime = logoutTime - loginTime;
-        long totalPlaytime = Configuration.getPlaytime(playerId, Main.getCurrentWeek()) + playedTime;
-        Configuration.setPlaytime(playerId, Main.getCurrentWeek(), totalPlaytime);
+    public synchronized void returnPlaytime(long playtime) {
+        loginTime -= playtime;
+    }
+
+    /**
+     * Adds the playtime of this session that has not been saved yet to the
+     * saved amount of playtime for the current week, and to the playtime
+     * window. This function requires
+     * that the login time and the logout time have been set for this Voter.
+     * 
+     * @throws IOException
+     *             If the playtime could not be saved. If it could not be saved
+     *             at all, it is handed back, so that it is taken again by
+     *             {@link #accruePlaytime(long)}.
+     */
+    public void updatePlaytime() throws IOException {
+        long playedTime = accruePlaytime(logoutTime);
+        if (playedTime > 0) {
+            try {
+                Main.getPlaytimeLedger().addPlaytime(index, Main.getCurrentWeek(), playedTime);
+            } catch (IOException e) {
+                returnPlaytime(playedTime);
+                throw e;
+            }
+            long recent = Main.getPlaytimeWindow().addPlaytime(index, playedTime);
+            Main.getElectorate().playtimeChanged(index, recent);
+        }
     }
 
     /**
@@ -67,8 +124,7 @@ public class Voter {
      * @return true if the player can vote
      */
     public boolean isInElectorate() {
-        return Configuration.playerHasOptedIn(playerId)
-                && Configuration.getPlaytimeRequirement() <= Configuration.getPlaytime(playerId, Main.getCurrentWeek());
+        return Main.getElectorate().contains(index);
     }
 
     /**
@@ -81,36 +137,36 @@ public class Voter {
      *            voting system.
      */
     public void setOptin(boolean optIn) {
-        Configuration.setPlayerOptIn(playerId, optIn);
+        Main.getElectorate().setOptedIn(playerId, optIn);
     }
 
     /**
-     * Records a vote on a certain option for a certain proposal for this Voter.
-     * Note that this is irreversible because it is not stored for which option
-     * each player voted (anonymous voting). It is recorded that this Voter has
-     * voted, to prevent duplicate voting.
+     * Records a vote on one or more options of a certain proposal for this
+     * Voter, ranked in order of preference. Note that this is irreversible
+     * because it is not stored which ranking each player cast (anonymous
+     * voting). It is recorded that this Voter has voted, to prevent duplicate
+     * voting.
      * 
      * @param proposalId
      *            The ID of the proposal.
-     * @param optionId
-     *            The ID of the option to vote on.
+     * @param optionIds
+     *            The IDs of the options to vote on, in order of preference.
      * @return {@code true} if the vote was cast successfully; {@code false} if
-     *         the player had already voted, or if voting is not enabled for
-     *         this proposal, or if the Voter did not meet the weekly playtime
-     *         requirement, or if the Voter has not opted in to the voting
-     *         system.
+     *         the player had already voted, or if the proposal or one of the
+     *         options does not exist, or if an option is ranked twice, or if
+     *         voting is not enabled for this proposal, or if the Voter did not
+     *         meet the playtime requirement, or if the Voter has not opted in
+     *         to the voting system.
      */
-    public boolean vote(int proposalId, int optionId) {
-        if (Configuration.playerHasVoted(proposalId, playerId) || !isInElectorate()) {
+    public boolean vote(int proposalId, int... optionIds) {
+        Proposal proposal = Main.getProposals().get(proposalId);
+        if (proposal == null || !proposal.isEnabled() || proposal.hasVoted(index)) {
             return false;
         }
-        if (Configuration.getVotingEnabled(proposalId)) {
-            Configuration.setProposalOptionVotes(proposalId, optionId,
-                    Configuration.getProposalOptionVotes(proposalId, optionId) + 1);
-            Configuration.setPlayerHasVoted(proposalId, playerId, true);
-            return true;
-        } else
+        if (!isInElectorate() || !proposal.castVote(index, optionIds))
             return false;
+        Main.getMetrics().voteCast();
+        return true;
     }
 
 }
@@ -3,48 +3,50 @@ package net.omniscimus.bukkit.proposalvoting.commands;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
-import net.omniscimus.bukkit.proposalvoting.Configuration;
-import net.omniscimus.bukkit.proposalvoting.exceptions.NoPermissionException;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
 
 /**
  * Represents the command that is issued by senders who intend to create a new
  * proposal.
  */
-public class AddProposalCommand extends ProposalCommand {
+public class AddProposalCommand extends PluginCommand {
 
     /**
-     * Creates a new AddProposalCommand instance.
-     * 
-     * @param sender
-     *            The instance which sent this command.
-     * @param args
-     *            The command arguments.
+     * Only administrators may create proposals.
      */
-    public AddProposalCommand(CommandSender sender, String[] args) {
-        super(sender, args);
+    @Override
+    public String getPermission() {
+        return "proposalvoting.admin";
     }
 
     /**
-     * Sends the CommandSender the next unused proposal ID.
+     * The new proposal is stored.
      */
     @Override
-    public void run() throws NoPermissionException {
-        if (!sender.hasPermission("proposalvoting.admin"))
-            throw new NoPermissionException();
-        int id1 = createProposal();
-        sender.sendMessage(
-                ChatColor.GOLD + "You can create a new proposal by using the edit command using the proposal ID: '"
-                        + ChatColor.RED + id1 + ChatColor.GOLD + "'.");
+    public boolean needsStorage() {
+        return true;
     }
 
     /**
-     * Gets an ID that can be used for a new proposal. Actually doesn't create
-     * or save the proposal.
-     * 
-     * @return a usable proposal ID.
+     * Proposals are changed one command at a time.
      */
-    private int createProposal() {
-        return Configuration.getNextProposalId();
+    @Override
+    public boolean changesProposals() {
+        return true;
+    }
+
+    /**
+     * Creates a new proposal, and sends the CommandSender its ID.
+     */
+    @Override
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        int id = Main.getProposals().create().getId();
+        reply(sender, ChatColor.GOLD + "Proposal '" + ChatColor.RED + id + ChatColor.GOLD
+                + "' was created. Use the edit command to give it a title, a description and options.");
+        return CommandResult.SUCCESS;
     }
 
 }
@@ -1,27 +1,43 @@
 package net.omniscimus.bukkit.proposalvoting.commands;
 
+import java.util.List;
+
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
-import net.omniscimus.bukkit.proposalvoting.Configuration;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
+import net.omniscimus.bukkit.proposalvoting.ArgumentType;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalOption;
 
 /**
  * Represents the command that is issued by senders who intend to check the
  * number of votes on a certain proposal option.
  */
-public class CheckProposalCommand extends ProposalCommand {
+public class CheckProposalCommand extends PluginCommand {
 
     /**
-     * Creates a new CheckProposalCommand instance.
-     * 
-     * @param sender
-     *            The instance which sent this command.
-     * @param args
-     *            The command arguments.
+     * The IDs of the proposal and of the option.
      */
-    public CheckProposalCommand(CommandSender sender, String[] args) {
-        super(sender, args);
+    private static final ArgumentType[] ARGUMENTS = { ArgumentType.INTEGER, ArgumentType.INTEGER };
+
+    @Override
+    public ArgumentType[] getArguments() {
+        return ARGUMENTS;
+    }
+
+    /**
+     * Suggests the IDs of the existing proposals, and then the options of the
+     * proposal.
+     */
+    @Override
+    public List<String> complete(CommandSender sender, CommandArguments args) {
+        if (args.size() == 1)
+            return completeIds(Main.getProposals().getIds(false), args.get(0));
+        return completeIds(getOptionIds(args), args.get(1));
     }
 
     /**
@@ -29,19 +45,10 @@ public class CheckProposalCommand extends ProposalCommand {
      * proposal option.
      */
     @Override
-    public void run() throws WrongSyntaxException {
-        if (args.length != 3) {
-            throw new WrongSyntaxException();
-        }
-        int propId, optionId;
-        try {
-            propId = Integer.parseInt(args[1]);
-            optionId = Integer.parseInt(args[2]);
-        } catch (NumberFormatException e) {
-            throw new WrongSyntaxException();
-        }
-        sender.sendMessage(ChatColor.RED + "" + checkVotes(propId, optionId) + ChatColor.GOLD
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        reply(sender, ChatColor.RED + "" + checkVotes(args.getInt(0), args.getInt(1)) + ChatColor.GOLD
                 + " players have voted for this proposal option.");
+        return CommandResult.SUCCESS;
     }
 
     /**
@@ -51,10 +58,15 @@ public class CheckProposalCommand extends ProposalCommand {
      *            The ID of the proposal.
      * @param optionId
      *            The ID of the option.
-     * @return the amount of votes on this proposal option
+     * @return the amount of votes on this proposal option; 0 if the proposal
+     *         or the option does not exist
      */
     public static int checkVotes(int proposalId, int optionId) {
-        return Configuration.getProposalOptionVotes(proposalId, optionId);
+        Proposal proposal = Main.getProposals().get(proposalId);
+        if (proposal == null)
+            return 0;
+        ProposalOption option = proposal.getOption(optionId);
+        return option == null ? 0 : option.getVotes();
     }
 
 }
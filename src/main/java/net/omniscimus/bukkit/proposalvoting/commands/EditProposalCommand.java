@@ -1,28 +1,83 @@
 package net.omniscimus.bukkit.proposalvoting.commands;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
-import net.omniscimus.bukkit.proposalvoting.Configuration;
-import net.omniscimus.bukkit.proposalvoting.exceptions.NoPermissionException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
+import net.omniscimus.bukkit.proposalvoting.ArgumentType;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
 
 /**
  * Represents the command that is issued by senders who intend to modify voting
  * proposals.
  */
-public class EditProposalCommand extends ProposalCommand {
+public class EditProposalCommand extends PluginCommand {
 
     /**
-     * Creates a new EditProposalCommand instance.
-     * 
-     * @param sender
-     *            The instance which sent this command.
-     * @param args
-     *            The command arguments.
+     * The ID of the proposal, the value to change, and the new text; for an
+     * option, the text starts with the option ID.
+     */
+    private static final ArgumentType[] ARGUMENTS = { ArgumentType.INTEGER, ArgumentType.WORD, ArgumentType.TEXT };
+    /**
+     * The values of a proposal that can be changed, in alphabetical order.
+     */
+    private static final List<String> VALUES = Collections
+            .unmodifiableList(Arrays.asList("description", "option", "title"));
+
+    @Override
+    public ArgumentType[] getArguments() {
+        return ARGUMENTS;
+    }
+
+    /**
+     * Only administrators may edit proposals.
+     */
+    @Override
+    public String getPermission() {
+        return "proposalvoting.admin";
+    }
+
+    /**
+     * The texts are stored.
+     */
+    @Override
+    public boolean needsStorage() {
+        return true;
+    }
+
+    /**
+     * Proposals are changed one command at a time.
      */
-    public EditProposalCommand(CommandSender sender, String[] args) {
-        super(sender, args);
+    @Override
+    public boolean changesProposals() {
+        return true;
+    }
+
+    /**
+     * Suggests the IDs of the existing proposals, then the values that can be
+     * changed, and for an option, the options of the proposal.
+     */
+    @Override
+    public List<String> complete(CommandSender sender, CommandArguments args) {
+        switch (args.size()) {
+        case 1:
+            return completeIds(Main.getProposals().getIds(false), args.get(0));
+        case 2:
+            return completeWords(VALUES, args.get(1));
+        case 3:
+            if (args.get(1).equals("option"))
+                return completeIds(getOptionIds(args), args.get(2));
+            return Collections.emptyList();
+        default:
+            return Collections.emptyList();
+        }
     }
 
     /**
@@ -30,76 +85,46 @@ public class EditProposalCommand extends ProposalCommand {
      * CommandSender.
      */
     @Override
-    public void run() throws WrongSyntaxException, NoPermissionException {
-        if (!sender.hasPermission("proposalvoting.admin"))
-            throw new NoPermissionException();
-        if (args.length < 4)
-            throw new WrongSyntaxException();
-        int id;
-        try {
-            id = Integer.parseInt(args[1]);
-        } catch (NumberFormatException e) {
-            throw new WrongSyntaxException();
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        int proposalId = args.getInt(0);
+        Proposal proposal = Main.getProposals().get(proposalId);
+        if (proposal == null) {
+            reply(sender, ChatColor.GOLD + "Proposal with ID '" + ChatColor.RED + proposalId + ChatColor.GOLD
+                    + "' does not exist! Use the add command to create a proposal.");
+            return CommandResult.SUCCESS;
         }
-        editProposal(id, args);
-        sender.sendMessage(ChatColor.GOLD + "The proposal was changed successfully.");
+        CommandResult result = editProposal(proposal, args);
+        if (result == CommandResult.SUCCESS)
+            reply(sender, ChatColor.GOLD + "The proposal was changed successfully.");
+        return result;
     }
 
     /**
      * Changes a value in a proposal.
      * 
-     * @param proposalId
-     *            The ID of the proposal to modify.
+     * @param proposal
+     *            The proposal to modify.
      * @param args
      *            The arguments of the command.
-     * @throws WrongSyntaxException
-     *             If the arguments are invalid.
+     * @return {@link CommandResult#WRONG_SYNTAX} if the value does not exist,
+     *         or if an option is changed without a valid option ID.
      */
-    private void editProposal(int proposalId, String[] args) throws WrongSyntaxException {
-        switch (args[2]) {
+    private CommandResult editProposal(Proposal proposal, CommandArguments args) {
+        switch (args.get(1)) {
         case "title":
-            Configuration.updateProposalTitle(proposalId, concatenateArgs(args, 3, args.length - 1));
-            break;
+            proposal.setTitle(args.getText(2));
+            return CommandResult.SUCCESS;
         case "description":
-            Configuration.updateProposalDescription(proposalId, concatenateArgs(args, 3, args.length - 1));
-            break;
+            proposal.setDescription(args.getText(2));
+            return CommandResult.SUCCESS;
         case "option":
-            if (args.length < 5)
-                throw new WrongSyntaxException();
-            int optionId;
-            try {
-                optionId = Integer.parseInt(args[3]);
-            } catch (NumberFormatException e) {
-                throw new WrongSyntaxException();
-            }
-            Configuration.setProposalOptionDescription(proposalId, optionId, concatenateArgs(args, 4, args.length - 1));
-            break;
+            if (args.size() < 4 || !args.isInt(2))
+                return CommandResult.WRONG_SYNTAX;
+            proposal.setOptionDescription(args.getInt(2), args.getText(3));
+            return CommandResult.SUCCESS;
         default:
-            throw new WrongSyntaxException();
-        }
-    }
-
-    /**
-     * Concatenates entries in the String array and puts a space in between
-     * every time.
-     * 
-     * @param args
-     *            The array to convert to a String.
-     * @param start
-     *            The first entry that should be appended to the String.
-     * @param end
-     *            The last entry that should be appended to the String.
-     * @return a String containing the elements of {@code args}, with a space in
-     *         between each element.
-     */
-    String concatenateArgs(String[] args, int start, int end) {
-        StringBuilder argsConcat = new StringBuilder();
-        for (int i = start; i <= end; i++) {
-            argsConcat.append(args[i]);
-            if (i != end)
-                argsConcat.append(" ");
+            return CommandResult.WRONG_SYNTAX;
         }
-        return argsConcat.toString();
     }
 
 }
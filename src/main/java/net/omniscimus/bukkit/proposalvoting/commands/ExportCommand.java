@@ -0,0 +1,80 @@
+package net.omniscimus.bukkit.proposalvoting.commands;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import net.omniscimus.bukkit.proposalvoting.ArgumentType;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.DataTransfer;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
+
+/**
+ * Represents the command that is issued by administrators who want to export
+ * all data of the plugin to a file.
+ */
+public class ExportCommand extends PluginCommand {
+
+    /**
+     * The name of the export, which is optional.
+     */
+    private static final ArgumentType[] ARGUMENTS = { ArgumentType.WORD };
+
+    @Override
+    public ArgumentType[] getArguments() {
+        return ARGUMENTS;
+    }
+
+    @Override
+    public int getRequiredArguments() {
+        return 0;
+    }
+
+    /**
+     * Only administrators may export the plugin's data.
+     */
+    @Override
+    public String getPermission() {
+        return "proposalvoting.admin";
+    }
+
+    /**
+     * Starts the export in the background. The CommandSender is told when it
+     * has finished. Without a name, the export is named after the current
+     * date and time.
+     */
+    @Override
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        String name = args.size() == 1 ? args.get(0)
+                : "export-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        DataTransfer transfer = Main.getDataTransfer();
+        File file = transfer.getFile(name);
+        if (file == null)
+            return CommandResult.WRONG_SYNTAX;
+        long start = System.currentTimeMillis();
+        CompletableFuture<Long> export = transfer.exportAsync(file);
+        if (export == null) {
+            reply(sender, ChatColor.RED + "Another export or import is still running.");
+            return CommandResult.SUCCESS;
+        }
+        reply(sender, ChatColor.GOLD + "Exporting to " + ChatColor.RED + file.getName() + ChatColor.GOLD + "...");
+        export.whenComplete((records, e) -> {
+            if (e != null) {
+                Main.getPlugin(Main.class).getLogger().log(Level.SEVERE, "Could not export to " + file.getName(), e);
+                reply(sender, ChatColor.RED + "The export failed: " + e.getMessage());
+            } else {
+                reply(sender, ChatColor.GOLD + "Exported " + ChatColor.RED + records + ChatColor.GOLD + " records in "
+                        + (System.currentTimeMillis() - start) + " ms.");
+            }
+        });
+        return CommandResult.SUCCESS;
+    }
+
+}
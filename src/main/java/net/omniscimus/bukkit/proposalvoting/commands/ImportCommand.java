@@ -0,0 +1,74 @@
+package net.omniscimus.bukkit.proposalvoting.commands;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import net.omniscimus.bukkit.proposalvoting.ArgumentType;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.DataTransfer;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
+
+/**
+ * Represents the command that is issued by administrators who want to import
+ * data that was exported by {@link ExportCommand}, possibly on another server.
+ */
+public class ImportCommand extends PluginCommand {
+
+    /**
+     * The name of the export to import.
+     */
+    private static final ArgumentType[] ARGUMENTS = { ArgumentType.WORD };
+
+    @Override
+    public ArgumentType[] getArguments() {
+        return ARGUMENTS;
+    }
+
+    /**
+     * Only administrators may import data, which replaces the current data.
+     */
+    @Override
+    public String getPermission() {
+        return "proposalvoting.admin";
+    }
+
+    /**
+     * Starts the import in the background. The CommandSender is told when it
+     * has finished.
+     */
+    @Override
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        DataTransfer transfer = Main.getDataTransfer();
+        File file = transfer.getFile(args.get(0));
+        if (file == null)
+            return CommandResult.WRONG_SYNTAX;
+        if (!file.isFile()) {
+            reply(sender, ChatColor.RED + "There is no export named " + args.get(0) + ".");
+            return CommandResult.SUCCESS;
+        }
+        long start = System.currentTimeMillis();
+        CompletableFuture<Long> importing = transfer.importAsync(file);
+        if (importing == null) {
+            reply(sender, ChatColor.RED + "Another export or import is still running.");
+            return CommandResult.SUCCESS;
+        }
+        reply(sender, ChatColor.GOLD + "Importing " + ChatColor.RED + file.getName() + ChatColor.GOLD + "...");
+        importing.whenComplete((records, e) -> {
+            if (e != null) {
+                Main.getPlugin(Main.class).getLogger().log(Level.SEVERE, "Could not import " + file.getName(), e);
+                reply(sender, ChatColor.RED + "The import failed: " + e.getMessage());
+            } else {
+                reply(sender, ChatColor.GOLD + "Imported " + ChatColor.RED + records + ChatColor.GOLD + " records in "
+                        + (System.currentTimeMillis() - start) + " ms.");
+            }
+        });
+        return CommandResult.SUCCESS;
+    }
+
+}
@@ -1,11 +1,14 @@
 package net.omniscimus.bukkit.proposalvoting.commands;
 
+import java.util.List;
+
+import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
 import net.omniscimus.bukkit.proposalvoting.PluginCommand;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongArgumentsNumberException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSenderTypeException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
 
 /**
  * Represents the command that is issued when the sender should receive
@@ -14,23 +17,23 @@ import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
 public class InfoCommand extends PluginCommand {
 
     /**
-     * Creates a new InfoCommand.
-     * 
-     * @param sender
-     *            The entity who sent this command.
-     * @param args
-     *            The command arguments.
-     */
-    public InfoCommand(CommandSender sender, String[] args) {
-        super(sender, args);
-    }
-
-    /**
-     * Sends the command sender information about this plugin.
+     * Sends the command sender the subcommands of /pv that they may use.
      */
     @Override
-    public void run() throws WrongArgumentsNumberException, WrongSenderTypeException, WrongSyntaxException {
-        throw new UnsupportedOperationException(); // TODO
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        List<String> paths = Main.getCommandTree().getUsablePaths(sender);
+        if (paths.isEmpty()) {
+            reply(sender, ChatColor.GOLD + "There are no commands you can use.");
+            return CommandResult.SUCCESS;
+        }
+        StringBuilder message = new StringBuilder();
+        message.append(ChatColor.GOLD).append("Proposal voting commands:");
+        for (int i = 0; i < paths.size(); i++) {
+            message.append(i == 0 ? " " : ChatColor.GOLD + ", ").append(ChatColor.RED).append("/pv ")
+                    .append(paths.get(i));
+        }
+        reply(sender, message.toString());
+        return CommandResult.SUCCESS;
     }
 
 }
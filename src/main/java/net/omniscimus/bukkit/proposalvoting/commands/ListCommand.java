@@ -0,0 +1,76 @@
+package net.omniscimus.bukkit.proposalvoting.commands;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import net.omniscimus.bukkit.proposalvoting.ArgumentType;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+
+/**
+ * Represents the command that is issued by senders who intend to see which
+ * proposals they can vote on.
+ */
+public class ListCommand extends PluginCommand {
+
+    /**
+     * The number of proposals on one page, which fits in the chat window
+     * along with the header.
+     */
+    private static final int PAGE_SIZE = 8;
+    /**
+     * The number of the page, which is optional.
+     */
+    private static final ArgumentType[] ARGUMENTS = { ArgumentType.INTEGER };
+
+    @Override
+    public ArgumentType[] getArguments() {
+        return ARGUMENTS;
+    }
+
+    @Override
+    public int getRequiredArguments() {
+        return 0;
+    }
+
+    /**
+     * The texts of the proposals may have to be read from the disk.
+     */
+    @Override
+    public boolean needsStorage() {
+        return true;
+    }
+
+    /**
+     * Sends the CommandSender one page of the proposals on which voting is
+     * enabled, each summed up in a single line.
+     */
+    @Override
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        int page = args.size() == 1 ? args.getInt(0) : 1;
+        int[] ids = Main.getProposals().getIds(true);
+        if (ids.length == 0) {
+            reply(sender, ChatColor.GOLD + "There are no proposals to vote on.");
+            return CommandResult.SUCCESS;
+        }
+        int pages = (ids.length + PAGE_SIZE - 1) / PAGE_SIZE;
+        if (page < 1 || page > pages) {
+            reply(sender, ChatColor.GOLD + "There is no page " + ChatColor.RED + page + ChatColor.GOLD
+                    + "; there are " + ChatColor.RED + pages + ChatColor.GOLD + ".");
+            return CommandResult.SUCCESS;
+        }
+        reply(sender,
+                ChatColor.GOLD + "Proposals (page " + page + " of " + pages + "), use /pv show <id> for details:");
+        ProposalMessages messages = Main.getProposalMessages();
+        for (int i = (page - 1) * PAGE_SIZE; i < Math.min(ids.length, page * PAGE_SIZE); i++) {
+            Proposal proposal = Main.getProposals().get(ids[i]);
+            if (proposal != null)
+                reply(sender, messages.getSummary(proposal));
+        }
+        return CommandResult.SUCCESS;
+    }
+
+}
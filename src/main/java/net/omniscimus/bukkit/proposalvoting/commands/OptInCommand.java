@@ -6,10 +6,10 @@ import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
-import net.omniscimus.bukkit.proposalvoting.Configuration;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
 import net.omniscimus.bukkit.proposalvoting.PluginCommand;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSenderTypeException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
 
 /**
  * Represents the command that is issued by a player when he intends to opt in
@@ -32,15 +32,19 @@ public class OptInCommand extends PluginCommand {
     private static final String ALREADY_OPTED_IN = ChatColor.RED + "You have already opted in to the ProposalVoting system.";
 
     /**
-     * Creates a new PluginCommand instance.
-     * 
-     * @param sender
-     *            The instance which sent this command.
-     * @param args
-     *            The command arguments.
+     * Only players have playtime to log.
      */
-    public OptInCommand(CommandSender sender, String[] args) {
-        super(sender, args);
+    @Override
+    public boolean isPlayerOnly() {
+        return true;
+    }
+
+    /**
+     * Opting in is stored.
+     */
+    @Override
+    public boolean needsStorage() {
+        return true;
     }
 
     /**
@@ -48,22 +52,15 @@ public class OptInCommand extends PluginCommand {
      * system.
      */
     @Override
-    public void run() throws WrongSyntaxException, WrongSenderTypeException {
-        if (args.length > 0) {
-            throw new WrongSyntaxException();
-        }
-
-        if (!(sender instanceof Player)) {
-            throw new WrongSenderTypeException();
-        }
-
+    public CommandResult run(CommandSender sender, CommandArguments args) {
         UUID id = ((Player) sender).getUniqueId();
-        if (!Configuration.playerHasOptedIn(id)) {
-            Configuration.setPlayerOptIn(id, true);
-            sender.sendMessage(OPTED_IN);
+        if (!Main.getVoters().isOptedIn(id)) {
+            Main.getElectorate().setOptedIn(id, true);
+            reply(sender, OPTED_IN);
         } else {
-            sender.sendMessage(ALREADY_OPTED_IN);
+            reply(sender, ALREADY_OPTED_IN);
         }
+        return CommandResult.SUCCESS;
     }
 
 }
@@ -6,10 +6,10 @@ import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
-import net.omniscimus.bukkit.proposalvoting.Configuration;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
 import net.omniscimus.bukkit.proposalvoting.PluginCommand;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSenderTypeException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
 
 /**
  * Represents the command that is issued by a player when he intends to opt out
@@ -33,37 +33,34 @@ public class OptOutCommand extends PluginCommand {
             + "You are already opted out of the ProposalVoting system.";
 
     /**
-     * Creates a new OptOutCommand instance.
-     * 
-     * @param sender
-     *            The instance which sent this command.
-     * @param args
-     *            The command arguments.
+     * The console can not opt out.
      */
-    public OptOutCommand(CommandSender sender, String[] args) {
-        super(sender, args);
+    @Override
+    public boolean isPlayerOnly() {
+        return true;
     }
 
     /**
-     * Registers the command sender as opted out of the ProposalVoting system.
+     * Opting out is stored.
      */
     @Override
-    public void run() throws WrongSyntaxException, WrongSenderTypeException {
-        if (args.length > 0) {
-            throw new WrongSyntaxException();
-        }
-
-        if (!(sender instanceof Player)) {
-            throw new WrongSenderTypeException();
-        }
+    public boolean needsStorage() {
+        return true;
+    }
 
+    /**
+     * Registers the command sender as opted out of the ProposalVoting system.
+     */
+    @Override
+    public CommandResult run(CommandSender sender, CommandArguments args) {
         UUID id = ((Player) sender).getUniqueId();
-        if (Configuration.playerHasOptedIn(id)) {
-            Configuration.setPlayerOptIn(id, false);
-            sender.sendMessage(OPTED_OUT);
+        if (Main.getVoters().isOptedIn(id)) {
+            Main.getElectorate().setOptedIn(id, false);
+            reply(sender, OPTED_OUT);
         } else {
-            sender.sendMessage(ALREADY_OPTED_OUT);
+            reply(sender, ALREADY_OPTED_OUT);
         }
+        return CommandResult.SUCCESS;
     }
 
 }
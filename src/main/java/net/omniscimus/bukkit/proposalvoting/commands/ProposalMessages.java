@@ -0,0 +1,159 @@
+package net.omniscimus.bukkit.proposalvoting.commands;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.ChatColor;
+
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalOption;
+
+/**
+ * Renders the chat lines that describe proposals, and keeps them until the
+ * proposal changes. Rendering reads the texts of a proposal from the text
+ * store and concatenates them with colors; with the lines cached, showing a
+ * proposal that has not changed only costs a lookup. Whether a proposal has
+ * changed is told by its {@link Proposal#getRevision() revision}, which
+ * changes when it is edited or toggled, or when its votes change.
+ */
+public class ProposalMessages {
+
+    /**
+     * The number of proposals whose summaries are kept.
+     */
+    private static final int SUMMARIES = 1024;
+    /**
+     * The number of proposals whose full descriptions are kept.
+     */
+    private static final int DETAILS = 64;
+
+    private final Map<Integer, Rendered> summaries = lruMap(SUMMARIES);
+    private final Map<Integer, Rendered> details = lruMap(DETAILS);
+
+    /**
+     * Gets the line which sums up a proposal in a listing: its ID, its title
+     * and the number of votes on it.
+     * 
+     * @param proposal
+     *            The proposal.
+     * @return the line.
+     */
+    public String getSummary(Proposal proposal) {
+        Rendered rendered = get(summaries, proposal);
+        if (rendered == null) {
+            int revision = proposal.getRevision();
+            long votes = 0;
+            for (ProposalOption option : proposal.getOptions())
+                votes += option.getVotes();
+            String line = ChatColor.GOLD + "#" + proposal.getId() + " " + ChatColor.WHITE + title(proposal)
+                    + ChatColor.GOLD + " (" + ChatColor.RED + votes + ChatColor.GOLD + " votes)";
+            rendered = put(summaries, proposal, revision, new String[] { line });
+        }
+        return rendered.lines[0];
+    }
+
+    /**
+     * Gets the lines which describe a proposal in full: its title, whether
+     * voting on it is enabled, its description, and every option with its
+     * description and the number of votes on it.
+     * 
+     * @param proposal
+     *            The proposal.
+     * @return the lines; the array should not be changed.
+     */
+    public String[] getDetails(Proposal proposal) {
+        Rendered rendered = get(details, proposal);
+        if (rendered == null) {
+            int revision = proposal.getRevision();
+            List<String> lines = new ArrayList<>();
+            lines.add(ChatColor.GOLD + "Proposal #" + proposal.getId() + ": " + ChatColor.WHITE + title(proposal)
+                    + (proposal.isEnabled() ? "" : ChatColor.GRAY + " (voting disabled)"));
+            String description = proposal.getDescription();
+            if (description != null)
+                lines.add(ChatColor.GRAY + description);
+            for (int optionId : proposal.getOptionIds()) {
+                ProposalOption option = proposal.getOption(optionId);
+                if (option == null)
+                    continue;
+                String optionDescription = option.getDescription();
+                lines.add(ChatColor.GOLD + "  " + optionId + ") " + ChatColor.WHITE
+                        + (optionDescription == null ? "" : optionDescription) + ChatColor.GOLD + " - "
+                        + ChatColor.RED + option.getVotes() + ChatColor.GOLD + " votes");
+            }
+            rendered = put(details, proposal, revision, lines.toArray(new String[lines.size()]));
+        }
+        return rendered.lines;
+    }
+
+    /**
+     * Forgets all rendered lines.
+     */
+    public void clear() {
+        synchronized (summaries) {
+            summaries.clear();
+        }
+        synchronized (details) {
+            details.clear();
+        }
+    }
+
+    private static String title(Proposal proposal) {
+        String title = proposal.getTitle();
+        return title == null ? "(untitled)" : title;
+    }
+
+    /**
+     * Gets the lines of a proposal from a cache, if they are up to date.
+     */
+    private static Rendered get(Map<Integer, Rendered> cache, Proposal proposal) {
+        Rendered rendered;
+        synchronized (cache) {
+            rendered = cache.get(proposal.getId());
+        }
+        if (rendered == null || rendered.proposal != proposal || rendered.revision != proposal.getRevision())
+            return null;
+        return rendered;
+    }
+
+    private static Rendered put(Map<Integer, Rendered> cache, Proposal proposal, int revision, String[] lines) {
+        Rendered rendered = new Rendered(proposal, revision, lines);
+        synchronized (cache) {
+            cache.put(proposal.getId(), rendered);
+        }
+        return rendered;
+    }
+
+    private static Map<Integer, Rendered> lruMap(int capacity) {
+        return new LinkedHashMap<Integer, Rendered>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Rendered> eldest) {
+                return size() > capacity;
+            }
+
+        };
+    }
+
+    /**
+     * The lines of a proposal, and the revision of the proposal of which they
+     * were rendered.
+     */
+    private static final class Rendered {
+
+        private final Proposal proposal;
+        private final int revision;
+        private final String[] lines;
+
+        Rendered(Proposal proposal, int revision, String[] lines) {
+            this.proposal = proposal;
+            this.revision = revision;
+            this.lines = lines;
+        }
+
+    }
+
+}
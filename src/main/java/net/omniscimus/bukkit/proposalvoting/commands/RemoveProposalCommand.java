@@ -1,53 +1,81 @@
 package net.omniscimus.bukkit.proposalvoting.commands;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
-import net.omniscimus.bukkit.proposalvoting.Configuration;
-import net.omniscimus.bukkit.proposalvoting.exceptions.NoPermissionException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
+import net.omniscimus.bukkit.proposalvoting.ArgumentType;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
 
 /**
  * Represents the command that is issued by senders who intend to perform an
  * operation on voting proposals.
  */
-public class RemoveProposalCommand extends ProposalCommand {
+public class RemoveProposalCommand extends PluginCommand {
 
     /**
-     * Creates a new RemoveProposalCommand instance.
-     * 
-     * @param sender
-     *            The instance which sent this command.
-     * @param args
-     *            The command arguments.
+     * The ID of the proposal.
+     */
+    private static final ArgumentType[] ARGUMENTS = { ArgumentType.INTEGER };
+
+    @Override
+    public ArgumentType[] getArguments() {
+        return ARGUMENTS;
+    }
+
+    /**
+     * Only administrators may delete proposals.
+     */
+    @Override
+    public String getPermission() {
+        return "proposalvoting.admin";
+    }
+
+    /**
+     * The removal is stored.
      */
-    public RemoveProposalCommand(CommandSender sender, String[] args) {
-        super(sender, args);
+    @Override
+    public boolean needsStorage() {
+        return true;
+    }
+
+    /**
+     * Proposals are changed one command at a time.
+     */
+    @Override
+    public boolean changesProposals() {
+        return true;
+    }
+
+    /**
+     * Suggests the IDs of the existing proposals.
+     */
+    @Override
+    public List<String> complete(CommandSender sender, CommandArguments args) {
+        if (args.size() > 1)
+            return Collections.emptyList();
+        return completeIds(Main.getProposals().getIds(false), args.get(0));
     }
 
     /**
      * Permanently deletes the proposal specified in the command arguments.
      */
     @Override
-    public void run() throws NoPermissionException, WrongSyntaxException {
-        if (!sender.hasPermission("proposalvoting.admin"))
-            throw new NoPermissionException();
-        if (args.length != 2) {
-            throw new WrongSyntaxException();
-        }
-        int id2;
-        try {
-            id2 = Integer.parseInt(args[1]);
-        } catch (NumberFormatException e) {
-            throw new WrongSyntaxException();
-        }
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        int id2 = args.getInt(0);
         if (removeProposal(id2)) {
-            sender.sendMessage(ChatColor.GOLD + "Successfully deleted proposal with ID '" + ChatColor.RED + id2
+            reply(sender, ChatColor.GOLD + "Successfully deleted proposal with ID '" + ChatColor.RED + id2
                     + ChatColor.GOLD + "'.");
         } else {
-            sender.sendMessage(
+            reply(sender,
                     ChatColor.GOLD + "Proposal with ID '" + ChatColor.RED + id2 + ChatColor.GOLD + "' does not exist!");
         }
+        return CommandResult.SUCCESS;
     }
 
     /**
@@ -58,7 +86,7 @@ public class RemoveProposalCommand extends ProposalCommand {
      * @return {@code true} if the proposal was successfully deleted.
      */
     private boolean removeProposal(int id) {
-        return Configuration.deleteProposal(id);
+        return Main.getProposals().remove(id);
     }
 
 }
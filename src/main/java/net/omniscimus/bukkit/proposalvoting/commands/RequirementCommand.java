@@ -0,0 +1,73 @@
+package net.omniscimus.bukkit.proposalvoting.commands;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import net.omniscimus.bukkit.proposalvoting.ArgumentType;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Electorate;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
+
+/**
+ * Represents the command that is issued by administrators who intend to see or
+ * change the amount of playtime that is required to vote.
+ */
+public class RequirementCommand extends PluginCommand {
+
+    /**
+     * The new requirement in minutes, which is optional.
+     */
+    private static final ArgumentType[] ARGUMENTS = { ArgumentType.INTEGER };
+
+    @Override
+    public ArgumentType[] getArguments() {
+        return ARGUMENTS;
+    }
+
+    @Override
+    public int getRequiredArguments() {
+        return 0;
+    }
+
+    /**
+     * Only administrators may change who is allowed to vote.
+     */
+    @Override
+    public String getPermission() {
+        return "proposalvoting.admin";
+    }
+
+    /**
+     * The requirement is saved in the configuration, and the whole electorate
+     * is determined anew.
+     */
+    @Override
+    public boolean needsStorage() {
+        return true;
+    }
+
+    /**
+     * Sends the CommandSender the playtime requirement, or changes it to the
+     * specified number of minutes.
+     */
+    @Override
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        Electorate electorate = Main.getElectorate();
+        if (args.size() == 0) {
+            reply(sender, ChatColor.GOLD + "Players need " + ChatColor.RED + electorate.getRequirement() / 60000L
+                    + ChatColor.GOLD + " minutes of playtime to vote.");
+            return CommandResult.SUCCESS;
+        }
+        int minutes = args.getInt(0);
+        if (minutes < 0)
+            return CommandResult.WRONG_SYNTAX;
+        electorate.setRequirement(minutes * 60000L);
+        reply(sender, ChatColor.GOLD + "Players now need " + ChatColor.RED + minutes + ChatColor.GOLD
+                + " minutes of playtime to vote; " + ChatColor.RED + electorate.size() + ChatColor.GOLD
+                + " players are allowed to vote.");
+        return CommandResult.SUCCESS;
+    }
+
+}
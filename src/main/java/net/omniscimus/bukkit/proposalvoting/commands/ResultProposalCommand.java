@@ -0,0 +1,114 @@
+package net.omniscimus.bukkit.proposalvoting.commands;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import net.omniscimus.bukkit.proposalvoting.ArgumentType;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+import net.omniscimus.bukkit.proposalvoting.tally.TallyMethod;
+import net.omniscimus.bukkit.proposalvoting.tally.TallyResult;
+
+/**
+ * Represents the command that is issued by senders who intend to see the
+ * result of a proposal, as determined by plurality, approval or instant-runoff
+ * voting.
+ */
+public class ResultProposalCommand extends PluginCommand {
+
+    /**
+     * The ID of the proposal, and the optional name of the tally method.
+     */
+    private static final ArgumentType[] ARGUMENTS = { ArgumentType.INTEGER, ArgumentType.WORD };
+    /**
+     * The names of the tally methods, in alphabetical order.
+     */
+    private static final List<String> METHODS = methodNames();
+
+    @Override
+    public ArgumentType[] getArguments() {
+        return ARGUMENTS;
+    }
+
+    @Override
+    public int getRequiredArguments() {
+        return 1;
+    }
+
+    /**
+     * The texts of the proposals may have to be read from the disk.
+     */
+    @Override
+    public boolean needsStorage() {
+        return true;
+    }
+
+    /**
+     * Suggests the IDs of the existing proposals, and then the names of the
+     * tally methods.
+     */
+    @Override
+    public List<String> complete(CommandSender sender, CommandArguments args) {
+        if (args.size() == 1)
+            return completeIds(Main.getProposals().getIds(false), args.get(0));
+        return completeWords(METHODS, args.get(1));
+    }
+
+    /**
+     * Sends the CommandSender the votes on the options of the specified
+     * proposal in every round of counting, and the winner.
+     */
+    @Override
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        TallyMethod method = args.size() == 2 ? TallyMethod.fromName(args.get(1)) : TallyMethod.PLURALITY;
+        if (method == null)
+            return CommandResult.WRONG_SYNTAX;
+
+        Proposal proposal = Main.getProposals().get(args.getInt(0));
+        if (proposal == null) {
+            reply(sender, ChatColor.GOLD + "That proposal does not exist.");
+            return CommandResult.SUCCESS;
+        }
+        TallyResult result = Main.getTallyEngine().tally(proposal, method);
+        reply(sender, ChatColor.GOLD + "Result of " + ChatColor.RED + proposal.getTitle() + ChatColor.GOLD + " by "
+                + method.getName() + ", " + ChatColor.RED + result.getBallots() + ChatColor.GOLD + " ballots:");
+        int number = 1;
+        for (TallyResult.Round round : result.getRounds()) {
+            StringBuilder line = new StringBuilder();
+            if (result.getRounds().size() > 1)
+                line.append(ChatColor.GOLD).append("Round ").append(number++).append(": ");
+            for (int optionId : round.getOptionIds()) {
+                line.append(ChatColor.GOLD).append('#').append(optionId).append(' ').append(ChatColor.RED)
+                        .append(round.getVotes(optionId)).append(' ');
+            }
+            if (round.getExhausted() > 0)
+                line.append(ChatColor.GRAY).append("(exhausted ").append(round.getExhausted()).append(") ");
+            for (int optionId : round.getEliminated())
+                line.append(ChatColor.GRAY).append("-#").append(optionId).append(' ');
+            reply(sender, line.toString().trim());
+        }
+        if (result.getWinner() == null) {
+            reply(sender, ChatColor.GOLD + "There is no winner.");
+        } else {
+            reply(sender, ChatColor.GOLD + "The winner is option " + ChatColor.RED + result.getWinner()
+                    + ChatColor.GOLD + ".");
+        }
+        return CommandResult.SUCCESS;
+    }
+
+    private static List<String> methodNames() {
+        List<String> names = new ArrayList<>();
+        for (TallyMethod method : TallyMethod.values())
+            names.add(method.getName());
+        Collections.sort(names);
+        return Collections.unmodifiableList(names);
+    }
+
+}
@@ -0,0 +1,68 @@
+package net.omniscimus.bukkit.proposalvoting.commands;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import net.omniscimus.bukkit.proposalvoting.ArgumentType;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+
+/**
+ * Represents the command that is issued by senders who intend to read a
+ * proposal and its options.
+ */
+public class ShowCommand extends PluginCommand {
+
+    /**
+     * The ID of the proposal.
+     */
+    private static final ArgumentType[] ARGUMENTS = { ArgumentType.INTEGER };
+
+    @Override
+    public ArgumentType[] getArguments() {
+        return ARGUMENTS;
+    }
+
+    /**
+     * The texts of the proposals may have to be read from the disk.
+     */
+    @Override
+    public boolean needsStorage() {
+        return true;
+    }
+
+    /**
+     * Suggests the IDs of the existing proposals.
+     */
+    @Override
+    public List<String> complete(CommandSender sender, CommandArguments args) {
+        if (args.size() > 1)
+            return Collections.emptyList();
+        return completeIds(Main.getProposals().getIds(false), args.get(0));
+    }
+
+    /**
+     * Sends the CommandSender the title, the description and the options of
+     * the specified proposal.
+     */
+    @Override
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        int proposalId = args.getInt(0);
+        Proposal proposal = Main.getProposals().get(proposalId);
+        if (proposal == null) {
+            reply(sender, ChatColor.GOLD + "Proposal with ID '" + ChatColor.RED + proposalId + ChatColor.GOLD
+                    + "' does not exist!");
+            return CommandResult.SUCCESS;
+        }
+        for (String line : Main.getProposalMessages().getDetails(proposal))
+            reply(sender, line);
+        return CommandResult.SUCCESS;
+    }
+
+}
@@ -0,0 +1,63 @@
+package net.omniscimus.bukkit.proposalvoting.commands;
+
+import java.util.Map;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
+import net.omniscimus.bukkit.proposalvoting.metrics.LatencySnapshot;
+import net.omniscimus.bukkit.proposalvoting.metrics.PluginMetrics;
+
+/**
+ * Represents the command that is issued by administrators who want to see how
+ * the plugin performs.
+ */
+public class StatsCommand extends PluginCommand {
+
+    /**
+     * The statistics are meant for administrators.
+     */
+    @Override
+    public String getPermission() {
+        return "proposalvoting.admin";
+    }
+
+    /**
+     * Sends the CommandSender the plugin's counters and latencies.
+     */
+    @Override
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        PluginMetrics metrics = Main.getMetrics();
+        reply(sender, ChatColor.GOLD + "ProposalVoting statistics:");
+        reply(sender, ChatColor.GOLD + "Votes cast: " + ChatColor.RED + metrics.getVotesCast() + ChatColor.GOLD
+                + " (" + String.format("%.2f", metrics.getVotesPerSecond()) + " per second over the last minute)");
+        reply(sender, ChatColor.GOLD + "Online sessions: " + ChatColor.RED + metrics.getOnlineSessions());
+        reply(sender, format("Storage flushes", metrics.getStorageFlushLatency()));
+        reply(sender, format("Week rollovers", metrics.getWeekRolloverLatency()));
+        reply(sender, format("Main thread per command", metrics.getMainThreadCommandLatency()));
+        for (Map.Entry<String, LatencySnapshot> entry : metrics.getCommandLatencies().entrySet())
+            reply(sender, format("/pv " + entry.getKey(), entry.getValue()));
+        return CommandResult.SUCCESS;
+    }
+
+    /**
+     * Formats a line with the latencies of an operation.
+     * 
+     * @param name
+     *            The name of the operation.
+     * @param latency
+     *            The latencies of the operation.
+     * @return the formatted line.
+     */
+    private static String format(String name, LatencySnapshot latency) {
+        return ChatColor.GOLD + name + ": " + ChatColor.RED + latency.getCount() + ChatColor.GOLD
+                + String.format(" times, mean %.2f ms, median %.2f ms, p99 %.2f ms, max %.2f ms",
+                        latency.getMeanMillis(), latency.getMedianMillis(), latency.getP99Millis(),
+                        latency.getMaxMillis());
+    }
+
+}
@@ -1,28 +1,66 @@
 package net.omniscimus.bukkit.proposalvoting.commands;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
-import net.omniscimus.bukkit.proposalvoting.Configuration;
-import net.omniscimus.bukkit.proposalvoting.exceptions.NoPermissionException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
+import net.omniscimus.bukkit.proposalvoting.ArgumentType;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
+import net.omniscimus.bukkit.proposalvoting.PluginCommand;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
 
 /**
  * Represents the command that is issued by senders who intend to toggle whether
  * voting on a proposal is enabled.
  */
-public class ToggleProposalCommand extends ProposalCommand {
+public class ToggleProposalCommand extends PluginCommand {
 
     /**
-     * Creates a new ToggleProposalCommand instance.
-     * 
-     * @param sender
-     *            The instance which sent this command.
-     * @param args
-     *            The command arguments.
+     * The ID of the proposal.
+     */
+    private static final ArgumentType[] ARGUMENTS = { ArgumentType.INTEGER };
+
+    @Override
+    public ArgumentType[] getArguments() {
+        return ARGUMENTS;
+    }
+
+    /**
+     * Only administrators may open and close voting.
+     */
+    @Override
+    public String getPermission() {
+        return "proposalvoting.admin";
+    }
+
+    /**
+     * The enabled state is stored.
+     */
+    @Override
+    public boolean needsStorage() {
+        return true;
+    }
+
+    /**
+     * Proposals are changed one command at a time.
      */
-    public ToggleProposalCommand(CommandSender sender, String[] args) {
-        super(sender, args);
+    @Override
+    public boolean changesProposals() {
+        return true;
+    }
+
+    /**
+     * Suggests the IDs of the existing proposals.
+     */
+    @Override
+    public List<String> complete(CommandSender sender, CommandArguments args) {
+        if (args.size() > 1)
+            return Collections.emptyList();
+        return completeIds(Main.getProposals().getIds(false), args.get(0));
     }
 
     /**
@@ -30,34 +68,30 @@ public class ToggleProposalCommand extends ProposalCommand {
      * versa.
      */
     @Override
-    public void run() throws NoPermissionException, WrongSyntaxException {
-        if (!sender.hasPermission("proposalvoting.admin"))
-            throw new NoPermissionException();
-        if (args.length != 2)
-            throw new WrongSyntaxException();
-        int id4;
-        try {
-            id4 = Integer.parseInt(args[1]);
-        } catch (NumberFormatException e) {
-            throw new WrongSyntaxException();
-        }
-        if (toggleVoting(id4))
-            sender.sendMessage(ChatColor.GOLD + "Voting on proposal with ID " + id4 + " is now enabled.");
+    public CommandResult run(CommandSender sender, CommandArguments args) {
+        int id4 = args.getInt(0);
+        Proposal proposal = Main.getProposals().get(id4);
+        if (proposal == null)
+            reply(sender,
+                    ChatColor.GOLD + "Proposal with ID '" + ChatColor.RED + id4 + ChatColor.GOLD + "' does not exist!");
+        else if (toggleVoting(proposal))
+            reply(sender, ChatColor.GOLD + "Voting on proposal with ID " + id4 + " is now enabled.");
         else
-            sender.sendMessage(ChatColor.GOLD + "Voting on proposal with ID " + id4 + " is now disabled.");
+            reply(sender, ChatColor.GOLD + "Voting on proposal with ID " + id4 + " is now disabled.");
+        return CommandResult.SUCCESS;
     }
 
     /**
      * Toggles whether voting on this proposal is enabled.
      * 
-     * @param proposalId
-     *            The ID of the proposal.
+     * @param proposal
+     *            The proposal.
      * @return {@code true} if voting was enabled; {@code false} if voting was
      *         disabled.
      */
-    private boolean toggleVoting(int proposalId) {
-        boolean newValue = !Configuration.getVotingEnabled(proposalId);
-        Configuration.setVotingEnabled(proposalId, newValue);
+    private boolean toggleVoting(Proposal proposal) {
+        boolean newValue = !proposal.isEnabled();
+        proposal.setEnabled(newValue);
         return newValue;
     }
 
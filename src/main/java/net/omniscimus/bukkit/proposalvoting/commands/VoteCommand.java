@@ -1,65 +1,97 @@
 package net.omniscimus.bukkit.proposalvoting.commands;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import net.omniscimus.bukkit.proposalvoting.ArgumentType;
+import net.omniscimus.bukkit.proposalvoting.CommandArguments;
+import net.omniscimus.bukkit.proposalvoting.CommandResult;
+import net.omniscimus.bukkit.proposalvoting.Main;
 import net.omniscimus.bukkit.proposalvoting.PluginCommand;
 import net.omniscimus.bukkit.proposalvoting.Voter;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSenderTypeException;
-import net.omniscimus.bukkit.proposalvoting.exceptions.WrongSyntaxException;
 
 /**
  * Represents the command that is issued by a player who intends to vote on a
- * proposal option.
+ * proposal option, or to rank several options of a proposal in order of
+ * preference.
  */
 public class VoteCommand extends PluginCommand {
 
     /**
-     * Creates a new VoteCommand instance.
-     * 
-     * @param sender
-     *            The instance which sent this command.
-     * @param args
-     *            The command arguments.
+     * The ID of the proposal, and the IDs of one or more options in order of
+     * preference.
      */
-    public VoteCommand(CommandSender sender, String[] args) {
-        super(sender, args);
+    private static final ArgumentType[] ARGUMENTS = { ArgumentType.INTEGER, ArgumentType.INTEGERS };
+
+    @Override
+    public ArgumentType[] getArguments() {
+        return ARGUMENTS;
     }
 
     /**
-     * Casts the sender's vote on his preferred proposal option, if he satisfies
-     * all requirements.
+     * Only players can vote.
      */
     @Override
-    public void run() throws WrongSenderTypeException, WrongSyntaxException {
+    public boolean isPlayerOnly() {
+        return true;
+    }
 
-        // TODO summary of proposals and options.
-        // TODO some text stating that multi-voting is prohibited, people should
-        // think carefully before voting, command syntax
+    /**
+     * Votes are stored.
+     */
+    @Override
+    public boolean needsStorage() {
+        return true;
+    }
 
-        if (!(sender instanceof Player)) {
-            throw new WrongSenderTypeException();
+    /**
+     * Suggests the IDs of the proposals on which voting is enabled, and then
+     * the options of the proposal that have not been ranked yet.
+     */
+    @Override
+    public List<String> complete(CommandSender sender, CommandArguments args) {
+        int last = args.size() - 1;
+        if (last == 0)
+            return completeIds(Main.getProposals().getIds(true), args.get(0));
+        List<String> completions = new ArrayList<>();
+        for (String optionId : completeIds(getOptionIds(args), args.get(last))) {
+            boolean ranked = false;
+            for (int index = 1; index < last && !ranked; index++)
+                ranked = optionId.equals(args.get(index));
+            if (!ranked)
+                completions.add(optionId);
         }
+        return completions;
+    }
 
-        if (args.length != 2) {
-            throw new WrongSyntaxException();
-        }
+    /**
+     * Casts the sender's vote on their preferred proposal option, or their
+     * ranking of options, if they satisfy all requirements.
+     */
+    @Override
+    public CommandResult run(CommandSender sender, CommandArguments args) {
 
-        int proposalId, optionId;
-        try {
-            proposalId = Integer.parseInt(args[0]);
-            optionId = Integer.parseInt(args[1]);
-        } catch (NumberFormatException e) {
-            throw new WrongSyntaxException();
-        }
+        // TODO some text stating that multi-voting is prohibited, people should
+        // think carefully before voting, command syntax
 
-        Voter voter = new Voter(((Player) sender).getUniqueId());
-        if (voter.vote(proposalId, optionId)) {
-            sender.sendMessage(ChatColor.GOLD + "Your vote has been registered.");
+        int proposalId = args.getInt(0);
+        int[] ranking = args.getInts(1);
+
+        Player player = (Player) sender;
+        Voter voter = Main.getSessions().get(player.getUniqueId());
+        if (voter == null) {
+            voter = new Voter(player.getUniqueId());
+        }
+        if (voter.vote(proposalId, ranking)) {
+            reply(sender, ChatColor.GOLD + "Your vote has been registered.");
         } else {
-            sender.sendMessage(ChatColor.GOLD + "Voting failed."); // TODO specify: already voted, or not opted in, or invalid proposal, or invalid option
+            reply(sender, ChatColor.GOLD + "Voting failed."); // TODO specify: already voted, or not opted in, or invalid proposal, or invalid option
         }
+        return CommandResult.SUCCESS;
     }
 
 }
@@ -1,11 +0,0 @@
-package net.omniscimus.bukkit.proposalvoting.exceptions;
-
-/**
- * Thrown when someone tried to do an action for which he did not have
- * permission.
- */
-public class NoPermissionException extends Exception {
-
-    private static final long serialVersionUID = 4224941356658783480L;
-
-}
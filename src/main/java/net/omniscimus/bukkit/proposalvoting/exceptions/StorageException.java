@@ -0,0 +1,23 @@
+package net.omniscimus.bukkit.proposalvoting.exceptions;
+
+/**
+ * Thrown when the plugin's data could not be read from or written to its
+ * storage backend.
+ */
+public class StorageException extends Exception {
+
+    private static final long serialVersionUID = -2630512497311935741L;
+
+    /**
+     * Creates a new StorageException instance.
+     * 
+     * @param message
+     *            A description of what went wrong.
+     * @param cause
+     *            The underlying cause.
+     */
+    public StorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -1,11 +0,0 @@
-package net.omniscimus.bukkit.proposalvoting.exceptions;
-
-/**
- * Thrown if a command was sent to this plugin with too many or too few command
- * arguments.
- */
-public class WrongArgumentsNumberException extends Exception {
-
-    private static final long serialVersionUID = -7251403505019911309L;
-
-}
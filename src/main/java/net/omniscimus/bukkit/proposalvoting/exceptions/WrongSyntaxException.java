@@ -1,10 +0,0 @@
-package net.omniscimus.bukkit.proposalvoting.exceptions;
-
-/**
- * Thrown if a command was sent to this plugin with incorrect syntax.
- */
-public class WrongSyntaxException extends Exception {
-
-    private static final long serialVersionUID = 4835184602752272758L;
-
-}
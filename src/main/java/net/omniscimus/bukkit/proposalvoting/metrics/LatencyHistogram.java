@@ -0,0 +1,83 @@
+package net.omniscimus.bukkit.proposalvoting.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long an operation takes, in buckets of powers of two
+ * nanoseconds. Recording a duration takes a few atomic increments and never
+ * blocks, so it can be done on the main server thread and on any number of
+ * other threads at once. Percentiles are accurate to within a factor of two.
+ */
+public class LatencyHistogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the duration of an operation.
+     * 
+     * @param nanos
+     *            The duration, in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        // Bucket i holds the durations from 2^(i-1) up to 2^i - 1.
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+        total.add(nanos);
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos))
+            current = max.get();
+    }
+
+    /**
+     * Records the duration of an operation that started at a certain moment
+     * and has just ended.
+     * 
+     * @param startNanos
+     *            The start of the operation, as returned by
+     *            {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Takes a copy of the recorded durations. Durations that
+     * are recorded while copying may or may not be included.
+     * 
+     * @return a new LatencySnapshot.
+     */
+    public LatencySnapshot snapshot() {
+        long[] counts = new long[buckets.length()];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        return new LatencySnapshot(count, total.sum(), max.get(), percentile(counts, count, 0.5),
+                percentile(counts, count, 0.99));
+    }
+
+    /**
+     * Finds the upper bound of the bucket in which a percentile lies.
+     * 
+     * @return the upper bound, in nanoseconds.
+     */
+    private long percentile(long[] counts, long count, double fraction) {
+        if (count == 0)
+            return 0L;
+        long rank = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return (1L << i) - 1;
+        }
+        return max.get();
+    }
+
+}
@@ -0,0 +1,70 @@
+package net.omniscimus.bukkit.proposalvoting.metrics;
+
+/**
+ * The durations that a {@link LatencyHistogram} had recorded at a certain
+ * moment. The getters make it readable as composite data over JMX.
+ */
+public class LatencySnapshot {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long medianNanos;
+    private final long p99Nanos;
+
+    LatencySnapshot(long count, long totalNanos, long maxNanos, long medianNanos, long p99Nanos) {
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.medianNanos = Math.min(medianNanos, maxNanos);
+        this.p99Nanos = Math.min(p99Nanos, maxNanos);
+    }
+
+    /**
+     * Gets the number of recorded durations.
+     * 
+     * @return the count.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the average duration.
+     * 
+     * @return the mean, in milliseconds.
+     */
+    public double getMeanMillis() {
+        return count == 0 ? 0.0 : totalNanos / NANOS_PER_MILLI / count;
+    }
+
+    /**
+     * Gets the duration that half of the operations did not exceed.
+     * 
+     * @return the median, in milliseconds.
+     */
+    public double getMedianMillis() {
+        return medianNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets the duration that 99% of the operations did not exceed.
+     * 
+     * @return the 99th percentile, in milliseconds.
+     */
+    public double getP99Millis() {
+        return p99Nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets the longest recorded duration.
+     * 
+     * @return the maximum, in milliseconds.
+     */
+    public double getMaxMillis() {
+        return maxNanos / NANOS_PER_MILLI;
+    }
+
+}
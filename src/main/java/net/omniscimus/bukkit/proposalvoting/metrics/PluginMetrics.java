@@ -0,0 +1,162 @@
+package net.omniscimus.bukkit.proposalvoting.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Holds the counters and latency histograms of the plugin. Everything may be
+ * recorded from any thread.
+ */
+public class PluginMetrics implements PluginMetricsMXBean {
+
+    private static final String OBJECT_NAME = "net.omniscimus.bukkit.proposalvoting:type=Metrics";
+
+    private final IntSupplier onlineSessions;
+    private final RateMeter votes = new RateMeter();
+    private final LatencyHistogram storageFlushes = new LatencyHistogram();
+    private final LatencyHistogram weekRollovers = new LatencyHistogram();
+    private final LatencyHistogram mainThreadCommands = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> commands = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new PluginMetrics instance.
+     * 
+     * @param onlineSessions
+     *            Supplies the number of players who are online.
+     */
+    public PluginMetrics(IntSupplier onlineSessions) {
+        this.onlineSessions = onlineSessions;
+    }
+
+    /**
+     * Counts a vote that has just been cast.
+     */
+    public void voteCast() {
+        votes.mark();
+    }
+
+    /**
+     * Gets the histogram of storage flush durations.
+     * 
+     * @return the LatencyHistogram
+     */
+    public LatencyHistogram getStorageFlushes() {
+        return storageFlushes;
+    }
+
+    /**
+     * Gets the histogram of week rollover durations.
+     * 
+     * @return the LatencyHistogram
+     */
+    public LatencyHistogram getWeekRollovers() {
+        return weekRollovers;
+    }
+
+    /**
+     * Gets the histogram of the time commands spent on the main server
+     * thread.
+     * 
+     * @return the LatencyHistogram
+     */
+    public LatencyHistogram getMainThreadCommands() {
+        return mainThreadCommands;
+    }
+
+    /**
+     * Gets the histogram of the execution times of a subcommand.
+     * 
+     * @param name
+     *            The name of the subcommand. This must be one of a fixed set
+     *            of names, not arbitrary input.
+     * @return the LatencyHistogram
+     */
+    public LatencyHistogram getCommand(String name) {
+        LatencyHistogram histogram = commands.get(name);
+        return histogram != null ? histogram : commands.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    @Override
+    public long getVotesCast() {
+        return votes.getCount();
+    }
+
+    @Override
+    public double getVotesPerSecond() {
+        return votes.getRatePerSecond();
+    }
+
+    @Override
+    public int getOnlineSessions() {
+        return onlineSessions.getAsInt();
+    }
+
+    @Override
+    public LatencySnapshot getStorageFlushLatency() {
+        return storageFlushes.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getWeekRolloverLatency() {
+        return weekRollovers.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getMainThreadCommandLatency() {
+        return mainThreadCommands.snapshot();
+    }
+
+    @Override
+    public Map<String, LatencySnapshot> getCommandLatencies() {
+        Map<String, LatencySnapshot> latencies = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : commands.entrySet())
+            latencies.put(entry.getKey(), entry.getValue().snapshot());
+        return latencies;
+    }
+
+    /**
+     * Makes the metrics available over JMX. If that fails, a warning is
+     * logged; the metrics are still recorded.
+     * 
+     * @param logger
+     *            The logger to report failure to.
+     */
+    public void register(Logger logger) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name); // Left behind by a reload.
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Could not register the metrics with JMX.", e);
+        }
+    }
+
+    /**
+     * Removes the metrics from JMX.
+     * 
+     * @param logger
+     *            The logger to report failure to.
+     */
+    public void unregister(Logger logger) {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Could not unregister the metrics from JMX.", e);
+        }
+    }
+
+}
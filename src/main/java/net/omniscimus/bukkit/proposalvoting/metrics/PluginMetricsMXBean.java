@@ -0,0 +1,62 @@
+package net.omniscimus.bukkit.proposalvoting.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface through which the plugin's metrics are exposed
+ * over JMX.
+ */
+public interface PluginMetricsMXBean {
+
+    /**
+     * Gets the number of votes that have been cast since the plugin was
+     * enabled.
+     * 
+     * @return the number of votes.
+     */
+    long getVotesCast();
+
+    /**
+     * Gets the average number of votes per second over the last minute.
+     * 
+     * @return the vote throughput.
+     */
+    double getVotesPerSecond();
+
+    /**
+     * Gets the number of players who are online.
+     * 
+     * @return the number of sessions.
+     */
+    int getOnlineSessions();
+
+    /**
+     * Gets how long it took to write changes to the storage backend.
+     * 
+     * @return the flush latencies.
+     */
+    LatencySnapshot getStorageFlushLatency();
+
+    /**
+     * Gets how long it took to move on to a new week.
+     * 
+     * @return the rollover latencies.
+     */
+    LatencySnapshot getWeekRolloverLatency();
+
+    /**
+     * Gets how long commands held the main server thread, including the time
+     * it took to hand them to a worker thread.
+     * 
+     * @return the latencies on the main thread.
+     */
+    LatencySnapshot getMainThreadCommandLatency();
+
+    /**
+     * Gets how long each subcommand took to execute, wherever it ran.
+     * 
+     * @return the latencies per subcommand name.
+     */
+    Map<String, LatencySnapshot> getCommandLatencies();
+
+}
@@ -0,0 +1,67 @@
+package net.omniscimus.bukkit.proposalvoting.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events, in total and per second over the last minute. Marking an
+ * event never blocks.
+ */
+public class RateMeter {
+
+    private static final int WINDOW = 60;
+
+    private final LongAdder total = new LongAdder();
+    /**
+     * One slot per second of the window. The upper half of a slot holds the
+     * second it belongs to, the lower half the number of events in it, so
+     * that a slot is claimed for a new second and counted with a single
+     * compare-and-set.
+     */
+    private final AtomicLongArray slots = new AtomicLongArray(WINDOW);
+
+    /**
+     * Counts an event that happens now.
+     */
+    public void mark() {
+        total.increment();
+        long second = currentSecond();
+        int slot = (int) (second % WINDOW);
+        while (true) {
+            long current = slots.get(slot);
+            long next = current >>> 32 == second ? current + 1 : second << 32 | 1L;
+            if (slots.compareAndSet(slot, current, next))
+                return;
+        }
+    }
+
+    /**
+     * Gets the number of events since the plugin was enabled.
+     * 
+     * @return the total count.
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * Gets the average number of events per second over the last minute.
+     * 
+     * @return the rate, in events per second.
+     */
+    public double getRatePerSecond() {
+        long now = currentSecond();
+        long count = 0;
+        for (int i = 0; i < WINDOW; i++) {
+            long slot = slots.get(i);
+            if (now - (slot >>> 32) < WINDOW)
+                count += slot & 0xFFFFFFFFL;
+        }
+        return count / (double) WINDOW;
+    }
+
+    private static long currentSecond() {
+        return System.currentTimeMillis() / 1000L & 0xFFFFFFFFL;
+    }
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Contains the counters and latency histograms that describe how the plugin
+ * performs at runtime.
+ */
+package net.omniscimus.bukkit.proposalvoting.metrics;
@@ -0,0 +1,417 @@
+package net.omniscimus.bukkit.proposalvoting.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * The set of players who have voted on a proposal, as a compressed bitmap
+ * over the player indexes. The indexes are split into chunks of 65536; each
+ * chunk that contains a voter has a container. A container holds a sorted
+ * array of the voters while it has few of them, and becomes a plain bitmap
+ * once that is smaller, in the manner of Roaring bitmaps.
+ * <p>
+ * Ballots can be claimed on any number of threads. In a bitmap container, a
+ * ballot is claimed with a single compare-and-set; an array container is
+ * locked while it is changed, which is cheap because it is small.
+ */
+public class BallotSet {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int WORDS_PER_BITMAP = (1 << CHUNK_BITS) / 64;
+    /**
+     * An array container with more voters than this is larger than a bitmap.
+     */
+    private static final int ARRAY_MAX = 4096;
+
+    private static final byte ARRAY = 0;
+    private static final byte BITMAP = 1;
+
+    /**
+     * The containers, indexed by the upper bits of the player index. The array
+     * is replaced when it grows, but the containers are never copied, so a
+     * ballot that is claimed in a container can not be lost.
+     */
+    private volatile Container[] containers = new Container[1];
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates a new, empty BallotSet instance.
+     */
+    public BallotSet() {
+    }
+
+    /**
+     * Claims the ballot of a player.
+     * 
+     * @param player
+     *            The index of the player.
+     * @return {@code true} if the ballot was claimed; {@code false} if the
+     *         player had already voted.
+     */
+    boolean claim(int player) {
+        int key = player >>> CHUNK_BITS;
+        int low = player & CHUNK_MASK;
+        while (true) {
+            Container container = getOrCreate(key);
+            if (container instanceof BitmapContainer) {
+                if (!((BitmapContainer) container).claim(low))
+                    return false;
+                size.incrementAndGet();
+                return true;
+            }
+            ArrayContainer array = (ArrayContainer) container;
+            synchronized (array) {
+                if (array.retired)
+                    continue; // It has just been replaced by a bitmap.
+                int position = Arrays.binarySearch(array.values, 0, array.size, (char) low);
+                if (position >= 0)
+                    return false;
+                if (array.size == ARRAY_MAX) {
+                    BitmapContainer bitmap = array.toBitmap();
+                    bitmap.claim(low);
+                    replace(key, bitmap);
+                    array.retired = true;
+                } else {
+                    array.insert(-position - 1, (char) low);
+                }
+            }
+            size.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Checks if a player has voted.
+     * 
+     * @param player
+     *            The index of the player.
+     * @return {@code true} if the player has voted.
+     */
+    public boolean contains(int player) {
+        while (true) {
+            Container container = get(player >>> CHUNK_BITS);
+            if (container == null)
+                return false;
+            int low = player & CHUNK_MASK;
+            if (container instanceof BitmapContainer)
+                return ((BitmapContainer) container).contains(low);
+            ArrayContainer array = (ArrayContainer) container;
+            synchronized (array) {
+                if (!array.retired)
+                    return Arrays.binarySearch(array.values, 0, array.size, (char) low) >= 0;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of players who have voted.
+     * 
+     * @return the turnout.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Passes the index of every player who has voted to an IntConsumer, in
+     * ascending order. Ballots that are claimed while iterating may or may not
+     * be included.
+     * 
+     * @param action
+     *            The IntConsumer to pass the indexes to.
+     */
+    public void forEach(IntConsumer action) {
+        Container[] containers = this.containers;
+        for (int key = 0; key < containers.length; key++) {
+            long[] words = snapshot(containers[key]);
+            if (words == null)
+                continue;
+            int base = key << CHUNK_BITS;
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(base + w * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a set of the players who have voted both here and in another
+     * set.
+     * 
+     * @param other
+     *            The other set.
+     * @return a new BallotSet.
+     */
+    public BallotSet and(BallotSet other) {
+        return combine(other, Operation.AND);
+    }
+
+    /**
+     * Creates a set of the players who have voted here, in another set, or
+     * both.
+     * 
+     * @param other
+     *            The other set.
+     * @return a new BallotSet.
+     */
+    public BallotSet or(BallotSet other) {
+        return combine(other, Operation.OR);
+    }
+
+    /**
+     * Creates a set of the players who have voted here, but not in another
+     * set; for example, the players who voted on proposal A but not on B.
+     * 
+     * @param other
+     *            The other set.
+     * @return a new BallotSet.
+     */
+    public BallotSet andNot(BallotSet other) {
+        return combine(other, Operation.AND_NOT);
+    }
+
+    /**
+     * Serializes this set. Each container is written as its chunk number, its
+     * type and its contents; arrays take two bytes per voter and bitmaps take
+     * 8 KiB.
+     * 
+     * @return the serialized set.
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            Container[] containers = this.containers;
+            int count = 0;
+            long[][] snapshots = new long[containers.length][];
+            for (int key = 0; key < containers.length; key++) {
+                snapshots[key] = snapshot(containers[key]);
+                if (snapshots[key] != null)
+                    count++;
+            }
+            out.writeInt(count);
+            for (int key = 0; key < snapshots.length; key++) {
+                long[] words = snapshots[key];
+                if (words == null)
+                    continue;
+                int cardinality = 0;
+                for (long word : words)
+                    cardinality += Long.bitCount(word);
+                out.writeInt(key);
+                if (cardinality <= ARRAY_MAX) {
+                    out.writeByte(ARRAY);
+                    out.writeShort(cardinality);
+                    for (int w = 0; w < words.length; w++) {
+                        long word = words[w];
+                        while (word != 0) {
+                            out.writeShort(w * 64 + Long.numberOfTrailingZeros(word));
+                            word &= word - 1;
+                        }
+                    }
+                } else {
+                    out.writeByte(BITMAP);
+                    for (long word : words)
+                        out.writeLong(word);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Can't happen in memory.
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a set that was serialized by {@link #toByteArray()}.
+     * 
+     * @param data
+     *            The serialized set.
+     * @return a new BallotSet.
+     * @throws IOException
+     *             If the data is not a serialized set.
+     */
+    public static BallotSet fromByteArray(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        BallotSet set = new BallotSet();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int key = in.readInt();
+            if (key < 0)
+                throw new IOException("Invalid chunk number " + key);
+            int base = key << CHUNK_BITS;
+            byte type = in.readByte();
+            if (type == ARRAY) {
+                int cardinality = in.readUnsignedShort();
+                for (int j = 0; j < cardinality; j++)
+                    set.claim(base + in.readUnsignedShort());
+            } else if (type == BITMAP) {
+                long[] words = new long[WORDS_PER_BITMAP];
+                for (int w = 0; w < words.length; w++)
+                    words[w] = in.readLong();
+                set.put(key, words);
+            } else {
+                throw new IOException("Unknown container type " + type);
+            }
+        }
+        return set;
+    }
+
+    private Container get(int key) {
+        Container[] containers = this.containers;
+        return key < containers.length ? containers[key] : null;
+    }
+
+    private Container getOrCreate(int key) {
+        Container container = get(key);
+        if (container != null)
+            return container;
+        synchronized (this) {
+            container = get(key);
+            if (container == null) {
+                container = new ArrayContainer();
+                replace(key, container);
+            }
+            return container;
+        }
+    }
+
+    private synchronized void replace(int key, Container container) {
+        Container[] containers = this.containers;
+        if (key >= containers.length)
+            containers = Arrays.copyOf(containers, key + 1);
+        containers[key] = container;
+        this.containers = containers;
+    }
+
+    /**
+     * Puts a bitmap into an empty chunk of a new set.
+     */
+    private void put(int key, long[] words) {
+        BitmapContainer bitmap = new BitmapContainer();
+        int cardinality = 0;
+        for (int w = 0; w < words.length; w++) {
+            bitmap.words.set(w, words[w]);
+            cardinality += Long.bitCount(words[w]);
+        }
+        replace(key, bitmap);
+        size.addAndGet(cardinality);
+    }
+
+    private BallotSet combine(BallotSet other, Operation operation) {
+        BallotSet result = new BallotSet();
+        int chunks = Math.max(containers.length, other.containers.length);
+        for (int key = 0; key < chunks; key++) {
+            long[] a = snapshot(get(key));
+            long[] b = snapshot(other.get(key));
+            if (a == null && b == null)
+                continue;
+            long[] words = new long[WORDS_PER_BITMAP];
+            boolean empty = true;
+            for (int w = 0; w < words.length; w++) {
+                long x = a == null ? 0L : a[w];
+                long y = b == null ? 0L : b[w];
+                words[w] = operation == Operation.AND ? x & y : operation == Operation.OR ? x | y : x & ~y;
+                empty &= words[w] == 0;
+            }
+            if (!empty)
+                result.put(key, words);
+        }
+        return result;
+    }
+
+    /**
+     * Copies a container into a bitmap.
+     * 
+     * @return the bits of the container, or {@code null} if there is none.
+     */
+    private static long[] snapshot(Container container) {
+        if (container == null)
+            return null;
+        long[] words = new long[WORDS_PER_BITMAP];
+        if (container instanceof BitmapContainer) {
+            AtomicLongArray bits = ((BitmapContainer) container).words;
+            for (int w = 0; w < words.length; w++)
+                words[w] = bits.get(w);
+        } else {
+            ArrayContainer array = (ArrayContainer) container;
+            synchronized (array) {
+                for (int i = 0; i < array.size; i++)
+                    words[array.values[i] >>> 6] |= 1L << array.values[i];
+            }
+        }
+        return words;
+    }
+
+    private enum Operation {
+        AND, OR, AND_NOT
+    }
+
+    private abstract static class Container {
+    }
+
+    /**
+     * A sorted array of the lower 16 bits of the voters' indexes. Guarded by
+     * its own monitor.
+     */
+    private static class ArrayContainer extends Container {
+
+        private char[] values = new char[4];
+        private int size;
+        /**
+         * Set when this container has been replaced by a bitmap.
+         */
+        private boolean retired;
+
+        void insert(int position, char value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, Math.min(size * 2, ARRAY_MAX));
+            System.arraycopy(values, position, values, position + 1, size - position);
+            values[position] = value;
+            size++;
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < size; i++)
+                bitmap.claim(values[i]);
+            return bitmap;
+        }
+
+    }
+
+    /**
+     * One bit per player in the chunk.
+     */
+    private static class BitmapContainer extends Container {
+
+        private final AtomicLongArray words = new AtomicLongArray(WORDS_PER_BITMAP);
+
+        boolean claim(int low) {
+            int word = low >>> 6;
+            long bit = 1L << low;
+            while (true) {
+                long current = words.get(word);
+                if ((current & bit) != 0)
+                    return false;
+                if (words.compareAndSet(word, current, current | bit))
+                    return true;
+            }
+        }
+
+        boolean contains(int low) {
+            return (words.get(low >>> 6) & (1L << low)) != 0;
+        }
+
+    }
+
+}
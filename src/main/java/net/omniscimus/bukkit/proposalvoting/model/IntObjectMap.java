@@ -0,0 +1,181 @@
+package net.omniscimus.bukkit.proposalvoting.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A map with primitive int keys. Lookups neither box the key nor allocate.
+ *
+ * @param <V>
+ *            the type of the values
+ */
+public class IntObjectMap<V> {
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    /**
+     * Creates a new, empty IntObjectMap instance.
+     */
+    public IntObjectMap() {
+        keys = new int[8];
+        values = new Object[8];
+    }
+
+    /**
+     * Gets the value that is associated with a key.
+     *
+     * @param key
+     *            The key to look up.
+     * @return the value, or {@code null} if there is no value for this key.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key)
+                return (V) values[i];
+        }
+        return null;
+    }
+
+    /**
+     * Checks if there is a value associated with a key.
+     *
+     * @param key
+     *            The key to look up.
+     * @return {@code true} if this map contains the key.
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associates a value with a key.
+     *
+     * @param key
+     *            The key.
+     * @param value
+     *            The value; may not be {@code null}.
+     * @return the value that was previously associated with this key, or
+     *         {@code null} if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null)
+            throw new NullPointerException("value");
+        if ((size + 1) * 4 > keys.length * 3)
+            resize(keys.length * 2);
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * Removes the value that is associated with a key.
+     *
+     * @param key
+     *            The key.
+     * @return the value that was removed, or {@code null} if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key)
+                break;
+        }
+        if (values[i] == null)
+            return null;
+        V old = (V) values[i];
+        // Shift the following entries back, so that no lookup chain is broken.
+        int gap = i;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+        size--;
+        return old;
+    }
+
+    /**
+     * Gets the number of entries in this map.
+     *
+     * @return the amount of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets all keys in this map.
+     *
+     * @return a new array containing the keys, in ascending order.
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null)
+                result[n++] = keys[i];
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Gets all values in this map.
+     *
+     * @return a new List containing the values, in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null)
+                result.add((V) value);
+        }
+        return result;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == null)
+                continue;
+            int j = slot(oldKeys[i], mask);
+            while (values[j] != null)
+                j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+}
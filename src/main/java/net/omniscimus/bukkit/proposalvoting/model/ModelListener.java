@@ -0,0 +1,83 @@
+package net.omniscimus.bukkit.proposalvoting.model;
+
+import java.util.UUID;
+
+/**
+ * Is notified whenever the in-memory data changes, so that the change can be
+ * persisted.
+ */
+public interface ModelListener {
+
+    /**
+     * Called when the title, the description or the enabled state of a
+     * proposal has changed, or when the proposal has been created.
+     * 
+     * @param proposal
+     *            The proposal that has changed.
+     */
+    void proposalChanged(Proposal proposal);
+
+    /**
+     * Called when the description of an option has changed, or when the
+     * option has been created.
+     * 
+     * @param proposal
+     *            The proposal to which the option belongs.
+     * @param option
+     *            The option that has changed.
+     */
+    void optionChanged(Proposal proposal, ProposalOption option);
+
+    /**
+     * Called when a proposal ID has been handed out, so that it is never
+     * handed out again.
+     * 
+     * @param proposalId
+     *            The ID that has been handed out.
+     */
+    void proposalIdReserved(int proposalId);
+
+    /**
+     * Called when a proposal has been deleted.
+     * 
+     * @param proposalId
+     *            The ID of the deleted proposal.
+     */
+    void proposalRemoved(int proposalId);
+
+    /**
+     * Called when a player has voted.
+     * 
+     * @param proposal
+     *            The proposal on which the player has voted.
+     * @param option
+     *            The option for which the player has voted: their first
+     *            preference.
+     * @param ranking
+     *            The IDs of the options that the player has ranked, in order
+     *            of preference.
+     * @param playerId
+     *            The Unique User ID of the player, as generated by Minecraft.
+     */
+    void voteCast(Proposal proposal, ProposalOption option, int[] ranking, UUID playerId);
+
+    /**
+     * Called when ballots or rankings have been added to a proposal without
+     * votes being cast, e.g. when they are imported.
+     * 
+     * @param proposal
+     *            The proposal whose ballots have changed.
+     */
+    void ballotsChanged(Proposal proposal);
+
+    /**
+     * Called when a player has opted in or out.
+     * 
+     * @param playerId
+     *            The Unique User ID of the player, as generated by Minecraft.
+     * @param optIn
+     *            Whether the player has opted in.
+     */
+    void optInChanged(UUID playerId, boolean optIn);
+
+}
@@ -0,0 +1,442 @@
+package net.omniscimus.bukkit.proposalvoting.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents a proposal on which players can vote. Its title, description and
+ * option descriptions are read from the registry's text store when they are
+ * needed, instead of being kept in memory.
+ */
+public class Proposal {
+
+    private final int id;
+    private final ProposalRegistry registry;
+
+    private volatile boolean enabled;
+    private final IntObjectMap<ProposalOption> options = new IntObjectMap<>();
+    /**
+     * The IDs of the options, in ascending order. The array is replaced, never
+     * changed, so that it can be read without holding the lock.
+     */
+    private volatile int[] optionIds = new int[0];
+    /**
+     * The indexes of the players who have voted, as assigned by the player
+     * dictionary.
+     */
+    private final BallotSet playersVoted = new BallotSet();
+    /**
+     * The rankings that the players have cast, without who cast them.
+     */
+    private final RankedBallots rankings = new RankedBallots();
+    /**
+     * Counts the changes to this proposal, so that anything derived from it
+     * can tell whether it is out of date.
+     */
+    private final AtomicInteger revision = new AtomicInteger();
+
+    /**
+     * Creates a new Proposal instance.
+     * 
+     * @param id
+     *            The ID of the proposal.
+     * @param registry
+     *            The registry that holds this proposal.
+     */
+    Proposal(int id, ProposalRegistry registry) {
+        this.id = id;
+        this.registry = registry;
+    }
+
+    /**
+     * Gets the ID of this proposal.
+     * 
+     * @return the proposal ID.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the revision of this proposal, which changes whenever its texts,
+     * its enabled state, its options or its votes change. It changes after
+     * the change has been made, so something that was derived from this
+     * proposal after reading its revision is up to date as long as the
+     * revision stays the same.
+     * 
+     * @return the revision.
+     */
+    public int getRevision() {
+        return revision.get();
+    }
+
+    /**
+     * Gets the title of this proposal.
+     * 
+     * @return the title, or {@code null} if it has not been set.
+     */
+    public String getTitle() {
+        return registry.getText(textKeyPrefix(id) + "title");
+    }
+
+    /**
+     * Changes the title of this proposal.
+     * 
+     * @param title
+     *            The new title.
+     */
+    public void setTitle(String title) {
+        registry.setText(textKeyPrefix(id) + "title", title);
+        revision.incrementAndGet();
+        registry.getListener().proposalChanged(this);
+    }
+
+    /**
+     * Gets the description of this proposal.
+     * 
+     * @return the description, or {@code null} if it has not been set.
+     */
+    public String getDescription() {
+        return registry.getText(textKeyPrefix(id) + "description");
+    }
+
+    /**
+     * Changes the description of this proposal.
+     * 
+     * @param description
+     *            The new description.
+     */
+    public void setDescription(String description) {
+        registry.setText(textKeyPrefix(id) + "description", description);
+        revision.incrementAndGet();
+        registry.getListener().proposalChanged(this);
+    }
+
+    /**
+     * Gets if voting is enabled for this proposal.
+     * 
+     * @return {@code true} if voting is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Changes if voting is enabled for this proposal.
+     * 
+     * @param enabled
+     *            A boolean indicating whether voting should be enabled.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        registry.updateEnabledIndex(this);
+        revision.incrementAndGet();
+        registry.getListener().proposalChanged(this);
+    }
+
+    /**
+     * Gets an option of this proposal.
+     * 
+     * @param optionId
+     *            The ID of the option.
+     * @return the option, or {@code null} if this proposal has no option with
+     *         this ID.
+     */
+    public synchronized ProposalOption getOption(int optionId) {
+        return options.get(optionId);
+    }
+
+    /**
+     * Gets all options of this proposal.
+     * 
+     * @return a new List containing the options, in no particular order.
+     */
+    public synchronized List<ProposalOption> getOptions() {
+        return options.values();
+    }
+
+    /**
+     * Gets the IDs of all options of this proposal.
+     * 
+     * @return the option IDs, in ascending order; the array should not be
+     *         changed.
+     */
+    public int[] getOptionIds() {
+        return optionIds;
+    }
+
+    private void putOption(ProposalOption option) {
+        options.put(option.getId(), option);
+        int[] ids = optionIds;
+        int position = Arrays.binarySearch(ids, option.getId());
+        if (position >= 0)
+            return;
+        int insertAt = -position - 1;
+        int[] changed = new int[ids.length + 1];
+        System.arraycopy(ids, 0, changed, 0, insertAt);
+        changed[insertAt] = option.getId();
+        System.arraycopy(ids, insertAt, changed, insertAt + 1, ids.length - insertAt);
+        optionIds = changed;
+    }
+
+    /**
+     * Changes the description of an option. The option is created if it does
+     * not exist yet.
+     * 
+     * @param optionId
+     *            The ID of the option.
+     * @param description
+     *            The new description for the option.
+     */
+    public void setOptionDescription(int optionId, String description) {
+        ProposalOption option;
+        synchronized (this) {
+            option = options.get(optionId);
+            if (option == null) {
+                option = new ProposalOption(optionId, this);
+                putOption(option);
+            }
+        }
+        registry.setText(optionTextKey(optionId), description);
+        revision.incrementAndGet();
+        registry.getListener().optionChanged(this, option);
+    }
+
+    /**
+     * Gets whether a player has voted on this proposal.
+     * 
+     * @param player
+     *            The index of the player.
+     * @return {@code true} if the player has voted on this proposal.
+     */
+    public boolean hasVoted(int player) {
+        return playersVoted.contains(player);
+    }
+
+    /**
+     * Gets the players who have voted on this proposal.
+     * 
+     * @return the live set of the players' indexes; it should not be changed.
+     */
+    public BallotSet getBallots() {
+        return playersVoted;
+    }
+
+    /**
+     * Gets the rankings that have been cast on this proposal.
+     * 
+     * @return the live rankings; they should not be changed.
+     */
+    public RankedBallots getRankings() {
+        return rankings;
+    }
+
+    /**
+     * Records a vote of a player, who ranks one or more options in order of
+     * preference. The ranking is stored, but not who cast it; of the player,
+     * only the fact that they have voted is stored. The first preference
+     * counts as a vote on that option. Votes may be cast on any thread; the
+     * player's ballot is claimed atomically, so they can not vote twice.
+     * 
+     * @param player
+     *            The index of the player.
+     * @param ranking
+     *            The IDs of options of this proposal, in order of preference.
+     * @return {@code true} if the vote was recorded; {@code false} if the
+     *         player had already voted on this proposal, or if the ranking is
+     *         empty, names an option that does not exist or names an option
+     *         twice.
+     */
+    public boolean castVote(int player, int[] ranking) {
+        if (ranking.length == 0)
+            return false;
+        for (int i = 0; i < ranking.length; i++) {
+            if (getOption(ranking[i]) == null)
+                return false;
+            for (int j = 0; j < i; j++) {
+                if (ranking[j] == ranking[i])
+                    return false;
+            }
+        }
+        if (!playersVoted.claim(player))
+            return false;
+        ranking = ranking.clone();
+        ProposalOption option = getOption(ranking[0]);
+        // The ranking goes first, so that a tally never sees a vote on the
+        // option without the ranking behind it.
+        rankings.add(ranking);
+        option.addVote();
+        revision.incrementAndGet();
+        registry.getListener().voteCast(this, option, ranking, registry.getDictionary().getId(player));
+        return true;
+    }
+
+    /**
+     * Sets the description and the amount of votes of an option, creating it if
+     * it does not exist yet. Used when importing; the imported tally replaces
+     * the current one, so that importing twice has the same effect as once.
+     * 
+     * @param optionId
+     *            The ID of the option.
+     * @param description
+     *            The description of the option.
+     * @param votes
+     *            The amount of votes on the option.
+     */
+    public void importOption(int optionId, String description, int votes) {
+        ProposalOption option;
+        synchronized (this) {
+            option = options.get(optionId);
+            if (option == null) {
+                option = new ProposalOption(optionId, this);
+                putOption(option);
+            }
+        }
+        registry.setText(optionTextKey(optionId), description);
+        synchronized (option) {
+            option.setVotes(votes);
+        }
+        revision.incrementAndGet();
+        registry.getListener().optionChanged(this, option);
+    }
+
+    /**
+     * Records that players have voted, without counting their votes. Used when
+     * importing; players who have already voted are skipped.
+     * 
+     * @param playerIds
+     *            The Unique User IDs of the players, as generated by
+     *            Minecraft.
+     */
+    public void importBallots(Iterable<UUID> playerIds) {
+        boolean changed = false;
+        for (UUID playerId : playerIds)
+            changed |= playersVoted.claim(registry.getDictionary().getOrAssignIndex(playerId));
+        if (changed) {
+            revision.incrementAndGet();
+            registry.getListener().ballotsChanged(this);
+        }
+    }
+
+    /**
+     * Adds rankings without claiming ballots or counting votes. Used when
+     * importing; because the rankings are anonymous, they can not be matched
+     * with the ones that are already stored, so the first batch of an import
+     * replaces them.
+     * 
+     * @param imported
+     *            The rankings to add, each holding option IDs in order of
+     *            preference.
+     * @param replace
+     *            Whether the current rankings should be removed first.
+     */
+    public void importRankings(Iterable<int[]> imported, boolean replace) {
+        if (replace)
+            rankings.clear();
+        for (int[] ranking : imported)
+            rankings.add(ranking.clone());
+        revision.incrementAndGet();
+        registry.getListener().ballotsChanged(this);
+    }
+
+    /**
+     * Sets the stored values of this proposal without notifying the listener.
+     * Used while loading. Backends which stored the texts themselves pass them
+     * here, and they are moved into the text store.
+     * 
+     * @param title
+     *            The title held by the backend, or {@code null}.
+     * @param description
+     *            The description held by the backend, or {@code null}.
+     * @param enabled
+     *            Whether voting is enabled.
+     */
+    public void load(String title, String description, boolean enabled) {
+        registry.migrateText(textKeyPrefix(id) + "title", title);
+        registry.migrateText(textKeyPrefix(id) + "description", description);
+        this.enabled = enabled;
+        registry.updateEnabledIndex(this);
+    }
+
+    /**
+     * Adds a stored option without notifying the listener. Used while loading.
+     * A description held by the backend is moved into the text store.
+     * 
+     * @param optionId
+     *            The ID of the option.
+     * @param description
+     *            The description held by the backend, or {@code null}.
+     * @param votes
+     *            The amount of votes on the option.
+     */
+    public void loadOption(int optionId, String description, int votes) {
+        ProposalOption option = new ProposalOption(optionId, this);
+        registry.migrateText(optionTextKey(optionId), description);
+        option.setVotes(votes);
+        synchronized (this) {
+            putOption(option);
+        }
+    }
+
+    /**
+     * Records that a player has voted without notifying the listener. Used
+     * while loading.
+     * 
+     * @param playerId
+     *            The Unique User ID of the player, as generated by Minecraft.
+     */
+    public void loadPlayerVoted(UUID playerId) {
+        playersVoted.claim(registry.getDictionary().getOrAssignIndex(playerId));
+    }
+
+    /**
+     * Records that a set of players has voted without notifying the listener.
+     * Used while loading.
+     * 
+     * @param ballots
+     *            The indexes of the players.
+     */
+    public void loadBallots(BallotSet ballots) {
+        ballots.forEach(playersVoted::claim);
+    }
+
+    /**
+     * Adds stored rankings without notifying the listener. Used while loading.
+     * 
+     * @param loaded
+     *            The rankings.
+     */
+    public void loadRankings(RankedBallots loaded) {
+        rankings.addAll(loaded);
+    }
+
+    /**
+     * Gets the description of an option from the text store.
+     * 
+     * @param optionId
+     *            The ID of the option.
+     * @return the description, or {@code null} if it has not been set.
+     */
+    String getOptionDescription(int optionId) {
+        return registry.getText(optionTextKey(optionId));
+    }
+
+    private String optionTextKey(int optionId) {
+        return textKeyPrefix(id) + "options." + optionId;
+    }
+
+    /**
+     * Gets the prefix of the keys of all texts of a proposal in the text
+     * store.
+     * 
+     * @param proposalId
+     *            The ID of the proposal.
+     * @return the key prefix.
+     */
+    static String textKeyPrefix(int proposalId) {
+        return proposalId + ".";
+    }
+
+}
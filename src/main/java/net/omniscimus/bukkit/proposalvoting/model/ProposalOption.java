@@ -0,0 +1,68 @@
+package net.omniscimus.bukkit.proposalvoting.model;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Represents an option on which players can vote for a certain proposal.
+ */
+public class ProposalOption {
+
+    private final int id;
+    private final Proposal proposal;
+    /**
+     * Striped, so that votes can be counted on many threads at once without
+     * contending on a single counter.
+     */
+    private final LongAdder votes = new LongAdder();
+
+    /**
+     * Creates a new ProposalOption instance.
+     * 
+     * @param id
+     *            The ID of the option.
+     * @param proposal
+     *            The proposal to which the option belongs.
+     */
+    ProposalOption(int id, Proposal proposal) {
+        this.id = id;
+        this.proposal = proposal;
+    }
+
+    /**
+     * Gets the ID of this option.
+     * 
+     * @return the option ID.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the description of this option. It is read from the text store of
+     * the proposal's registry.
+     * 
+     * @return the description, or {@code null} if it has not been set.
+     */
+    public String getDescription() {
+        return proposal.getOptionDescription(id);
+    }
+
+    /**
+     * Gets the amount of votes on this option.
+     * 
+     * @return the amount of votes.
+     */
+    public int getVotes() {
+        return votes.intValue();
+    }
+
+    void addVote() {
+        votes.increment();
+    }
+
+    void setVotes(int votes) {
+        this.votes.reset();
+        this.votes.add(votes);
+    }
+
+}
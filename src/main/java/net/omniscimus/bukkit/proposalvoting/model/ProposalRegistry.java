@@ -0,0 +1,309 @@
+package net.omniscimus.bukkit.proposalvoting.model;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+
+import net.omniscimus.bukkit.proposalvoting.storage.PlayerDictionary;
+import net.omniscimus.bukkit.proposalvoting.storage.ProposalTextStore;
+
+/**
+ * Holds all proposals in memory. This is the live data store for proposals;
+ * changes are passed on to a {@link ModelListener} to be persisted. The texts
+ * of the proposals are not held here, but in a {@link ProposalTextStore}, from
+ * which they are read when they are needed. It may be used from any thread.
+ */
+public class ProposalRegistry {
+
+    private final IntObjectMap<Proposal> proposals = new IntObjectMap<>();
+    private final ModelListener listener;
+    private final PlayerDictionary dictionary;
+    private final ProposalTextStore texts;
+    /**
+     * The lowest proposal ID that has never been handed out.
+     */
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    /**
+     * The IDs of the proposals on which voting is enabled, in ascending
+     * order. The array is never modified; it is replaced when the index
+     * changes, so that it can be read without a lock.
+     */
+    private volatile int[] enabledIds = new int[0];
+
+    /**
+     * Creates a new, empty ProposalRegistry instance.
+     * 
+     * @param listener
+     *            The listener to notify of changes.
+     * @param dictionary
+     *            The dictionary which assigns the players their indexes.
+     * @param texts
+     *            The store which holds the texts of the proposals.
+     */
+    public ProposalRegistry(ModelListener listener, PlayerDictionary dictionary, ProposalTextStore texts) {
+        this.listener = listener;
+        this.dictionary = dictionary;
+        this.texts = texts;
+    }
+
+    ModelListener getListener() {
+        return listener;
+    }
+
+    PlayerDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Reads a text from the text store.
+     * 
+     * @param key
+     *            The key of the text.
+     * @return the text, or {@code null} if it has not been set or could not
+     *         be read.
+     */
+    String getText(String key) {
+        try {
+            return texts.get(key);
+        } catch (IOException e) {
+            Bukkit.getLogger().log(Level.SEVERE, "Could not read proposal text " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a text to the text store.
+     * 
+     * @param key
+     *            The key of the text.
+     * @param text
+     *            The new text, or {@code null} to remove it.
+     */
+    void setText(String key, String text) {
+        try {
+            texts.put(key, text);
+        } catch (IOException e) {
+            Bukkit.getLogger().log(Level.SEVERE, "Could not write proposal text " + key, e);
+        }
+    }
+
+    /**
+     * Moves a text that a storage backend still holds into the text store,
+     * unless the store already holds a text with the same key, which is then
+     * the newer one.
+     * 
+     * @param key
+     *            The key of the text.
+     * @param text
+     *            The text held by the backend, or {@code null}.
+     */
+    void migrateText(String key, String text) {
+        if (text != null && !texts.contains(key))
+            setText(key, text);
+    }
+
+    /**
+     * Gets a proposal.
+     * 
+     * @param id
+     *            The ID of the proposal.
+     * @return the proposal, or {@code null} if it does not exist.
+     */
+    public synchronized Proposal get(int id) {
+        return proposals.get(id);
+    }
+
+    /**
+     * Creates a new proposal, with an ID that has never been used. Voting on
+     * it is disabled until it is enabled.
+     * 
+     * @return the new proposal.
+     */
+    public Proposal create() {
+        int id = reserveId();
+        Proposal proposal = new Proposal(id, this);
+        synchronized (this) {
+            proposals.put(id, proposal);
+        }
+        listener.proposalChanged(proposal);
+        return proposal;
+    }
+
+    /**
+     * Gets a proposal, creating it if it does not exist yet. This is meant
+     * for restoring proposals, e.g. when they are imported; commands should
+     * use {@link #get(int)}, so that they can not bring back a proposal that
+     * has just been removed.
+     * 
+     * @param id
+     *            The ID of the proposal.
+     * @return the proposal.
+     */
+    public Proposal getOrCreate(int id) {
+        Proposal proposal;
+        synchronized (this) {
+            proposal = proposals.get(id);
+            if (proposal != null)
+                return proposal;
+            proposal = new Proposal(id, this);
+            proposals.put(id, proposal);
+        }
+        if (nextId.getAndAccumulate(id + 1, Math::max) <= id)
+            listener.proposalIdReserved(id);
+        listener.proposalChanged(proposal);
+        return proposal;
+    }
+
+    /**
+     * Adds a stored proposal without notifying the listener. Used while
+     * loading.
+     * 
+     * @param id
+     *            The ID of the proposal.
+     * @return the new proposal.
+     */
+    public synchronized Proposal load(int id) {
+        Proposal proposal = new Proposal(id, this);
+        proposals.put(id, proposal);
+        nextId.accumulateAndGet(id + 1, Math::max);
+        return proposal;
+    }
+
+    /**
+     * Sets the stored next proposal ID without notifying the listener. Used
+     * while loading. The next ID never goes down.
+     * 
+     * @param id
+     *            The lowest proposal ID that has never been handed out.
+     */
+    public void loadNextId(int id) {
+        nextId.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * Gets the ID that will be handed out next.
+     * 
+     * @return the lowest proposal ID that has never been handed out.
+     */
+    public int getNextId() {
+        return nextId.get();
+    }
+
+    /**
+     * Makes sure that no ID below a certain one is handed out anymore. Used
+     * when importing. The next ID never goes down.
+     * 
+     * @param id
+     *            The lowest proposal ID that may be handed out.
+     */
+    public void advanceNextId(int id) {
+        if (nextId.getAndAccumulate(id, Math::max) < id)
+            listener.proposalIdReserved(id - 1);
+    }
+
+    /**
+     * Permanently deletes an entire proposal, including its options and votes.
+     * 
+     * @param id
+     *            The ID of the proposal.
+     * @return {@code true} if the proposal was deleted; {@code false} if the
+     *         proposal did not exist.
+     */
+    public boolean remove(int id) {
+        synchronized (this) {
+            if (proposals.remove(id) == null)
+                return false;
+            setEnabledIndex(id, false);
+        }
+        listener.proposalRemoved(id);
+        try {
+            texts.removeAll(Proposal.textKeyPrefix(id));
+        } catch (IOException e) {
+            Bukkit.getLogger().log(Level.SEVERE, "Could not remove the texts of proposal " + id, e);
+        }
+        return true;
+    }
+
+    /**
+     * Hands out an ID for a new proposal. Every call returns a different ID,
+     * even when called on several threads at once, and IDs of deleted
+     * proposals are never handed out again.
+     * 
+     * @return a proposal ID that has never been used.
+     */
+    public int reserveId() {
+        int id = nextId.getAndIncrement();
+        listener.proposalIdReserved(id);
+        return id;
+    }
+
+    /**
+     * Gets all used proposal IDs.
+     * 
+     * @param enabled
+     *            A boolean indicating if only the IDs of the proposals on
+     *            which voting is enabled should be returned.
+     * @return the proposal IDs, in ascending order.
+     */
+    public int[] getIds(boolean enabled) {
+        if (enabled)
+            return enabledIds.clone();
+        synchronized (this) {
+            return proposals.keys();
+        }
+    }
+
+    /**
+     * Gets the number of proposals on which voting is enabled.
+     * 
+     * @return the amount of open proposals.
+     */
+    public int getEnabledCount() {
+        return enabledIds.length;
+    }
+
+    /**
+     * Brings the index of enabled proposals up to date with a proposal.
+     * 
+     * @param proposal
+     *            The proposal whose enabled state may have changed.
+     */
+    synchronized void updateEnabledIndex(Proposal proposal) {
+        if (proposals.get(proposal.getId()) == proposal)
+            setEnabledIndex(proposal.getId(), proposal.isEnabled());
+    }
+
+    private void setEnabledIndex(int id, boolean enabled) {
+        int[] ids = enabledIds;
+        int position = Arrays.binarySearch(ids, id);
+        if (enabled == position >= 0)
+            return;
+        int[] changed;
+        if (enabled) {
+            int insertAt = -position - 1;
+            changed = new int[ids.length + 1];
+            System.arraycopy(ids, 0, changed, 0, insertAt);
+            changed[insertAt] = id;
+            System.arraycopy(ids, insertAt, changed, insertAt + 1, ids.length - insertAt);
+        } else {
+            changed = new int[ids.length - 1];
+            System.arraycopy(ids, 0, changed, 0, position);
+            System.arraycopy(ids, position + 1, changed, position, changed.length - position);
+        }
+        enabledIds = changed;
+    }
+
+    /**
+     * Gets all proposals.
+     * 
+     * @return a new List containing the proposals, in no particular order.
+     */
+    public synchronized List<Proposal> getAll() {
+        return proposals.values();
+    }
+
+}
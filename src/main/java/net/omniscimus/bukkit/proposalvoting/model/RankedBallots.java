@@ -0,0 +1,225 @@
+package net.omniscimus.bukkit.proposalvoting.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The rankings that have been cast on a proposal. Every ranking lists option
+ * IDs in order of preference. The rankings are anonymous: it is not stored who
+ * cast which ranking, only that a player has voted, in the {@link BallotSet}.
+ * <p>
+ * The option IDs of all rankings are packed back to back into a single array,
+ * with a second array holding where each ranking ends, so that tens of
+ * thousands of rankings take two objects. Rankings are only ever added, and
+ * clearing them replaces the arrays, so a {@link Snapshot} can share the
+ * arrays instead of copying them.
+ */
+public class RankedBallots {
+
+    private int[] preferences = new int[16];
+    private int[] ends = new int[4];
+    private int size;
+    private int length;
+    /**
+     * Counts how often the rankings have been cleared, so that a snapshot
+     * taken before can be told apart from one taken after, even if they hold
+     * as many rankings.
+     */
+    private int generation;
+
+    /**
+     * Adds a ranking.
+     * 
+     * @param ranking
+     *            The option IDs, in order of preference.
+     */
+    public synchronized void add(int[] ranking) {
+        if (length + ranking.length > preferences.length)
+            preferences = Arrays.copyOf(preferences, Math.max(preferences.length * 2, length + ranking.length));
+        if (size == ends.length)
+            ends = Arrays.copyOf(ends, ends.length * 2);
+        System.arraycopy(ranking, 0, preferences, length, ranking.length);
+        length += ranking.length;
+        ends[size++] = length;
+    }
+
+    /**
+     * Adds all rankings of another set.
+     * 
+     * @param rankings
+     *            The rankings to add.
+     */
+    public void addAll(RankedBallots rankings) {
+        Snapshot snapshot = rankings.snapshot();
+        for (int i = 0; i < snapshot.size(); i++)
+            add(snapshot.get(i));
+    }
+
+    /**
+     * Removes all rankings. Snapshots that have been taken before are not
+     * affected.
+     */
+    public synchronized void clear() {
+        preferences = new int[16];
+        ends = new int[4];
+        size = 0;
+        length = 0;
+        generation++;
+    }
+
+    /**
+     * Gets the number of rankings.
+     * 
+     * @return the amount of rankings that have been cast.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Takes a snapshot of the rankings. This takes constant time.
+     * 
+     * @return a Snapshot of the rankings that have been cast so far.
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(preferences, ends, size, generation);
+    }
+
+    /**
+     * Serializes the rankings.
+     * 
+     * @return the rankings as a byte array, which can be read by
+     *         {@link #fromByteArray(byte[])}.
+     */
+    public byte[] toByteArray() {
+        Snapshot snapshot = snapshot();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(snapshot.size());
+            for (int i = 0; i < snapshot.size(); i++) {
+                out.writeShort(snapshot.end(i) - snapshot.start(i));
+                for (int position = snapshot.start(i); position < snapshot.end(i); position++)
+                    out.writeInt(snapshot.getPreference(position));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads rankings that were serialized by {@link #toByteArray()}.
+     * 
+     * @param data
+     *            The serialized rankings.
+     * @return a new RankedBallots.
+     * @throws IOException
+     *             If the data is not serialized rankings.
+     */
+    public static RankedBallots fromByteArray(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        RankedBallots rankings = new RankedBallots();
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("Invalid number of rankings " + count);
+        for (int i = 0; i < count; i++) {
+            int[] ranking = new int[in.readUnsignedShort()];
+            for (int j = 0; j < ranking.length; j++)
+                ranking[j] = in.readInt();
+            rankings.add(ranking);
+        }
+        return rankings;
+    }
+
+    /**
+     * An unchanging view of the rankings that had been cast when it was taken.
+     * It may be read on any number of threads.
+     */
+    public static final class Snapshot {
+
+        private final int[] preferences;
+        private final int[] ends;
+        private final int size;
+        private final int generation;
+
+        private Snapshot(int[] preferences, int[] ends, int size, int generation) {
+            this.preferences = preferences;
+            this.ends = ends;
+            this.size = size;
+            this.generation = generation;
+        }
+
+        /**
+         * Gets how often the rankings had been cleared when this snapshot was
+         * taken. A snapshot with the same generation and more rankings than
+         * another one holds all rankings of the other one.
+         * 
+         * @return the generation of the rankings.
+         */
+        public int getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Gets the number of rankings.
+         * 
+         * @return the amount of rankings in this snapshot.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Gets where a ranking starts.
+         * 
+         * @param ranking
+         *            The number of the ranking.
+         * @return the position of its first preference.
+         */
+        public int start(int ranking) {
+            return ranking == 0 ? 0 : ends[ranking - 1];
+        }
+
+        /**
+         * Gets where a ranking ends.
+         * 
+         * @param ranking
+         *            The number of the ranking.
+         * @return the position after its last preference.
+         */
+        public int end(int ranking) {
+            return ends[ranking];
+        }
+
+        /**
+         * Gets a preference.
+         * 
+         * @param position
+         *            The position of the preference, between the start and
+         *            the end of a ranking.
+         * @return the option ID.
+         */
+        public int getPreference(int position) {
+            return preferences[position];
+        }
+
+        /**
+         * Gets a ranking.
+         * 
+         * @param ranking
+         *            The number of the ranking.
+         * @return a new array containing the option IDs, in order of
+         *         preference.
+         */
+        public int[] get(int ranking) {
+            return Arrays.copyOfRange(preferences, start(ranking), end(ranking));
+        }
+
+    }
+
+}
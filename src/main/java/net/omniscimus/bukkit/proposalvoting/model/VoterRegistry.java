@@ -0,0 +1,122 @@
+package net.omniscimus.bukkit.proposalvoting.model;
+
+import java.util.BitSet;
+import java.util.UUID;
+
+import net.omniscimus.bukkit.proposalvoting.storage.PlayerDictionary;
+
+/**
+ * Holds the data of all known players in memory. Players are identified by
+ * their index in the {@link PlayerDictionary}, so that their data can be kept
+ * in bitsets. Changes are passed on to a {@link ModelListener} to be
+ * persisted.
+ */
+public class VoterRegistry {
+
+    private final PlayerDictionary dictionary;
+    private final BitSet optedIn = new BitSet();
+    private final ModelListener listener;
+
+    /**
+     * Creates a new, empty VoterRegistry instance.
+     * 
+     * @param listener
+     *            The listener to notify of changes.
+     * @param dictionary
+     *            The dictionary which assigns the players their indexes.
+     */
+    public VoterRegistry(ModelListener listener, PlayerDictionary dictionary) {
+        this.listener = listener;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Gets the index of a player, assigning a new one if he has not been seen
+     * yet.
+     * 
+     * @param playerId
+     *            The Unique User ID of this player, as generated by Minecraft.
+     * @return the player's index.
+     */
+    public int getIndex(UUID playerId) {
+        return dictionary.getOrAssignIndex(playerId);
+    }
+
+    /**
+     * Gets the player who has a certain index.
+     * 
+     * @param index
+     *            The index of the player.
+     * @return the Unique User ID of this player, as generated by Minecraft.
+     */
+    public UUID getId(int index) {
+        return dictionary.getId(index);
+    }
+
+    /**
+     * Gets the number of known players. All player indexes are lower than this
+     * number.
+     * 
+     * @return the amount of players.
+     */
+    public int size() {
+        return dictionary.size();
+    }
+
+    /**
+     * Gets whether a player has opted in to the ProposalVoting system, thereby
+     * approving of logging his playtime.
+     * 
+     * @param playerId
+     *            The Unique User ID of this player, as generated by Minecraft.
+     * @return {@code true} if the player has opted in.
+     */
+    public boolean isOptedIn(UUID playerId) {
+        int index = dictionary.getIndex(playerId);
+        return index >= 0 && isOptedIn(index);
+    }
+
+    /**
+     * Gets whether a player has opted in to the ProposalVoting system.
+     * 
+     * @param index
+     *            The index of the player.
+     * @return {@code true} if the player has opted in.
+     */
+    public synchronized boolean isOptedIn(int index) {
+        return optedIn.get(index);
+    }
+
+    /**
+     * Changes whether a player has opted in to the ProposalVoting system.
+     * 
+     * @param playerId
+     *            The Unique User ID of this player, as generated by Minecraft.
+     * @param optIn
+     *            A boolean indicating whether this player has opted in.
+     */
+    public void setOptedIn(UUID playerId, boolean optIn) {
+        int index = dictionary.getOrAssignIndex(playerId);
+        synchronized (this) {
+            optedIn.set(index, optIn);
+        }
+        listener.optInChanged(playerId, optIn);
+    }
+
+    /**
+     * Adds a stored opt-in state without notifying the listener. Used while
+     * loading.
+     * 
+     * @param playerId
+     *            The Unique User ID of this player, as generated by Minecraft.
+     * @param optIn
+     *            A boolean indicating whether this player has opted in.
+     */
+    public void load(UUID playerId, boolean optIn) {
+        int index = dictionary.getOrAssignIndex(playerId);
+        synchronized (this) {
+            optedIn.set(index, optIn);
+        }
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Contains the in-memory representation of proposals and voters.
+ */
+package net.omniscimus.bukkit.proposalvoting.model;
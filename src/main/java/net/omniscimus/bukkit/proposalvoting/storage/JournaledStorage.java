@@ -0,0 +1,289 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import net.omniscimus.bukkit.proposalvoting.exceptions.StorageException;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalOption;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalRegistry;
+import net.omniscimus.bukkit.proposalvoting.model.VoterRegistry;
+
+/**
+ * Puts a {@link VoteJournal} in front of another Storage. Votes and opt-in
+ * changes are appended to the journal, so that they are
+ * on disk within one sync interval at the cost of a few bytes each. The other
+ * Storage, which holds the snapshot, is only written once per compaction
+ * interval, after which the journal segments that it covers are deleted. On
+ * startup, whatever is left in the journal is replayed on top of the snapshot.
+ * Changes to the proposals themselves are rare, so they are not journaled;
+ * instead, a snapshot is written on the next tick.
+ */
+public class JournaledStorage implements Storage {
+
+    private final Plugin plugin;
+    private final Storage snapshot;
+    private final VoteJournal journal;
+    private final long syncInterval;
+    private final long compactionInterval;
+
+    private boolean replaying;
+    /**
+     * The playtime records found in the journal, which only older versions
+     * wrote; they are migrated along with the snapshot's playtime.
+     */
+    private final Map<String, Map<UUID, Long>> replayedPlaytime = new HashMap<>();
+    private ScheduledExecutorService syncer;
+    private BukkitTask compactionTask;
+    private final AtomicBoolean compactionRequested = new AtomicBoolean(false);
+
+    /**
+     * Creates a new JournaledStorage instance.
+     *
+     * @param plugin
+     *            The plugin that owns the data.
+     * @param snapshot
+     *            The Storage that holds the snapshot. It should not write on
+     *            its own; it is flushed when the journal is compacted.
+     * @param journal
+     *            The journal.
+     * @param syncInterval
+     *            The time during which journal records are collected before
+     *            they are forced to the disk together, in milliseconds.
+     * @param compactionInterval
+     *            The time between two snapshots, in milliseconds.
+     */
+    public JournaledStorage(Plugin plugin, Storage snapshot, VoteJournal journal, long syncInterval,
+            long compactionInterval) {
+        this.plugin = plugin;
+        this.snapshot = snapshot;
+        this.journal = journal;
+        this.syncInterval = syncInterval;
+        this.compactionInterval = compactionInterval;
+    }
+
+    @Override
+    public void open() throws StorageException {
+        snapshot.open();
+        try {
+            journal.open();
+        } catch (IOException e) {
+            throw new StorageException("Could not open the journal", e);
+        }
+        syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, plugin.getName() + " journal writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(() -> {
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not write to the journal", e);
+            }
+        }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Loads the snapshot, and replays the journal on top of it. The replayed
+     * changes are then compacted into the snapshot.
+     */
+    @Override
+    public void load(ProposalRegistry proposals, VoterRegistry voters) throws StorageException {
+        snapshot.load(proposals, voters);
+        replaying = true;
+        long replayed;
+        try {
+            replayed = journal.replay(new VoteJournal.Visitor() {
+
+                @Override
+                public void vote(int proposalId, int[] ranking, UUID playerId) {
+                    Proposal proposal = proposals.get(proposalId);
+                    if (proposal != null)
+                        proposal.castVote(voters.getIndex(playerId), ranking);
+                }
+
+                @Override
+                public void optIn(UUID playerId, boolean optIn) {
+                    voters.setOptedIn(playerId, optIn);
+                }
+
+                @Override
+                public void playtime(UUID playerId, String year_week, long playtime) {
+                    replayedPlaytime.computeIfAbsent(year_week, week -> new HashMap<>()).put(playerId, playtime);
+                }
+
+            });
+        } finally {
+            replaying = false;
+        }
+        if (replayed > 0) {
+            plugin.getLogger().info("Recovered changes from the journal.");
+            CompletableFuture<Void> written = snapshot.flushAsync();
+            // The snapshot does not hold the replayed playtime, so the
+            // segments are kept until it has been migrated.
+            if (replayedPlaytime.isEmpty()) {
+                written.thenRun(() -> {
+                    journal.deleteUpTo(replayed);
+                });
+            }
+        }
+        long ticks = Math.max(1L, compactionInterval / 50L);
+        compactionTask = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> {
+            compact();
+        }, ticks, ticks);
+    }
+
+    /**
+     * Starts a new journal segment and writes a snapshot in the background.
+     * When the snapshot has been written, the journal segments that it covers
+     * are deleted. This must be called on the main server thread.
+     *
+     * @return a future that completes when the snapshot has been written.
+     */
+    private CompletableFuture<Void> compact() {
+        long covered;
+        CompletableFuture<Void> written;
+        synchronized (this) {
+            try {
+                covered = journal.rotate();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not rotate the journal", e);
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            written = snapshot.flushAsync();
+        }
+        return written.thenRun(() -> {
+            journal.deleteUpTo(covered);
+        });
+    }
+
+    /**
+     * Makes sure that a snapshot is written soon, on the main server thread.
+     */
+    private void requestCompaction() {
+        if (replaying || !compactionRequested.compareAndSet(false, true))
+            return;
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            compactionRequested.set(false);
+            compact();
+        });
+    }
+
+    /**
+     * {@inheritDoc} The playtime records in the journal, which are newer, take
+     * precedence over the playtime in the snapshot.
+     */
+    @Override
+    public synchronized Map<String, Map<UUID, Long>> getLegacyPlaytime() throws StorageException {
+        Map<String, Map<UUID, Long>> weeks = snapshot.getLegacyPlaytime();
+        for (Map.Entry<String, Map<UUID, Long>> week : replayedPlaytime.entrySet())
+            weeks.computeIfAbsent(week.getKey(), key -> new HashMap<>()).putAll(week.getValue());
+        return weeks;
+    }
+
+    /**
+     * {@inheritDoc} The playtime records in the journal are dropped when the
+     * journal is compacted into the snapshot.
+     */
+    @Override
+    public synchronized void removeLegacyPlaytime() {
+        replayedPlaytime.clear();
+        snapshot.removeLegacyPlaytime();
+        requestCompaction();
+    }
+
+    @Override
+    public synchronized void proposalChanged(Proposal proposal) {
+        snapshot.proposalChanged(proposal);
+        requestCompaction();
+    }
+
+    @Override
+    public synchronized void optionChanged(Proposal proposal, ProposalOption option) {
+        snapshot.optionChanged(proposal, option);
+        requestCompaction();
+    }
+
+    @Override
+    public synchronized void proposalIdReserved(int proposalId) {
+        snapshot.proposalIdReserved(proposalId);
+        requestCompaction();
+    }
+
+    @Override
+    public synchronized void proposalRemoved(int proposalId) {
+        snapshot.proposalRemoved(proposalId);
+        requestCompaction();
+    }
+
+    @Override
+    public synchronized void voteCast(Proposal proposal, ProposalOption option, int[] ranking, UUID playerId) {
+        if (!replaying)
+            journal.appendVote(proposal.getId(), ranking, playerId);
+        snapshot.voteCast(proposal, option, ranking, playerId);
+    }
+
+    @Override
+    public synchronized void ballotsChanged(Proposal proposal) {
+        snapshot.ballotsChanged(proposal);
+        requestCompaction();
+    }
+
+    @Override
+    public synchronized void optInChanged(UUID playerId, boolean optIn) {
+        if (!replaying)
+            journal.appendOptIn(playerId, optIn);
+        snapshot.optInChanged(playerId, optIn);
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        return compact();
+    }
+
+    @Override
+    public void flush() {
+        try {
+            compact().join();
+        } catch (CompletionException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not write a snapshot; the journal is kept.", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (compactionTask != null)
+            compactionTask.cancel();
+        flush();
+        if (syncer != null) {
+            syncer.shutdown();
+            try {
+                syncer.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not close the journal", e);
+        }
+        snapshot.close();
+    }
+
+}
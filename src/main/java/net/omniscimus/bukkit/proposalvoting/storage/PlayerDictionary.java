@@ -0,0 +1,146 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Assigns every player a stable, dense index the first time he is seen. The
+ * indexes start at 0 and have no gaps, so that other structures can keep
+ * per-player data in arrays and bitsets instead of maps keyed by UUID. The
+ * dictionary is stored as a file of UUIDs, 16 bytes each, in index order.
+ */
+public class PlayerDictionary {
+
+    private final File file;
+
+    private final Map<UUID, Integer> indexes = new HashMap<>();
+    private long[] mostSigBits = new long[1024];
+    private long[] leastSigBits = new long[1024];
+    private int size;
+    private FileChannel channel;
+
+    /**
+     * Creates a new PlayerDictionary instance.
+     *
+     * @param file
+     *            The file in which the dictionary is stored.
+     */
+    public PlayerDictionary(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the dictionary from its file.
+     *
+     * @throws IOException
+     *             If the file could not be read.
+     */
+    public synchronized void open() throws IOException {
+        file.getParentFile().mkdirs();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer) != -1)
+            ;
+        buffer.flip();
+        while (buffer.remaining() >= 16)
+            add(new UUID(buffer.getLong(), buffer.getLong()));
+        // Drop an entry that was only partially written.
+        channel.truncate(size * 16L);
+        channel.position(size * 16L);
+    }
+
+    /**
+     * Gets the index of a player.
+     *
+     * @param playerId
+     *            The Unique User ID of the player, as generated by Minecraft.
+     * @return the player's index, or -1 if he has not been seen yet.
+     */
+    public synchronized int getIndex(UUID playerId) {
+        Integer index = indexes.get(playerId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets the index of a player, assigning and storing a new one if he has
+     * not been seen yet.
+     *
+     * @param playerId
+     *            The Unique User ID of the player, as generated by Minecraft.
+     * @return the player's index.
+     * @throws UncheckedIOException
+     *             If a new index could not be stored.
+     */
+    public synchronized int getOrAssignIndex(UUID playerId) {
+        Integer index = indexes.get(playerId);
+        if (index != null)
+            return index;
+        ByteBuffer record = ByteBuffer.allocate(16);
+        record.putLong(playerId.getMostSignificantBits());
+        record.putLong(playerId.getLeastSignificantBits());
+        record.flip();
+        try {
+            while (record.hasRemaining())
+                channel.write(record);
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store the index of " + playerId, e);
+        }
+        return add(playerId);
+    }
+
+    /**
+     * Gets the player who has a certain index.
+     *
+     * @param index
+     *            The index.
+     * @return the Unique User ID of the player, as generated by Minecraft.
+     */
+    public synchronized UUID getId(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("No player with index " + index);
+        return new UUID(mostSigBits[index], leastSigBits[index]);
+    }
+
+    /**
+     * Gets the number of players in this dictionary. All indexes are lower
+     * than this number.
+     *
+     * @return the amount of players.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Closes the dictionary's file.
+     *
+     * @throws IOException
+     *             If the file could not be closed.
+     */
+    public synchronized void close() throws IOException {
+        if (channel != null)
+            channel.close();
+    }
+
+    private int add(UUID playerId) {
+        if (size == mostSigBits.length) {
+            mostSigBits = Arrays.copyOf(mostSigBits, size * 2);
+            leastSigBits = Arrays.copyOf(leastSigBits, size * 2);
+        }
+        mostSigBits[size] = playerId.getMostSignificantBits();
+        leastSigBits[size] = playerId.getLeastSignificantBits();
+        indexes.put(playerId, size);
+        return size++;
+    }
+
+}
@@ -0,0 +1,377 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Holds the playtime of weeks that have been moved out of the live
+ * {@link PlaytimeLedger}. Each archived week is a compressed, read-only
+ * segment file which only contains the players who played in that week.
+ * Segments are read when they are queried, and a few of them are kept in
+ * memory. Alternatively, weeks can be folded into a single segment holding
+ * every player's total over all folded weeks, which loses the per-week detail.
+ * <p>
+ * This class is not thread-safe; it is guarded by the ledger that owns it.
+ */
+class PlaytimeArchive {
+
+    private static final int MAGIC = 0x50565041;
+    private static final String EXTENSION = ".seg";
+    private static final String TOTALS = "totals";
+    /**
+     * The number of segments that are kept in memory.
+     */
+    private static final int CACHE_SIZE = 8;
+
+    private final File directory;
+    private final Map<String, Segment> cache = new LinkedHashMap<String, Segment>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Segment> eldest) {
+            return size() > CACHE_SIZE;
+        }
+
+    };
+    private Segment totals;
+
+    /**
+     * Creates a new PlaytimeArchive instance.
+     *
+     * @param directory
+     *            The directory in which to keep the segment files.
+     */
+    PlaytimeArchive(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets whether a week has been archived with its own segment.
+     *
+     * @param year_week
+     *            The year and week, formatted as in %y_%w.
+     * @return {@code true} if the week has a segment.
+     */
+    boolean contains(String year_week) {
+        return getFile(year_week).exists();
+    }
+
+    /**
+     * Gets the weeks that have been archived with their own segments.
+     *
+     * @return a new List containing the years and weeks, in no particular
+     *         order.
+     */
+    List<String> getWeeks() {
+        List<String> weeks = new ArrayList<>();
+        String[] files = directory.list();
+        if (files != null) {
+            for (String file : files) {
+                String week = file.substring(0, Math.max(0, file.length() - EXTENSION.length()));
+                if (file.endsWith(EXTENSION) && !week.equals(TOTALS))
+                    weeks.add(week);
+            }
+        }
+        return weeks;
+    }
+
+    /**
+     * Gets a player's playtime in an archived week.
+     *
+     * @param player
+     *            The index of the player.
+     * @param year_week
+     *            The year and week, formatted as in %y_%w.
+     * @return the playtime, in milliseconds; 0 if the week has not been
+     *         archived with its own segment.
+     * @throws IOException
+     *             If the segment could not be read.
+     */
+    long getPlaytime(int player, String year_week) throws IOException {
+        Segment segment = cache.get(year_week);
+        if (segment == null) {
+            File file = getFile(year_week);
+            if (!file.exists())
+                return 0L;
+            segment = Segment.read(file);
+            cache.put(year_week, segment);
+        }
+        return segment.get(player);
+    }
+
+    /**
+     * Gets the playtime of every player in an archived week.
+     *
+     * @param year_week
+     *            The year and week, formatted as in %y_%w.
+     * @return the playtime per player index, in milliseconds.
+     * @throws IOException
+     *             If the segment could not be read.
+     */
+    long[] read(String year_week) throws IOException {
+        return Segment.read(getFile(year_week)).toArray();
+    }
+
+    /**
+     * Writes the segment of a week.
+     *
+     * @param year_week
+     *            The year and week, formatted as in %y_%w.
+     * @param playtime
+     *            The playtime per player index, in milliseconds.
+     * @throws IOException
+     *             If the segment could not be written.
+     */
+    void write(String year_week, long[] playtime) throws IOException {
+        Files.createDirectories(directory.toPath());
+        Segment.of(playtime, new String[0]).write(getFile(year_week));
+        cache.remove(year_week);
+    }
+
+    /**
+     * Deletes the segment of a week.
+     *
+     * @param year_week
+     *            The year and week, formatted as in %y_%w.
+     * @throws IOException
+     *             If the segment could not be deleted.
+     */
+    void delete(String year_week) throws IOException {
+        cache.remove(year_week);
+        Files.deleteIfExists(getFile(year_week).toPath());
+    }
+
+    /**
+     * Adds the playtime of a week to the players' totals. If the week has
+     * been added before, e.g. because it was written to again after it had
+     * been archived, the playtime is added on top of what was added then.
+     *
+     * @param year_week
+     *            The year and week, formatted as in %y_%w.
+     * @param playtime
+     *            The playtime per player index, in milliseconds.
+     * @throws IOException
+     *             If the totals could not be read or written.
+     */
+    void aggregate(String year_week, long[] playtime) throws IOException {
+        Segment current = getTotals();
+        Set<String> weeks = new HashSet<>(Arrays.asList(current.weeks));
+        weeks.add(year_week);
+        long[] sums = current.toArray();
+        if (sums.length < playtime.length)
+            sums = Arrays.copyOf(sums, playtime.length);
+        for (int player = 0; player < playtime.length; player++)
+            sums[player] += playtime[player];
+        Files.createDirectories(directory.toPath());
+        Segment updated = Segment.of(sums, weeks.toArray(new String[weeks.size()]));
+        updated.write(getFile(TOTALS));
+        totals = updated;
+    }
+
+    /**
+     * Gets a player's total playtime in the weeks that have been folded into
+     * the totals.
+     *
+     * @param player
+     *            The index of the player.
+     * @return the playtime, in milliseconds.
+     * @throws IOException
+     *             If the totals could not be read.
+     */
+    long getAggregatedPlaytime(int player) throws IOException {
+        return getTotals().get(player);
+    }
+
+    /**
+     * Replaces the totals of certain players, e.g. when they are imported,
+     * and adds weeks to those that the totals cover.
+     *
+     * @param weeks
+     *            The weeks that the totals cover, formatted as in %y_%w.
+     * @param playtime
+     *            The new totals, in milliseconds, by player index.
+     * @throws IOException
+     *             If the totals could not be read or written.
+     */
+    void setAggregated(Collection<String> weeks, Map<Integer, Long> playtime) throws IOException {
+        Segment current = getTotals();
+        Set<String> covered = new HashSet<>(Arrays.asList(current.weeks));
+        covered.addAll(weeks);
+        long[] sums = current.toArray();
+        for (Map.Entry<Integer, Long> entry : playtime.entrySet()) {
+            if (sums.length <= entry.getKey())
+                sums = Arrays.copyOf(sums, entry.getKey() + 1);
+            sums[entry.getKey()] = entry.getValue();
+        }
+        Files.createDirectories(directory.toPath());
+        Segment updated = Segment.of(sums, covered.toArray(new String[covered.size()]));
+        updated.write(getFile(TOTALS));
+        totals = updated;
+    }
+
+    /**
+     * Gets the weeks that have been folded into the totals.
+     *
+     * @return a new List containing the years and weeks, formatted as in
+     *         %y_%w, in no particular order.
+     * @throws IOException
+     *             If the totals could not be read.
+     */
+    List<String> getAggregatedWeeks() throws IOException {
+        return new ArrayList<>(Arrays.asList(getTotals().weeks));
+    }
+
+    /**
+     * Gets whether a week has been folded into the totals.
+     *
+     * @param year_week
+     *            The year and week, formatted as in %y_%w.
+     * @return {@code true} if the week has been folded into the totals.
+     * @throws IOException
+     *             If the totals could not be read.
+     */
+    boolean isAggregated(String year_week) throws IOException {
+        return Arrays.asList(getTotals().weeks).contains(year_week);
+    }
+
+    /**
+     * Forgets the segments that are kept in memory.
+     */
+    void clearCache() {
+        cache.clear();
+        totals = null;
+    }
+
+    private Segment getTotals() throws IOException {
+        if (totals == null) {
+            File file = getFile(TOTALS);
+            totals = file.exists() ? Segment.read(file) : Segment.of(new long[0], new String[0]);
+        }
+        return totals;
+    }
+
+    private File getFile(String name) {
+        return new File(directory, name + EXTENSION);
+    }
+
+    /**
+     * The playtime of the players who played, sorted by player index, and the
+     * weeks it covers if it holds totals.
+     */
+    private static class Segment {
+
+        private final String[] weeks;
+        private final int[] players;
+        private final long[] playtime;
+
+        private Segment(String[] weeks, int[] players, long[] playtime) {
+            this.weeks = weeks;
+            this.players = players;
+            this.playtime = playtime;
+        }
+
+        static Segment of(long[] dense, String[] weeks) {
+            int count = 0;
+            for (long value : dense) {
+                if (value != 0)
+                    count++;
+            }
+            int[] players = new int[count];
+            long[] playtime = new long[count];
+            int i = 0;
+            for (int player = 0; player < dense.length; player++) {
+                if (dense[player] != 0) {
+                    players[i] = player;
+                    playtime[i] = dense[player];
+                    i++;
+                }
+            }
+            return new Segment(weeks, players, playtime);
+        }
+
+        static Segment read(File file) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new InflaterInputStream(Files.newInputStream(file.toPath()))))) {
+                if (in.readInt() != MAGIC)
+                    throw new IOException(file.getName() + " is not a playtime segment");
+                String[] weeks = new String[in.readInt()];
+                for (int i = 0; i < weeks.length; i++)
+                    weeks[i] = in.readUTF();
+                int count = in.readInt();
+                int[] players = new int[count];
+                long[] playtime = new long[count];
+                for (int i = 0; i < count; i++) {
+                    players[i] = in.readInt();
+                    playtime[i] = in.readLong();
+                }
+                return new Segment(weeks, players, playtime);
+            }
+        }
+
+        /**
+         * Writes this segment to a temporary file and forces it to the disk,
+         * and then moves it into place, so that a crash never leaves a
+         * partial segment behind.
+         */
+        void write(File file) throws IOException {
+            Path temporary = new File(file.getParentFile(), file.getName() + ".tmp").toPath();
+            try (FileOutputStream stream = new FileOutputStream(temporary.toFile())) {
+                DeflaterOutputStream deflater = new DeflaterOutputStream(stream);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(deflater));
+                out.writeInt(MAGIC);
+                out.writeInt(weeks.length);
+                for (String week : weeks)
+                    out.writeUTF(week);
+                out.writeInt(players.length);
+                for (int i = 0; i < players.length; i++) {
+                    out.writeInt(players[i]);
+                    out.writeLong(playtime[i]);
+                }
+                out.flush();
+                deflater.finish();
+                stream.getFD().sync();
+                out.close();
+            }
+            try {
+                Files.move(temporary, file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        long get(int player) {
+            int position = Arrays.binarySearch(players, player);
+            return position >= 0 ? playtime[position] : 0L;
+        }
+
+        long[] toArray() {
+            long[] dense = new long[players.length == 0 ? 0 : players[players.length - 1] + 1];
+            for (int i = 0; i < players.length; i++)
+                dense[players[i]] = playtime[i];
+            return dense;
+        }
+
+    }
+
+}
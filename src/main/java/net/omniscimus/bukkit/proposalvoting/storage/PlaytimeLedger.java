@@ -0,0 +1,496 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps every player's playtime per week in memory-mapped files. Each week has
+ * its own file, in which every player has a fixed slot holding one long: his
+ * playtime in that week, in milliseconds. A player's slot is his index in the
+ * {@link PlayerDictionary}. Updating playtime is a single store
+ * into the mapped file; the operating system writes it back to the disk.
+ * Files of past weeks are only read into memory when they are queried.
+ * Weeks beyond a horizon can be moved into a compressed {@link PlaytimeArchive},
+ * so that the number of live files stays the same over time.
+ */
+public class PlaytimeLedger {
+
+    /**
+     * The week files grow by this many slots at a time.
+     */
+    private static final int SLOTS_PER_CHUNK = 4096;
+
+    private final File directory;
+    private final PlaytimeArchive archive;
+
+    private final Map<String, WeekFile> weeks = new HashMap<>();
+    private boolean created;
+    private boolean closed;
+
+    /**
+     * Creates a new PlaytimeLedger instance.
+     *
+     * @param directory
+     *            The directory in which to keep the ledger files.
+     */
+    public PlaytimeLedger(File directory) {
+        this.directory = directory;
+        this.archive = new PlaytimeArchive(new File(directory, "archive"));
+    }
+
+    /**
+     * Opens the ledger.
+     *
+     * @throws IOException
+     *             If the ledger's directory could not be created.
+     */
+    public synchronized void open() throws IOException {
+        created = !directory.exists();
+        Files.createDirectories(directory.toPath());
+    }
+
+    /**
+     * Gets whether the ledger did not exist yet before it was opened.
+     *
+     * @return {@code true} if the ledger was created by {@link #open()}.
+     */
+    public boolean isNew() {
+        return created;
+    }
+
+    /**
+     * Gets the player's amount of played time over the specified week.
+     *
+     * @param player
+     *            The index of the player.
+     * @param year_week
+     *            A String indicating the year and week over which to look up
+     *            the playtime, formatted as in %y_%w.
+     * @return the player's amount of played time, in milliseconds.
+     * @throws IOException
+     *             If the week's file could not be read.
+     */
+    public synchronized long getPlaytime(int player, String year_week) throws IOException {
+        WeekFile week = getWeek(year_week, false);
+        return week != null ? week.get(player) : archive.getPlaytime(player, year_week);
+    }
+
+    /**
+     * Adds to the player's amount of played time over the specified week.
+     *
+     * @param player
+     *            The index of the player.
+     * @param year_week
+     *            A String indicating the year and week, formatted as in %y_%w.
+     * @param playtime
+     *            The amount of played time to add, in milliseconds.
+     * @return the player's new amount of played time, in milliseconds.
+     * @throws IOException
+     *             If the week's file could not be written.
+     */
+    public synchronized long addPlaytime(int player, String year_week, long playtime) throws IOException {
+        WeekFile week = getWeek(year_week, true);
+        long total = week.get(player) + playtime;
+        week.set(player, total);
+        return total;
+    }
+
+    /**
+     * Adds to the amount of played time of several players over the specified
+     * week, and forces the changes to the disk. If the week's file can not be
+     * created or grown, none of the amounts are added. The batch is not
+     * atomic on the disk, though: until the changes have been forced, the
+     * operating system may write back any part of them, so a crash can leave
+     * only some of the amounts saved. On return, {@code playtime} holds the
+     * players' new amounts of played time.
+     *
+     * @param players
+     *            The indexes of the players.
+     * @param year_week
+     *            A String indicating the year and week, formatted as in %y_%w.
+     * @param playtime
+     *            The amounts of played time to add, in milliseconds, in the
+     *            same order as {@code players}.
+     * @param count
+     *            The number of players to update.
+     * @throws IOException
+     *             If the week's file could not be written.
+     */
+    public synchronized void addPlaytime(int[] players, String year_week, long[] playtime, int count)
+            throws IOException {
+        WeekFile week = getWeek(year_week, true);
+        int highest = -1;
+        for (int i = 0; i < count; i++)
+            highest = Math.max(highest, players[i]);
+        if (highest >= 0)
+            week.reserve(highest);
+        for (int i = 0; i < count; i++) {
+            long total = week.get(players[i]) + playtime[i];
+            if (playtime[i] != 0)
+                week.set(players[i], total);
+            playtime[i] = total;
+        }
+        week.force();
+    }
+
+    /**
+     * Changes the player's amount of played time over the specified week.
+     *
+     * @param player
+     *            The index of the player.
+     * @param year_week
+     *            A String indicating the year and week, formatted as in %y_%w.
+     * @param playtime
+     *            The player's amount of played time, in milliseconds.
+     * @throws IOException
+     *             If the week's file could not be written.
+     */
+    public synchronized void setPlaytime(int player, String year_week, long playtime) throws IOException {
+        getWeek(year_week, true).set(player, playtime);
+    }
+
+    /**
+     * Gets the weeks of which the ledger holds playtime.
+     *
+     * @return a new List containing the years and weeks, formatted as in
+     *         %y_%w, in ascending order.
+     */
+    public synchronized List<String> getWeeks() {
+        List<String> weeks = getLiveWeeks();
+        for (String week : archive.getWeeks()) {
+            if (!weeks.contains(week))
+                weeks.add(week);
+        }
+        weeks.sort(PlaytimeLedger::compareWeeks);
+        return weeks;
+    }
+
+    private List<String> getLiveWeeks() {
+        List<String> weeks = new ArrayList<>();
+        String[] files = directory.list();
+        if (files != null) {
+            for (String file : files) {
+                if (file.endsWith(".bin"))
+                    weeks.add(file.substring(0, file.length() - 4));
+            }
+        }
+        weeks.sort(PlaytimeLedger::compareWeeks);
+        return weeks;
+    }
+
+    /**
+     * Moves the weeks before a certain week out of the live files, into the
+     * archive. A week is only removed from the live files after its segment
+     * has been written, so a crash in between leaves both behind, and the week
+     * is archived again the next time. Weeks are archived one at a time.
+     *
+     * @param oldestLive
+     *            The oldest week to keep live, formatted as in %y_%w; e.g. the
+     *            week a number of weeks before the current one.
+     * @param aggregateOnly
+     *            Whether to only keep every player's total over the archived
+     *            weeks, instead of a segment per week.
+     * @return a new List containing the weeks that were archived.
+     * @throws IOException
+     *             If a week could not be archived.
+     */
+    public List<String> archive(String oldestLive, boolean aggregateOnly) throws IOException {
+        List<String> live;
+        synchronized (this) {
+            live = getLiveWeeks();
+        }
+        List<String> archived = new ArrayList<>();
+        for (String week : live) {
+            if (compareWeeks(week, oldestLive) >= 0)
+                break;
+            archiveWeek(week, aggregateOnly);
+            archived.add(week);
+        }
+        return archived;
+    }
+
+    private synchronized void archiveWeek(String year_week, boolean aggregateOnly) throws IOException {
+        if (closed)
+            throw new IOException("The playtime ledger is closed");
+        // The file can only be deleted once it is no longer mapped, on some
+        // platforms.
+        WeekFile open = weeks.remove(year_week);
+        if (open != null)
+            open.release();
+        File file = new File(directory, year_week + ".bin");
+        long[] playtime;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+            buffer.flip();
+            playtime = new long[buffer.remaining() / 8];
+            buffer.asLongBuffer().get(playtime);
+        }
+        if (aggregateOnly)
+            archive.aggregate(year_week, playtime);
+        else
+            archive.write(year_week, playtime);
+        Files.delete(file.toPath());
+    }
+
+    /**
+     * Gets a player's total playtime in the weeks that were archived with
+     * {@code aggregateOnly}.
+     *
+     * @param player
+     *            The index of the player.
+     * @return the playtime, in milliseconds.
+     * @throws IOException
+     *             If the archive could not be read.
+     */
+    public synchronized long getAggregatedPlaytime(int player) throws IOException {
+        return archive.getAggregatedPlaytime(player);
+    }
+
+    /**
+     * Gets the weeks that were archived with {@code aggregateOnly}, whose
+     * playtime per player is only known in total.
+     *
+     * @return a new List containing the years and weeks, formatted as in
+     *         %y_%w, in ascending order.
+     * @throws IOException
+     *             If the archive could not be read.
+     */
+    public synchronized List<String> getAggregatedWeeks() throws IOException {
+        List<String> weeks = archive.getAggregatedWeeks();
+        weeks.sort(PlaytimeLedger::compareWeeks);
+        return weeks;
+    }
+
+    /**
+     * Replaces the totals of certain players over the weeks that were
+     * archived with {@code aggregateOnly}, e.g. when they are imported.
+     *
+     * @param weeks
+     *            The weeks that the totals cover, formatted as in %y_%w.
+     * @param playtime
+     *            The players' totals, in milliseconds, by player index.
+     * @throws IOException
+     *             If the archive could not be written.
+     */
+    public synchronized void setAggregatedPlaytime(Collection<String> weeks, Map<Integer, Long> playtime)
+            throws IOException {
+        if (closed)
+            throw new IOException("The playtime ledger is closed");
+        archive.setAggregated(weeks, playtime);
+    }
+
+    /**
+     * Compares two weeks chronologically.
+     *
+     * @param a
+     *            A year and week, formatted as in %y_%w.
+     * @param b
+     *            Another year and week, formatted as in %y_%w.
+     * @return a negative number, zero or a positive number if {@code a} is
+     *         before, the same as or after {@code b}.
+     */
+    static int compareWeeks(String a, String b) {
+        long[] x = parseWeek(a), y = parseWeek(b);
+        if (x == null || y == null)
+            return x != null ? -1 : y != null ? 1 : a.compareTo(b);
+        return x[0] != y[0] ? Long.compare(x[0], y[0]) : Long.compare(x[1], y[1]);
+    }
+
+    private static long[] parseWeek(String year_week) {
+        int separator = year_week.indexOf('_');
+        try {
+            return new long[] { Long.parseLong(year_week.substring(0, separator)),
+                    Long.parseLong(year_week.substring(separator + 1)) };
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Forces all changes to the disk.
+     */
+    public synchronized void force() {
+        for (WeekFile week : weeks.values())
+            week.force();
+    }
+
+    /**
+     * Forces all changes to the disk and releases the ledger's files.
+     *
+     * @throws IOException
+     *             If the files could not be closed.
+     */
+    public synchronized void close() throws IOException {
+        for (WeekFile week : weeks.values())
+            week.release();
+        weeks.clear();
+        archive.clearCache();
+        closed = true;
+    }
+
+    /**
+     * Gets the file of a week, mapping it if necessary.
+     *
+     * @param year_week
+     *            The year and week, formatted as in %y_%w.
+     * @param write
+     *            Whether the file will be written to.
+     * @return the mapped week file; {@code null} if it does not exist and
+     *         {@code write} is {@code false}.
+     * @throws IOException
+     *             If the file could not be mapped.
+     */
+    private WeekFile getWeek(String year_week, boolean write) throws IOException {
+        if (closed)
+            throw new IOException("The playtime ledger is closed");
+        WeekFile week = weeks.get(year_week);
+        if (week != null && (week.writable || !write))
+            return week;
+        File file = new File(directory, year_week + ".bin");
+        if (!write && !file.exists())
+            return null;
+        if (write && !file.exists() && archive.contains(year_week))
+            return restore(year_week, file);
+        week = write ? WeekFile.openWritable(file) : WeekFile.openReadOnly(file);
+        weeks.put(year_week, week);
+        return week;
+    }
+
+    /**
+     * Moves an archived week back into a live file, so that it can be
+     * written to.
+     */
+    private WeekFile restore(String year_week, File file) throws IOException {
+        long[] playtime = archive.read(year_week);
+        WeekFile week = WeekFile.openWritable(file);
+        for (int player = 0; player < playtime.length; player++) {
+            if (playtime[player] != 0)
+                week.set(player, playtime[player]);
+        }
+        week.force();
+        weeks.put(year_week, week);
+        archive.delete(year_week);
+        return week;
+    }
+
+    /**
+     * The playtime of one week: a mapped file if it is written to, or else a
+     * copy of the file in memory.
+     */
+    private static class WeekFile {
+
+        private final FileChannel channel;
+        private final boolean writable;
+        private ByteBuffer buffer;
+
+        private WeekFile(FileChannel channel, boolean writable, ByteBuffer buffer) {
+            this.channel = channel;
+            this.writable = writable;
+            this.buffer = buffer;
+        }
+
+        static WeekFile openWritable(File file) throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long size = Math.max(channel.size(), SLOTS_PER_CHUNK * 8L);
+            return new WeekFile(channel, true, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        /**
+         * Reads a week's file into memory. Past weeks are not mapped, because
+         * a mapping keeps the file from being deleted on some platforms until
+         * it is garbage collected, which would keep the week from being
+         * archived.
+         */
+        static WeekFile openReadOnly(File file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                }
+                buffer.flip();
+                return new WeekFile(null, false, buffer);
+            }
+        }
+
+        long get(int slot) {
+            int offset = slot * 8;
+            return offset + 8 <= buffer.limit() ? buffer.getLong(offset) : 0L;
+        }
+
+        void set(int slot, long playtime) throws IOException {
+            reserve(slot);
+            buffer.putLong(slot * 8, playtime);
+        }
+
+        /**
+         * Grows the file, if necessary, so that it has a certain slot.
+         */
+        void reserve(int slot) throws IOException {
+            if (slot * 8 + 8 > buffer.capacity()) {
+                long chunks = slot / SLOTS_PER_CHUNK + 1;
+                force();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, chunks * SLOTS_PER_CHUNK * 8L);
+            }
+        }
+
+        void force() {
+            if (writable)
+                ((MappedByteBuffer) buffer).force();
+        }
+
+        /**
+         * Forces the changes to the disk, and closes and unmaps the file.
+         * The week file must not be used afterwards.
+         */
+        void release() throws IOException {
+            force();
+            if (channel != null)
+                channel.close();
+            if (writable)
+                unmap((MappedByteBuffer) buffer);
+            buffer = null;
+        }
+
+    }
+
+    /**
+     * Unmaps a buffer right away, instead of when it is garbage collected.
+     * There is no public API for this, so the JDK internals are called; if
+     * that fails, the buffer is left to the garbage collector.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            try {
+                // Java 9 and later.
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                // Java 8.
+                Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object clean = cleaner.invoke(buffer);
+                if (clean != null)
+                    clean.getClass().getMethod("clean").invoke(clean);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector.
+        }
+    }
+
+}
@@ -0,0 +1,321 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Keeps every player's playtime over a rolling window, e.g. the last seven
+ * days. Time is divided into fixed buckets counted from the Unix Epoch, e.g.
+ * hours or days, and each player has a ring of slots holding their playtime in
+ * the most recent buckets. The rings are kept in a memory-mapped file.
+ * <p>
+ * The sum of every player's ring is kept in memory and updated along with the
+ * slots, so a player's playtime over the window is known without adding up
+ * their buckets. When a new bucket starts, the slot that falls out of the
+ * window is subtracted from each player's sum and cleared.
+ */
+public class PlaytimeWindow {
+
+    private static final int MAGIC = 0x50565057;
+    private static final int HEADER_SIZE = 32;
+    /**
+     * The file grows by this many players at a time.
+     */
+    private static final int PLAYERS_PER_CHUNK = 4096;
+
+    private final File file;
+    private final long bucketLength;
+    private final int buckets;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private long currentBucket;
+    private long[] sums = new long[0];
+    private boolean created;
+
+    /**
+     * Creates a new PlaytimeWindow instance.
+     *
+     * @param file
+     *            The file in which to keep the rings.
+     * @param bucketLength
+     *            The length of a bucket, in milliseconds.
+     * @param buckets
+     *            The number of buckets in the window, including the current
+     *            one.
+     */
+    public PlaytimeWindow(File file, long bucketLength, int buckets) {
+        this.file = file;
+        this.bucketLength = bucketLength;
+        this.buckets = Math.max(1, buckets);
+    }
+
+    /**
+     * Opens the window, and computes every player's sum. If the file was
+     * written with a different bucket length or number of buckets, it is
+     * started over.
+     *
+     * @param now
+     *            The current time, in milliseconds since the Unix Epoch.
+     * @throws IOException
+     *             If the file could not be opened.
+     */
+    public synchronized void open(long now) throws IOException {
+        file.getParentFile().mkdirs();
+        created = !file.exists();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean compatible = channel.size() >= HEADER_SIZE;
+        if (compatible) {
+            map(channel.size());
+            compatible = buffer.getInt(0) == MAGIC && buffer.getInt(4) == buckets
+                    && buffer.getLong(8) == bucketLength;
+        }
+        if (!compatible) {
+            created = true;
+            channel.truncate(0);
+            map(HEADER_SIZE + (long) PLAYERS_PER_CHUNK * buckets * 8);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, buckets);
+            buffer.putLong(8, bucketLength);
+            buffer.putLong(16, now / bucketLength);
+        }
+        currentBucket = buffer.getLong(16);
+        sums = new long[capacity];
+        for (int player = 0; player < capacity; player++) {
+            for (int slot = 0; slot < buckets; slot++)
+                sums[player] += buffer.getLong(offset(player, slot));
+        }
+        advanceTo(now);
+    }
+
+    /**
+     * Gets whether the window was started over by {@link #open(long)}.
+     *
+     * @return {@code true} if the window holds no earlier playtime.
+     */
+    public boolean isNew() {
+        return created;
+    }
+
+    /**
+     * Gets a player's playtime over the window. This takes constant time.
+     *
+     * @param player
+     *            The index of the player.
+     * @return the player's playtime in the window, in milliseconds.
+     */
+    public synchronized long getPlaytime(int player) {
+        return player < sums.length ? sums[player] : 0L;
+    }
+
+    /**
+     * Adds to a player's playtime in the current bucket.
+     *
+     * @param player
+     *            The index of the player.
+     * @param playtime
+     *            The amount of played time to add, in milliseconds.
+     * @return the player's new playtime over the window, in milliseconds.
+     * @throws IOException
+     *             If the file could not be grown.
+     */
+    public synchronized long addPlaytime(int player, long playtime) throws IOException {
+        if (playtime == 0)
+            return getPlaytime(player);
+        ensureCapacity(player);
+        int offset = offset(player, (int) (currentBucket % buckets));
+        buffer.putLong(offset, buffer.getLong(offset) + playtime);
+        sums[player] += playtime;
+        return sums[player];
+    }
+
+    /**
+     * Adds to the playtime of several players in the current bucket. If the
+     * file can not be grown, none of the amounts are added. The changes are
+     * not forced to the disk, and the operating system may write back any
+     * part of them before they are, so a crash can leave only some of the
+     * amounts saved.
+     *
+     * @param players
+     *            The indexes of the players.
+     * @param playtime
+     *            The amounts of played time to add, in milliseconds, in the
+     *            same order as {@code players}; negative amounts take back
+     *            playtime that was added before.
+     * @param count
+     *            The number of players to update.
+     * @return a new array holding the players' new playtime over the window,
+     *         in milliseconds, in the same order as {@code players}.
+     * @throws IOException
+     *             If the file could not be grown.
+     */
+    public synchronized long[] addPlaytime(int[] players, long[] playtime, int count) throws IOException {
+        int highest = -1;
+        for (int i = 0; i < count; i++)
+            highest = Math.max(highest, players[i]);
+        if (highest >= 0)
+            ensureCapacity(highest);
+        long[] recent = new long[count];
+        int slot = (int) (currentBucket % buckets);
+        for (int i = 0; i < count; i++) {
+            int offset = offset(players[i], slot);
+            buffer.putLong(offset, buffer.getLong(offset) + playtime[i]);
+            sums[players[i]] += playtime[i];
+            recent[i] = sums[players[i]];
+        }
+        return recent;
+    }
+
+    /**
+     * Gets the length of the buckets.
+     *
+     * @return the bucket length, in milliseconds.
+     */
+    public long getBucketLength() {
+        return bucketLength;
+    }
+
+    /**
+     * Gets the number of buckets in the window.
+     *
+     * @return the number of buckets, including the current one.
+     */
+    public int getBucketCount() {
+        return buckets;
+    }
+
+    /**
+     * Gets the number of the current bucket, counted from the Unix Epoch.
+     *
+     * @return the current bucket.
+     */
+    public synchronized long getCurrentBucket() {
+        return currentBucket;
+    }
+
+    /**
+     * Gets a player's playtime in every bucket of the window.
+     *
+     * @param player
+     *            The index of the player.
+     * @return a new array holding the playtime in each bucket, in
+     *         milliseconds, oldest first; the last one is the current bucket.
+     */
+    public synchronized long[] getBuckets(int player) {
+        long[] playtime = new long[buckets];
+        if (player >= capacity)
+            return playtime;
+        for (int i = 0; i < buckets; i++) {
+            long bucket = currentBucket - buckets + 1 + i;
+            if (bucket >= 0)
+                playtime[i] = buffer.getLong(offset(player, (int) (bucket % buckets)));
+        }
+        return playtime;
+    }
+
+    /**
+     * Changes a player's playtime in a bucket of the window, e.g. when it is
+     * imported.
+     *
+     * @param player
+     *            The index of the player.
+     * @param bucket
+     *            The number of the bucket, counted from the Unix Epoch.
+     * @param playtime
+     *            The player's playtime in the bucket, in milliseconds.
+     * @return {@code false} if the bucket is not in the window, in which case
+     *         nothing is changed.
+     * @throws IOException
+     *             If the file could not be grown.
+     */
+    public synchronized boolean setPlaytime(int player, long bucket, long playtime) throws IOException {
+        if (bucket > currentBucket || bucket <= currentBucket - buckets || bucket < 0)
+            return false;
+        ensureCapacity(player);
+        int offset = offset(player, (int) (bucket % buckets));
+        sums[player] += playtime - buffer.getLong(offset);
+        buffer.putLong(offset, playtime);
+        return true;
+    }
+
+    /**
+     * Moves on to the bucket that contains a certain moment. The buckets that
+     * fall out of the window are cleared, and subtracted from the sums.
+     *
+     * @param now
+     *            The current time, in milliseconds since the Unix Epoch.
+     * @return {@code true} if a new bucket has started.
+     * @throws IOException
+     *             If the window is closed.
+     */
+    public synchronized boolean advanceTo(long now) throws IOException {
+        if (buffer == null)
+            throw new IOException("The playtime window is closed");
+        long bucket = now / bucketLength;
+        if (bucket <= currentBucket)
+            return false;
+        long expired = Math.min(bucket - currentBucket, buckets);
+        for (long b = bucket - expired + 1; b <= bucket; b++) {
+            int slot = (int) (b % buckets);
+            for (int player = 0; player < capacity; player++) {
+                int offset = offset(player, slot);
+                long playtime = buffer.getLong(offset);
+                if (playtime != 0) {
+                    sums[player] -= playtime;
+                    buffer.putLong(offset, 0L);
+                }
+            }
+        }
+        currentBucket = bucket;
+        buffer.putLong(16, bucket);
+        return true;
+    }
+
+    /**
+     * Forces all changes to the disk.
+     */
+    public synchronized void force() {
+        if (buffer != null)
+            buffer.force();
+    }
+
+    /**
+     * Forces all changes to the disk and releases the file.
+     *
+     * @throws IOException
+     *             If the file could not be closed.
+     */
+    public synchronized void close() throws IOException {
+        force();
+        buffer = null;
+        if (channel != null)
+            channel.close();
+    }
+
+    private int offset(int player, int slot) {
+        return HEADER_SIZE + (player * buckets + slot) * 8;
+    }
+
+    private void ensureCapacity(int player) throws IOException {
+        if (buffer == null)
+            throw new IOException("The playtime window is closed");
+        if (player < capacity)
+            return;
+        long chunks = player / PLAYERS_PER_CHUNK + 1;
+        buffer.force();
+        map(HEADER_SIZE + chunks * PLAYERS_PER_CHUNK * buckets * 8);
+        sums = Arrays.copyOf(sums, capacity);
+    }
+
+    private void map(long size) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        capacity = (int) ((size - HEADER_SIZE) / (buckets * 8L));
+    }
+
+}
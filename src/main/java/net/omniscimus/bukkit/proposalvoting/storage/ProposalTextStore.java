@@ -0,0 +1,311 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the texts of the proposals: their titles, descriptions and option
+ * descriptions. These can be long, and are only needed when a proposal is
+ * shown, so they are kept out of memory. The texts are appended to a single
+ * file; only the position of every text in the file is kept in memory, along
+ * with a few texts that have been used recently.
+ * <p>
+ * A text is never overwritten in place; a change appends a new record, which
+ * supersedes the old one. Superseded records are dropped when the file is
+ * compacted, which happens when it is opened.
+ */
+public class ProposalTextStore {
+
+    private static final int MAGIC = 0x50565458;
+    private static final int HEADER_SIZE = 4;
+    /**
+     * The number of texts that are kept in memory.
+     */
+    private static final int CACHE_SIZE = 64;
+    /**
+     * The file is only compacted if at least this many bytes are superseded,
+     * and they make up at least half of the file.
+     */
+    private static final long COMPACTION_THRESHOLD = 64 * 1024;
+
+    private final File file;
+    /**
+     * The position of the length of every text in the file, by key.
+     */
+    private final Map<String, Long> positions = new HashMap<>();
+    private final Map<String, String> cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+
+    };
+    private FileChannel channel;
+    private long size;
+    private long superseded;
+
+    /**
+     * Creates a new ProposalTextStore instance.
+     *
+     * @param file
+     *            The file in which to keep the texts.
+     */
+    public ProposalTextStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the file and finds the position of every text in it. A record that
+     * was only partly written when the server stopped is discarded.
+     *
+     * @throws IOException
+     *             If the file could not be opened or read.
+     */
+    public synchronized void open() throws IOException {
+        file.getParentFile().mkdirs();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        scan();
+        if (superseded >= COMPACTION_THRESHOLD && superseded * 2 >= size)
+            compact();
+    }
+
+    /**
+     * Gets a text.
+     *
+     * @param key
+     *            The key of the text.
+     * @return the text, or {@code null} if there is no text with this key.
+     * @throws IOException
+     *             If the text could not be read.
+     */
+    public synchronized String get(String key) throws IOException {
+        String text = cache.get(key);
+        if (text != null)
+            return text;
+        Long position = positions.get(key);
+        if (position == null)
+            return null;
+        text = readText(channel, position);
+        cache.put(key, text);
+        return text;
+    }
+
+    /**
+     * Checks if there is a text with a certain key.
+     *
+     * @param key
+     *            The key of the text.
+     * @return {@code true} if the text exists.
+     */
+    public synchronized boolean contains(String key) {
+        return positions.containsKey(key);
+    }
+
+    /**
+     * Changes a text, and forces the change to the disk.
+     *
+     * @param key
+     *            The key of the text.
+     * @param text
+     *            The new text, or {@code null} to remove it.
+     * @throws IOException
+     *             If the text could not be written.
+     */
+    public synchronized void put(String key, String text) throws IOException {
+        append(key, text);
+        channel.force(false);
+    }
+
+    /**
+     * Removes all texts whose keys start with a certain prefix, and forces the
+     * change to the disk.
+     *
+     * @param prefix
+     *            The prefix of the keys.
+     * @throws IOException
+     *             If the removals could not be written.
+     */
+    public synchronized void removeAll(String prefix) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (String key : positions.keySet()) {
+            if (key.startsWith(prefix))
+                keys.add(key);
+        }
+        if (keys.isEmpty())
+            return;
+        for (String key : keys)
+            append(key, null);
+        channel.force(false);
+    }
+
+    /**
+     * Releases the file.
+     *
+     * @throws IOException
+     *             If the file could not be closed.
+     */
+    public synchronized void close() throws IOException {
+        cache.clear();
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private void append(String key, String text) throws IOException {
+        if (channel == null)
+            throw new IOException("The proposal text store is closed");
+        if (text == null && !positions.containsKey(key))
+            return;
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        if (text == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(textBytes.length);
+            out.write(textBytes);
+        }
+        writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), size);
+        Long previous = text == null ? positions.remove(key) : positions.put(key, size + 4 + keyBytes.length);
+        if (previous != null)
+            superseded += recordSize(key, previous);
+        if (text == null) {
+            cache.remove(key);
+            superseded += bytes.size();
+        } else {
+            cache.put(key, text);
+        }
+        size += bytes.size();
+    }
+
+    private void scan() throws IOException {
+        positions.clear();
+        cache.clear();
+        superseded = 0;
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(0, MAGIC);
+            channel.truncate(0);
+            writeFully(channel, header, 0);
+            size = HEADER_SIZE;
+            return;
+        }
+        if (readInt(0) != MAGIC)
+            throw new IOException(file.getName() + " is not a proposal text store");
+        long position = HEADER_SIZE;
+        long end = channel.size();
+        while (position + 8 <= end) {
+            int keyLength = readInt(position);
+            if (keyLength < 0 || position + 8 + keyLength > end)
+                break;
+            ByteBuffer keyBytes = ByteBuffer.allocate(keyLength);
+            readFully(channel, keyBytes, position + 4);
+            String key = new String(keyBytes.array(), StandardCharsets.UTF_8);
+            long textPosition = position + 4 + keyLength;
+            int textLength = readInt(textPosition);
+            long next = textPosition + 4 + Math.max(0, textLength);
+            if (next > end)
+                break;
+            Long previous = textLength < 0 ? positions.remove(key) : positions.put(key, textPosition);
+            if (previous != null)
+                superseded += recordSize(key, previous);
+            if (textLength < 0)
+                superseded += next - position;
+            position = next;
+        }
+        if (position < end)
+            channel.truncate(position);
+        size = position;
+    }
+
+    /**
+     * Writes the texts that are still in use to a new file, which then
+     * replaces the current one.
+     */
+    private void compact() throws IOException {
+        Path temporary = new File(file.getParentFile(), file.getName() + ".tmp").toPath();
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(0, MAGIC);
+            long position = writeFully(out, header, 0);
+            for (Map.Entry<String, Long> entry : positions.entrySet()) {
+                long length = recordSize(entry.getKey(), entry.getValue());
+                long start = entry.getValue() + 4 + readInt(entry.getValue()) - length;
+                ByteBuffer record = ByteBuffer.allocate((int) length);
+                readFully(channel, record, start);
+                record.flip();
+                position += writeFully(out, record, position);
+            }
+            out.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(temporary, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        scan();
+    }
+
+    /**
+     * Gets the size of a record, including its key.
+     */
+    private long recordSize(String key, long textPosition) throws IOException {
+        return 8 + key.getBytes(StandardCharsets.UTF_8).length + Math.max(0, readInt(textPosition));
+    }
+
+    private int readInt(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        readFully(channel, buffer, position);
+        return buffer.getInt(0);
+    }
+
+    private static String readText(FileChannel channel, long position) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(channel, length, position);
+        ByteBuffer text = ByteBuffer.allocate(length.getInt(0));
+        readFully(channel, text, position + 4);
+        return new String(text.array(), StandardCharsets.UTF_8);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                throw new IOException("Unexpected end of the proposal text store");
+        }
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining())
+            written += channel.write(buffer, position + written);
+        return written;
+    }
+
+}
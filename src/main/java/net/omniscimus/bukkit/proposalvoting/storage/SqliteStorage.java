@@ -0,0 +1,460 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.Plugin;
+
+import net.omniscimus.bukkit.proposalvoting.exceptions.StorageException;
+import net.omniscimus.bukkit.proposalvoting.metrics.LatencyHistogram;
+import net.omniscimus.bukkit.proposalvoting.model.BallotSet;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalOption;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalRegistry;
+import net.omniscimus.bukkit.proposalvoting.model.RankedBallots;
+import net.omniscimus.bukkit.proposalvoting.model.VoterRegistry;
+
+/**
+ * Stores the plugin's data in an embedded SQLite database file. Changes are
+ * queued, and written by a background thread in a single transaction per flush
+ * interval, using batched prepared statements. The SQLite JDBC driver is
+ * shipped with the server. The texts of the proposals are kept in the
+ * {@link ProposalTextStore} instead of in the database.
+ */
+public class SqliteStorage implements Storage {
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS players (uuid TEXT PRIMARY KEY, opt_in INTEGER NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS playtime (week TEXT NOT NULL, uuid TEXT NOT NULL, playtime INTEGER NOT NULL, "
+                    + "PRIMARY KEY (week, uuid))",
+            "CREATE TABLE IF NOT EXISTS proposals (id INTEGER PRIMARY KEY, title TEXT, description TEXT, "
+                    + "enabled INTEGER NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS options (proposal_id INTEGER NOT NULL, option_id INTEGER NOT NULL, "
+                    + "description TEXT, votes INTEGER NOT NULL, PRIMARY KEY (proposal_id, option_id))",
+            "CREATE TABLE IF NOT EXISTS ballots (proposal_id INTEGER NOT NULL, uuid TEXT NOT NULL, "
+                    + "PRIMARY KEY (proposal_id, uuid))",
+            "CREATE TABLE IF NOT EXISTS ballot_bitmaps (proposal_id INTEGER PRIMARY KEY, bitmap BLOB NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS rankings (proposal_id INTEGER PRIMARY KEY, rankings BLOB NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS proposals_enabled ON proposals (enabled)",
+            "CREATE TABLE IF NOT EXISTS meta (key TEXT PRIMARY KEY, value INTEGER NOT NULL)" };
+
+    private static final String UPSERT_PLAYER = "INSERT OR REPLACE INTO players (uuid, opt_in) VALUES (?, ?)";
+    // The playtime table only holds playtime from before it was kept in the
+    // ledger; it is emptied once the playtime has been moved.
+    private static final String DELETE_LEGACY_PLAYTIME = "DELETE FROM playtime";
+    private static final String UPSERT_PROPOSAL = "INSERT OR REPLACE INTO proposals (id, enabled) VALUES (?, ?)";
+    private static final String UPSERT_OPTION = "INSERT OR REPLACE INTO options (proposal_id, option_id, votes) "
+            + "VALUES (?, ?, ?)";
+    // The text columns only hold texts from before they were kept in the text
+    // store; they are emptied once the texts have been moved.
+    private static final String CLEAR_PROPOSAL_TEXTS = "UPDATE proposals SET title = NULL, description = NULL";
+    private static final String CLEAR_OPTION_TEXTS = "UPDATE options SET description = NULL";
+    private static final String UPDATE_VOTES = "UPDATE options SET votes = ? WHERE proposal_id = ? AND option_id = ?";
+    private static final String UPSERT_BITMAP = "INSERT OR REPLACE INTO ballot_bitmaps (proposal_id, bitmap) VALUES (?, ?)";
+    private static final String DELETE_BITMAP = "DELETE FROM ballot_bitmaps WHERE proposal_id = ?";
+    private static final String UPSERT_RANKINGS = "INSERT OR REPLACE INTO rankings (proposal_id, rankings) VALUES (?, ?)";
+    private static final String DELETE_RANKINGS = "DELETE FROM rankings WHERE proposal_id = ?";
+    // The ballots table only holds ballots from before they were stored as
+    // bitmaps; it is emptied once they have been converted.
+    private static final String DELETE_BALLOTS = "DELETE FROM ballots WHERE proposal_id = ?";
+    private static final String DELETE_LEGACY_BALLOTS = "DELETE FROM ballots";
+    private static final String DELETE_OPTIONS = "DELETE FROM options WHERE proposal_id = ?";
+    private static final String DELETE_PROPOSAL = "DELETE FROM proposals WHERE id = ?";
+    // IDs may be reserved on several threads; the stored value never goes down.
+    private static final String RESERVE_PROPOSAL_ID = "INSERT OR REPLACE INTO meta (key, value) VALUES ('next_proposal_id', "
+            + "max(?, coalesce((SELECT value FROM meta WHERE key = 'next_proposal_id'), 1)))";
+
+    private final Plugin plugin;
+    private final File file;
+    private final long flushInterval;
+    private final LatencyHistogram flushTimes;
+
+    /**
+     * Guards the connection and the prepared statements.
+     */
+    private final Object lock = new Object();
+    private Connection connection;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    private final Queue<Write> pending = new ConcurrentLinkedQueue<>();
+    private List<Write> failed = new ArrayList<>();
+    /**
+     * The proposals whose ballots have changed since the last flush, by ID.
+     * Their bitmaps are serialized once per flush instead of once per vote.
+     */
+    private final Map<Integer, Proposal> changedBallots = new ConcurrentHashMap<>();
+    private ScheduledExecutorService writer;
+
+    /**
+     * Creates a new SqliteStorage instance.
+     *
+     * @param plugin
+     *            The plugin that owns the database.
+     * @param file
+     *            The database file.
+     * @param flushInterval
+     *            The time during which changes are collected before they are
+     *            written, in milliseconds; 0 if they should only be written
+     *            when a flush is requested.
+     * @param flushTimes
+     *            The histogram in which to record how long each write takes.
+     */
+    public SqliteStorage(Plugin plugin, File file, long flushInterval, LatencyHistogram flushTimes) {
+        this.plugin = plugin;
+        this.file = file;
+        this.flushInterval = flushInterval;
+        this.flushTimes = flushTimes;
+    }
+
+    @Override
+    public void open() throws StorageException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            file.getParentFile().mkdirs();
+            synchronized (lock) {
+                connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA journal_mode = WAL");
+                    for (String sql : SCHEMA)
+                        statement.execute(sql);
+                }
+                connection.setAutoCommit(false);
+                connection.commit();
+            }
+        } catch (ClassNotFoundException | SQLException e) {
+            throw new StorageException("Could not open " + file.getName(), e);
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, plugin.getName() + " database writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (flushInterval > 0) {
+            writer.scheduleWithFixedDelay(() -> {
+                flush();
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void load(ProposalRegistry proposals, VoterRegistry voters) throws StorageException {
+        loadProposals(proposals);
+        loadVoters(voters);
+    }
+
+    private void loadProposals(ProposalRegistry registry) throws StorageException {
+        synchronized (lock) {
+            try (Statement statement = connection.createStatement()) {
+                try (ResultSet rs = statement.executeQuery("SELECT value FROM meta WHERE key = 'next_proposal_id'")) {
+                    if (rs.next())
+                        registry.loadNextId(rs.getInt(1));
+                }
+                boolean texts = false;
+                try (ResultSet rs = statement.executeQuery("SELECT id, title, description, enabled FROM proposals")) {
+                    while (rs.next()) {
+                        registry.load(rs.getInt(1)).load(rs.getString(2), rs.getString(3), rs.getInt(4) != 0);
+                        texts |= rs.getString(2) != null || rs.getString(3) != null;
+                    }
+                }
+                if (texts)
+                    pending.add(new Write(CLEAR_PROPOSAL_TEXTS));
+                texts = false;
+                try (ResultSet rs = statement
+                        .executeQuery("SELECT proposal_id, option_id, description, votes FROM options")) {
+                    while (rs.next()) {
+                        Proposal proposal = registry.get(rs.getInt(1));
+                        if (proposal != null)
+                            proposal.loadOption(rs.getInt(2), rs.getString(3), rs.getInt(4));
+                        texts |= rs.getString(3) != null;
+                    }
+                }
+                if (texts)
+                    pending.add(new Write(CLEAR_OPTION_TEXTS));
+                try (ResultSet rs = statement.executeQuery("SELECT proposal_id, bitmap FROM ballot_bitmaps")) {
+                    while (rs.next()) {
+                        Proposal proposal = registry.get(rs.getInt(1));
+                        if (proposal != null)
+                            proposal.loadBallots(BallotSet.fromByteArray(rs.getBytes(2)));
+                    }
+                }
+                try (ResultSet rs = statement.executeQuery("SELECT proposal_id, rankings FROM rankings")) {
+                    while (rs.next()) {
+                        Proposal proposal = registry.get(rs.getInt(1));
+                        if (proposal != null)
+                            proposal.loadRankings(RankedBallots.fromByteArray(rs.getBytes(2)));
+                    }
+                }
+                boolean legacy = false;
+                try (ResultSet rs = statement.executeQuery("SELECT proposal_id, uuid FROM ballots")) {
+                    while (rs.next()) {
+                        legacy = true;
+                        Proposal proposal = registry.get(rs.getInt(1));
+                        if (proposal != null) {
+                            proposal.loadPlayerVoted(UUID.fromString(rs.getString(2)));
+                            changedBallots.put(proposal.getId(), proposal);
+                        }
+                    }
+                }
+                if (legacy)
+                    pending.add(new Write(DELETE_LEGACY_BALLOTS));
+            } catch (SQLException | IOException e) {
+                throw new StorageException("Could not load the proposals", e);
+            }
+        }
+    }
+
+    private void loadVoters(VoterRegistry registry) throws StorageException {
+        synchronized (lock) {
+            try (Statement statement = connection.createStatement();
+                    ResultSet rs = statement.executeQuery("SELECT uuid, opt_in FROM players")) {
+                while (rs.next()) {
+                    registry.load(UUID.fromString(rs.getString(1)), rs.getInt(2) != 0);
+                }
+            } catch (SQLException e) {
+                throw new StorageException("Could not load the players", e);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Map<UUID, Long>> getLegacyPlaytime() throws StorageException {
+        Map<String, Map<UUID, Long>> weeks = new HashMap<>();
+        synchronized (lock) {
+            try (Statement statement = connection.createStatement();
+                    ResultSet rs = statement.executeQuery("SELECT week, uuid, playtime FROM playtime")) {
+                while (rs.next())
+                    weeks.computeIfAbsent(rs.getString(1), week -> new HashMap<>())
+                            .put(UUID.fromString(rs.getString(2)), rs.getLong(3));
+            } catch (SQLException | IllegalArgumentException e) {
+                throw new StorageException("Could not read the playtime", e);
+            }
+        }
+        return weeks;
+    }
+
+    @Override
+    public void removeLegacyPlaytime() {
+        pending.add(new Write(DELETE_LEGACY_PLAYTIME));
+    }
+
+    @Override
+    public void proposalChanged(Proposal proposal) {
+        pending.add(new Write(UPSERT_PROPOSAL, proposal.getId(), proposal.isEnabled() ? 1 : 0));
+    }
+
+    @Override
+    public void optionChanged(Proposal proposal, ProposalOption option) {
+        pending.add(new Write(UPSERT_OPTION, proposal.getId(), option.getId(), option.getVotes()));
+    }
+
+    @Override
+    public void proposalIdReserved(int proposalId) {
+        pending.add(new Write(RESERVE_PROPOSAL_ID, proposalId + 1));
+    }
+
+    @Override
+    public void proposalRemoved(int proposalId) {
+        changedBallots.remove(proposalId);
+        pending.add(new Write(DELETE_BITMAP, proposalId));
+        pending.add(new Write(DELETE_RANKINGS, proposalId));
+        pending.add(new Write(DELETE_BALLOTS, proposalId));
+        pending.add(new Write(DELETE_OPTIONS, proposalId));
+        pending.add(new Write(DELETE_PROPOSAL, proposalId));
+    }
+
+    @Override
+    public void voteCast(Proposal proposal, ProposalOption option, int[] ranking, UUID playerId) {
+        // Votes are counted on several threads; reading the count and queueing
+        // it together keeps a lower count from being written after a higher one.
+        synchronized (option) {
+            pending.add(new Write(UPDATE_VOTES, option.getVotes(), proposal.getId(), option.getId()));
+        }
+        changedBallots.put(proposal.getId(), proposal);
+    }
+
+    @Override
+    public void ballotsChanged(Proposal proposal) {
+        changedBallots.put(proposal.getId(), proposal);
+    }
+
+    @Override
+    public void optInChanged(UUID playerId, boolean optIn) {
+        pending.add(new Write(UPSERT_PLAYER, playerId.toString(), optIn ? 1 : 0));
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                write();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, writer);
+    }
+
+    @Override
+    public void flush() {
+        try {
+            write();
+        } catch (SQLException e) {
+            // Already logged.
+        }
+    }
+
+    /**
+     * Takes all changes from the queue, followed by the current ballots and
+     * rankings of the proposals on which has been voted. Must be called while
+     * holding the lock.
+     *
+     * @return a new List containing the queued changes, in order.
+     */
+    private List<Write> drain() {
+        List<Write> writes = new ArrayList<>();
+        Write write;
+        while ((write = pending.poll()) != null)
+            writes.add(write);
+        for (Proposal proposal : changedBallots.values()) {
+            changedBallots.remove(proposal.getId());
+            writes.add(new Write(UPSERT_BITMAP, proposal.getId(), proposal.getBallots().toByteArray()));
+            writes.add(new Write(UPSERT_RANKINGS, proposal.getId(), proposal.getRankings().toByteArray()));
+        }
+        return writes;
+    }
+
+    /**
+     * Writes the queued changes in one transaction, together with the changes
+     * that could not be written last time. Consecutive changes of the same
+     * kind are sent to the database as a single batch. The queue is drained
+     * while holding the lock, so that changes are committed in the order in
+     * which they were queued, whichever thread flushes; the votes are written
+     * as absolute values, so an older count must not be committed after a
+     * newer one.
+     *
+     * @throws SQLException
+     *             If the changes could not be written. They will be retried
+     *             at the next write.
+     */
+    private void write() throws SQLException {
+        synchronized (lock) {
+            List<Write> writes = drain();
+            if (!failed.isEmpty()) {
+                failed.addAll(writes);
+                writes = failed;
+                failed = new ArrayList<>();
+            }
+            if (writes.isEmpty())
+                return;
+            long start = System.nanoTime();
+            try {
+                PreparedStatement batch = null;
+                for (Write w : writes) {
+                    PreparedStatement statement = prepare(w.sql);
+                    if (statement != batch) {
+                        if (batch != null)
+                            batch.executeBatch();
+                        batch = statement;
+                    }
+                    w.bind(statement);
+                    statement.addBatch();
+                }
+                batch.executeBatch();
+                connection.commit();
+                flushTimes.recordSince(start);
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not write to " + file.getName(), e);
+                try {
+                    connection.rollback();
+                } catch (SQLException e1) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not roll back " + file.getName(), e1);
+                }
+                failed = writes;
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        synchronized (lock) {
+            try {
+                for (PreparedStatement statement : statements.values())
+                    statement.close();
+                statements.clear();
+                if (connection != null)
+                    connection.close();
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not close " + file.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Gets a prepared statement, reusing it if it was prepared before. Must be
+     * called while holding the lock.
+     *
+     * @param sql
+     *            The SQL of the statement.
+     * @return the prepared statement.
+     * @throws SQLException
+     *             If the statement could not be prepared.
+     */
+    private PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * A queued change: a statement and the values for its parameters.
+     */
+    private static class Write {
+
+        private final String sql;
+        private final Object[] params;
+
+        Write(String sql, Object... params) {
+            this.sql = sql;
+            this.params = params;
+        }
+
+        void bind(PreparedStatement statement) throws SQLException {
+            for (int i = 0; i < params.length; i++)
+                statement.setObject(i + 1, params[i]);
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import net.omniscimus.bukkit.proposalvoting.exceptions.StorageException;
+import net.omniscimus.bukkit.proposalvoting.model.ModelListener;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalRegistry;
+import net.omniscimus.bukkit.proposalvoting.model.VoterRegistry;
+
+/**
+ * A backend in which the plugin's players, proposals, options and ballots are
+ * stored. The playtime is kept in the {@link PlaytimeLedger}; a backend only
+ * holds the playtime from before, until it has been migrated. As a {@link ModelListener}, a Storage receives every
+ * change to the in-memory model; it may write these changes later, but must
+ * have written all of them once {@link #flush()} returns. Changes may be
+ * received from any thread.
+ */
+public interface Storage extends ModelListener {
+
+    /**
+     * Prepares this backend for use, e.g. by creating its files or tables.
+     * 
+     * @throws StorageException
+     *             If the backend could not be opened.
+     */
+    void open() throws StorageException;
+
+    /**
+     * Reads all stored proposals, including their options and ballots, and
+     * all stored player records.
+     * 
+     * @param proposals
+     *            The registry to add the proposals to.
+     * @param voters
+     *            The registry to add the player records to.
+     * @throws StorageException
+     *             If the data could not be read.
+     */
+    void load(ProposalRegistry proposals, VoterRegistry voters) throws StorageException;
+
+    /**
+     * Reads all playtime that is kept in this backend, from before it was
+     * kept in the {@link PlaytimeLedger}.
+     * 
+     * @return a new Map from every year and week, formatted as in %y_%w, to
+     *         the players' amounts of played time in it, in milliseconds.
+     * @throws StorageException
+     *             If the playtime could not be read.
+     */
+    Map<String, Map<UUID, Long>> getLegacyPlaytime() throws StorageException;
+
+    /**
+     * Removes all playtime from this backend, once it has been moved to the
+     * {@link PlaytimeLedger}. The removal is written by the next flush.
+     */
+    void removeLegacyPlaytime();
+
+    /**
+     * Writes all changes that have been made so far in the background. This
+     * must be called on the main server thread.
+     * 
+     * @return a future that completes when the changes have been written, or
+     *         completes exceptionally if they could not be written.
+     */
+    CompletableFuture<Void> flushAsync();
+
+    /**
+     * Writes all pending changes synchronously.
+     */
+    void flush();
+
+    /**
+     * Writes all pending changes and releases this backend's resources.
+     */
+    void close();
+
+}
@@ -0,0 +1,411 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of votes and opt-in changes. Records
+ * are buffered in memory and written to disk together, with one fsync per
+ * group. The journal is split into numbered segment files; once the data in a
+ * segment has been written to a snapshot, the segment can be deleted.
+ */
+public class VoteJournal {
+
+    /**
+     * A vote on a single option; only written before rankings were journaled.
+     */
+    private static final byte VOTE = 1;
+    private static final byte OPT_IN = 2;
+    /**
+     * A player's playtime in a week; only written before the playtime was kept
+     * in the {@link PlaytimeLedger}.
+     */
+    private static final byte PLAYTIME = 3;
+    private static final byte RANKED_VOTE = 4;
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    /**
+     * Receives the records of the journal when it is replayed.
+     */
+    public interface Visitor {
+
+        /**
+         * Called for a vote record.
+         *
+         * @param proposalId
+         *            The ID of the proposal.
+         * @param ranking
+         *            The IDs of the options, in order of preference.
+         * @param playerId
+         *            The Unique User ID of the player, as generated by
+         *            Minecraft.
+         */
+        void vote(int proposalId, int[] ranking, UUID playerId);
+
+        /**
+         * Called for an opt-in record.
+         *
+         * @param playerId
+         *            The Unique User ID of the player, as generated by
+         *            Minecraft.
+         * @param optIn
+         *            Whether the player opted in.
+         */
+        void optIn(UUID playerId, boolean optIn);
+
+        /**
+         * Called for a playtime record. These are only found in journals that
+         * were written before the playtime was kept in the
+         * {@link PlaytimeLedger}.
+         *
+         * @param playerId
+         *            The Unique User ID of the player, as generated by
+         *            Minecraft.
+         * @param year_week
+         *            The year and week, formatted as in %y_%w.
+         * @param playtime
+         *            The player's total playtime in that week, in milliseconds.
+         */
+        void playtime(UUID playerId, String year_week, long playtime);
+
+    }
+
+    private final File directory;
+    private final Logger logger;
+
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+
+    /**
+     * Guards writing to the active segment, so that records can be appended
+     * while a group of earlier records is being forced to the disk.
+     */
+    private final Object ioLock = new Object();
+    private FileChannel active;
+    private long activeSegment;
+
+    /**
+     * Creates a new VoteJournal instance.
+     *
+     * @param directory
+     *            The directory in which to keep the segment files.
+     * @param logger
+     *            The logger to report problems to.
+     */
+    public VoteJournal(File directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    /**
+     * Opens a new segment for appending. Existing segments are kept, so that
+     * they can be replayed.
+     *
+     * @throws IOException
+     *             If the segment could not be created.
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory.toPath());
+        List<Long> segments = getSegments();
+        activeSegment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+        active = openSegment(activeSegment);
+    }
+
+    /**
+     * Appends a vote record.
+     *
+     * @param proposalId
+     *            The ID of the proposal.
+     * @param ranking
+     *            The IDs of the options, in order of preference.
+     * @param playerId
+     *            The Unique User ID of the player, as generated by Minecraft.
+     */
+    public synchronized void appendVote(int proposalId, int[] ranking, UUID playerId) {
+        try {
+            recordOut.writeByte(RANKED_VOTE);
+            recordOut.writeInt(proposalId);
+            writeUUID(playerId);
+            recordOut.writeShort(ranking.length);
+            for (int optionId : ranking)
+                recordOut.writeInt(optionId);
+            endRecord();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Appends an opt-in record.
+     *
+     * @param playerId
+     *            The Unique User ID of the player, as generated by Minecraft.
+     * @param optIn
+     *            Whether the player opted in.
+     */
+    public synchronized void appendOptIn(UUID playerId, boolean optIn) {
+        try {
+            recordOut.writeByte(OPT_IN);
+            writeUUID(playerId);
+            recordOut.writeBoolean(optIn);
+            endRecord();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeUUID(UUID id) throws IOException {
+        recordOut.writeLong(id.getMostSignificantBits());
+        recordOut.writeLong(id.getLeastSignificantBits());
+    }
+
+    /**
+     * Moves the record that has just been written to the buffer, preceded by
+     * its length and followed by its checksum.
+     */
+    private void endRecord() {
+        byte[] bytes = record.toByteArray();
+        record.reset();
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        writeShort(buffer, bytes.length);
+        buffer.write(bytes, 0, bytes.length);
+        writeInt(buffer, (int) crc.getValue());
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 8);
+        out.write(v);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+
+    /**
+     * Writes all buffered records to the active segment, and forces them to
+     * the disk. Records can still be appended while this is in progress.
+     *
+     * @throws IOException
+     *             If the records could not be written.
+     */
+    public void sync() throws IOException {
+        synchronized (ioLock) {
+            ByteArrayOutputStream pending;
+            synchronized (this) {
+                if (buffer.size() == 0 || active == null)
+                    return;
+                pending = buffer;
+                buffer = new ByteArrayOutputStream(4096);
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(pending.toByteArray());
+            while (bytes.hasRemaining())
+                active.write(bytes);
+            active.force(false);
+        }
+    }
+
+    /**
+     * Closes the active segment and starts a new one. Records that are
+     * appended after this call end up in the new segment.
+     *
+     * @return the number of the segment that was closed. Once all changes that
+     *         were made before this call have been stored elsewhere, the
+     *         segments up to and including this number may be deleted.
+     * @throws IOException
+     *             If the segments could not be switched.
+     */
+    public long rotate() throws IOException {
+        synchronized (ioLock) {
+            FileChannel next = openSegment(activeSegment + 1);
+            synchronized (this) {
+                // Whatever is still buffered belongs to the segment that is
+                // being closed.
+                ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+                buffer.reset();
+                while (bytes.hasRemaining())
+                    active.write(bytes);
+                active.force(false);
+                active.close();
+                active = next;
+                return activeSegment++;
+            }
+        }
+    }
+
+    /**
+     * Deletes all segments up to and including a certain one.
+     *
+     * @param segment
+     *            The number of the last segment to delete.
+     */
+    public void deleteUpTo(long segment) {
+        for (long number : getSegments()) {
+            if (number > segment)
+                break;
+            File file = segmentFile(number);
+            if (!file.delete())
+                logger.warning("Could not delete journal segment " + file.getName());
+        }
+    }
+
+    /**
+     * Reads all records in all segments except the active one, in the order
+     * in which they were appended. A record that was not written completely
+     * ends the replay of its segment.
+     *
+     * @param visitor
+     *            The Visitor to pass the records to.
+     * @return the number of the last segment that was replayed; 0 if there
+     *         was none.
+     */
+    public long replay(Visitor visitor) {
+        long last = 0;
+        for (long number : getSegments()) {
+            if (number >= activeSegment)
+                break;
+            File file = segmentFile(number);
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+                replaySegment(new DataInputStream(in), visitor);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Could not read journal segment " + file.getName(), e);
+            }
+            last = number;
+        }
+        return last;
+    }
+
+    private void replaySegment(DataInputStream in, Visitor visitor) throws IOException {
+        byte[] bytes = new byte[64];
+        CRC32 check = new CRC32();
+        while (true) {
+            int length;
+            try {
+                length = in.readUnsignedShort();
+            } catch (EOFException e) {
+                return;
+            }
+            if (length > bytes.length)
+                bytes = new byte[length];
+            int checksum;
+            try {
+                in.readFully(bytes, 0, length);
+                checksum = in.readInt();
+            } catch (EOFException e) {
+                logger.warning("Incomplete journal record at the end of a segment; it is ignored.");
+                return;
+            }
+            check.reset();
+            check.update(bytes, 0, length);
+            if ((int) check.getValue() != checksum) {
+                logger.warning("Corrupt journal record; skipping the rest of the segment.");
+                return;
+            }
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+            switch (record.readByte()) {
+            case VOTE:
+                visitor.vote(record.readInt(), new int[] { record.readInt() }, readUUID(record));
+                break;
+            case RANKED_VOTE:
+                replayRankedVote(record, visitor);
+                break;
+            case OPT_IN:
+                visitor.optIn(readUUID(record), record.readBoolean());
+                break;
+            case PLAYTIME:
+                visitor.playtime(readUUID(record), record.readUTF(), record.readLong());
+                break;
+            default:
+                logger.warning("Unknown journal record; it is ignored.");
+            }
+        }
+    }
+
+    private static void replayRankedVote(DataInputStream record, Visitor visitor) throws IOException {
+        int proposalId = record.readInt();
+        UUID playerId = readUUID(record);
+        int[] ranking = new int[record.readUnsignedShort()];
+        for (int i = 0; i < ranking.length; i++)
+            ranking[i] = record.readInt();
+        visitor.vote(proposalId, ranking, playerId);
+    }
+
+    private static UUID readUUID(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    /**
+     * Writes all buffered records and closes the active segment.
+     *
+     * @throws IOException
+     *             If the records could not be written.
+     */
+    public void close() throws IOException {
+        synchronized (ioLock) {
+            sync();
+            synchronized (this) {
+                if (active != null)
+                    active.close();
+                active = null;
+            }
+        }
+    }
+
+    /**
+     * Gets the numbers of all segment files in the directory.
+     *
+     * @return the segment numbers, in ascending order.
+     */
+    private List<Long> getSegments() {
+        List<Long> segments = new ArrayList<>();
+        String[] names = directory.list();
+        if (names == null)
+            return segments;
+        for (String name : names) {
+            if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX))
+                continue;
+            try {
+                segments.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // Not a segment.
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(long number) {
+        return new File(directory, PREFIX + number + SUFFIX);
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentFile(number).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+}
@@ -0,0 +1,195 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import net.omniscimus.bukkit.proposalvoting.metrics.LatencyHistogram;
+
+/**
+ * Saves a file in the background. Changes are only marked as dirty; all
+ * changes that are made within one flush interval are merged into a single
+ * write. Both the snapshot of the data and the write are performed by a
+ * background thread, so that serializing a large document never stalls the
+ * main server thread.
+ */
+public class WriteBehindSaver {
+
+    private final Plugin plugin;
+    private final File file;
+    private final Supplier<String> snapshot;
+    private final LatencyHistogram flushTimes;
+
+    private volatile Runnable beforeSnapshot = () -> {
+    };
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private final ExecutorService writer;
+    private BukkitTask flushTask;
+
+    /**
+     * Creates a new WriteBehindSaver instance.
+     *
+     * @param plugin
+     *            The plugin that owns the file.
+     * @param file
+     *            The file to save the data to.
+     * @param snapshot
+     *            Produces the contents of the file. This is always called on
+     *            the writer thread, so it must guard the data against changes
+     *            that are made at the same time.
+     * @param flushTimes
+     *            The histogram in which to record how long each save takes,
+     *            from the snapshot until the file has been written.
+     */
+    public WriteBehindSaver(Plugin plugin, File file, Supplier<String> snapshot, LatencyHistogram flushTimes) {
+        this.plugin = plugin;
+        this.file = file;
+        this.snapshot = snapshot;
+        this.flushTimes = flushTimes;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, plugin.getName() + " file writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts checking for changes periodically.
+     *
+     * @param interval
+     *            The time between two checks, in milliseconds.
+     */
+    public void start(long interval) {
+        long ticks = Math.max(1L, interval / 50L);
+        flushTask = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> {
+            flushAsync();
+        }, ticks, ticks);
+    }
+
+    /**
+     * Sets a task that runs right before every snapshot, on the writer
+     * thread. It may bring data up to date that is too expensive to update on
+     * every change.
+     *
+     * @param task
+     *            The task to run.
+     */
+    public void beforeSnapshot(Runnable task) {
+        beforeSnapshot = task;
+    }
+
+    /**
+     * Marks the file as changed, so that it will be saved at the end of the
+     * current flush interval.
+     */
+    public void markDirty() {
+        dirty.set(true);
+    }
+
+    /**
+     * Takes a snapshot of the data in the background if it has changed, and
+     * writes it to the file. Snapshots are taken in the order in which they
+     * are requested, so the future also waits for earlier writes.
+     * 
+     * @return a future that completes when the snapshot has been written, or
+     *         completes exceptionally if it could not be written.
+     */
+    public CompletableFuture<Void> flushAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        writer.execute(() -> {
+            if (!dirty.getAndSet(false)) {
+                future.complete(null);
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                beforeSnapshot.run();
+                String data = snapshot.get();
+                writeAtomically(file.toPath(), data.getBytes(StandardCharsets.UTF_8));
+                flushTimes.recordSince(start);
+                future.complete(null);
+            } catch (IOException | RuntimeException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not save " + file.getName(), e);
+                dirty.set(true);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Writes all changes to the file, and waits until they have been written.
+     */
+    public void flush() {
+        try {
+            flushAsync().join();
+        } catch (CompletionException e) {
+            // Already logged.
+        }
+    }
+
+    /**
+     * Stops the background saving, and writes any remaining changes
+     * synchronously.
+     */
+    public void close() {
+        if (flushTask != null)
+            flushTask.cancel();
+        flush();
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS))
+                plugin.getLogger().warning("Timed out while waiting for " + file.getName() + " to be saved.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Replaces the contents of a file in a single step. The data is written to
+     * a temporary file first, which then replaces the actual file, so that the
+     * file is never left half written.
+     *
+     * @param target
+     *            The file to write.
+     * @param data
+     *            The new contents of the file.
+     * @throws IOException
+     *             If the file could not be written.
+     */
+    static void writeAtomically(Path target, byte[] data) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
@@ -0,0 +1,276 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import net.omniscimus.bukkit.proposalvoting.model.BallotSet;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalOption;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalRegistry;
+import net.omniscimus.bukkit.proposalvoting.model.RankedBallots;
+import net.omniscimus.bukkit.proposalvoting.model.VoterRegistry;
+
+/**
+ * Stores the plugin's data in the YAML tree of 'config.yml'. Changes are
+ * written into the tree immediately, and the file is saved in the background
+ * by a {@link WriteBehindSaver}. The tree is guarded by its own monitor, which
+ * must also be held while taking a snapshot of it. The texts of the proposals
+ * are kept in the {@link ProposalTextStore} instead of in the tree.
+ */
+public class YamlStorage implements Storage {
+
+    private static final String NEXT_PROPOSAL_ID = "next-proposal-id";
+
+    private final FileConfiguration config;
+    private final WriteBehindSaver saver;
+    /**
+     * The proposals whose ballots have changed since the last save, by ID.
+     */
+    private final Map<Integer, Proposal> changedBallots = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new YamlStorage instance.
+     *
+     * @param config
+     *            The FileConfiguration to store the data in.
+     * @param saver
+     *            The WriteBehindSaver that saves {@code config}.
+     */
+    public YamlStorage(FileConfiguration config, WriteBehindSaver saver) {
+        this.config = config;
+        this.saver = saver;
+        saver.beforeSnapshot(this::writeBallots);
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void load(ProposalRegistry proposals, VoterRegistry voters) {
+        synchronized (config) {
+            loadProposals(proposals);
+            loadVoters(voters);
+        }
+    }
+
+    private void loadProposals(ProposalRegistry registry) {
+        registry.loadNextId(config.getInt(NEXT_PROPOSAL_ID, 1));
+        ConfigurationSection proposals = config.getConfigurationSection("proposals");
+        if (proposals == null)
+            return;
+        for (String idStr : proposals.getKeys(false)) {
+            ConfigurationSection section = proposals.getConfigurationSection(idStr);
+            if (section == null)
+                continue;
+            Proposal proposal = registry.load(Integer.parseInt(idStr));
+            // Texts used to be kept in the tree. They are moved into the text
+            // store, and removed from the tree at the next save.
+            proposal.load(section.getString("title"), section.getString("description"),
+                    section.getBoolean("enabled", false));
+            if (section.contains("title") || section.contains("description")) {
+                section.set("title", null);
+                section.set("description", null);
+                saver.markDirty();
+            }
+            ConfigurationSection options = section.getConfigurationSection("options");
+            if (options != null) {
+                for (String optionIdStr : options.getKeys(false)) {
+                    proposal.loadOption(Integer.parseInt(optionIdStr),
+                            options.getString(optionIdStr + ".description"), options.getInt(optionIdStr + ".votes"));
+                    if (options.contains(optionIdStr + ".description")) {
+                        options.set(optionIdStr + ".description", null);
+                        saver.markDirty();
+                    }
+                }
+            }
+            String ballots = section.getString("ballots");
+            if (ballots != null) {
+                try {
+                    proposal.loadBallots(BallotSet.fromByteArray(Base64.getDecoder().decode(ballots)));
+                } catch (IOException | IllegalArgumentException e) {
+                    Bukkit.getLogger().log(Level.SEVERE, "Could not read the ballots of proposal " + idStr, e);
+                }
+            }
+            String rankings = section.getString("rankings");
+            if (rankings != null) {
+                try {
+                    proposal.loadRankings(RankedBallots.fromByteArray(Base64.getDecoder().decode(rankings)));
+                } catch (IOException | IllegalArgumentException e) {
+                    Bukkit.getLogger().log(Level.SEVERE, "Could not read the rankings of proposal " + idStr, e);
+                }
+            }
+            // Before the ballots were stored as a bitmap, every voter had
+            // their own entry. These are converted at the next save.
+            ConfigurationSection playersVoted = section.getConfigurationSection("players-voted");
+            if (playersVoted != null) {
+                for (String playerId : playersVoted.getKeys(false)) {
+                    if (playersVoted.getBoolean(playerId))
+                        proposal.loadPlayerVoted(UUID.fromString(playerId));
+                }
+                changedBallots.put(proposal.getId(), proposal);
+                saver.markDirty();
+            }
+        }
+    }
+
+    private void loadVoters(VoterRegistry registry) {
+        ConfigurationSection players = config.getConfigurationSection("player");
+        if (players == null)
+            return;
+        for (String playerId : players.getKeys(false)) {
+            registry.load(UUID.fromString(playerId), players.getBoolean(playerId + ".opt-in", false));
+        }
+    }
+
+    @Override
+    public Map<String, Map<UUID, Long>> getLegacyPlaytime() {
+        Map<String, Map<UUID, Long>> weeks = new HashMap<>();
+        synchronized (config) {
+            ConfigurationSection playtime = config.getConfigurationSection("playtime");
+            if (playtime == null)
+                return weeks;
+            for (String week : playtime.getKeys(false)) {
+                ConfigurationSection players = playtime.getConfigurationSection(week);
+                if (players == null)
+                    continue;
+                Map<UUID, Long> values = new HashMap<>();
+                for (String playerId : players.getKeys(false)) {
+                    try {
+                        values.put(UUID.fromString(playerId), players.getLong(playerId));
+                    } catch (IllegalArgumentException e) {
+                        Bukkit.getLogger().warning("Skipping the playtime of invalid player ID " + playerId);
+                    }
+                }
+                weeks.put(week, values);
+            }
+        }
+        return weeks;
+    }
+
+    @Override
+    public void removeLegacyPlaytime() {
+        synchronized (config) {
+            if (config.contains("playtime")) {
+                config.set("playtime", null);
+                saver.markDirty();
+            }
+        }
+    }
+
+    @Override
+    public void proposalChanged(Proposal proposal) {
+        synchronized (config) {
+            String path = "proposals." + proposal.getId();
+            config.set(path + ".enabled", proposal.isEnabled());
+            saver.markDirty();
+        }
+    }
+
+    @Override
+    public void optionChanged(Proposal proposal, ProposalOption option) {
+        synchronized (config) {
+            String path = "proposals." + proposal.getId() + ".options." + option.getId();
+            config.set(path + ".votes", option.getVotes());
+            saver.markDirty();
+        }
+    }
+
+    @Override
+    public void proposalRemoved(int proposalId) {
+        changedBallots.remove(proposalId);
+        synchronized (config) {
+            config.set("proposals." + proposalId, null);
+            saver.markDirty();
+        }
+    }
+
+    @Override
+    public void proposalIdReserved(int proposalId) {
+        synchronized (config) {
+            // IDs may be reserved on several threads; the stored value never
+            // goes down.
+            if (config.getInt(NEXT_PROPOSAL_ID, 1) <= proposalId) {
+                config.set(NEXT_PROPOSAL_ID, proposalId + 1);
+                saver.markDirty();
+            }
+        }
+    }
+
+    @Override
+    public void voteCast(Proposal proposal, ProposalOption option, int[] ranking, UUID playerId) {
+        synchronized (config) {
+            String path = "proposals." + proposal.getId();
+            config.set(path + ".options." + option.getId() + ".votes", option.getVotes());
+            changedBallots.put(proposal.getId(), proposal);
+            saver.markDirty();
+        }
+    }
+
+    @Override
+    public void ballotsChanged(Proposal proposal) {
+        changedBallots.put(proposal.getId(), proposal);
+        saver.markDirty();
+    }
+
+    /**
+     * Writes the ballots and rankings of the proposals on which has been voted
+     * since the last save into the tree. A proposal's ballots are written as a
+     * single serialized {@link BallotSet}, instead of one entry per voter, and
+     * its rankings as serialized {@link RankedBallots}. This runs on the
+     * saver's writer thread, right before the tree is serialized.
+     */
+    private void writeBallots() {
+        for (Proposal proposal : changedBallots.values()) {
+            changedBallots.remove(proposal.getId());
+            String ballots = Base64.getEncoder().encodeToString(proposal.getBallots().toByteArray());
+            String rankings = Base64.getEncoder().encodeToString(proposal.getRankings().toByteArray());
+            synchronized (config) {
+                String path = "proposals." + proposal.getId();
+                if (!config.isConfigurationSection(path))
+                    continue; // Removed in the meantime.
+                config.set(path + ".ballots", ballots);
+                config.set(path + ".rankings", rankings);
+                config.set(path + ".players-voted", null);
+            }
+        }
+    }
+
+    @Override
+    public void optInChanged(UUID playerId, boolean optIn) {
+        synchronized (config) {
+            config.set("player." + playerId + ".opt-in", optIn);
+            saver.markDirty();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        return saver.flushAsync();
+    }
+
+    @Override
+    public void flush() {
+        saver.flush();
+    }
+
+    /**
+     * Writes all pending changes. The file itself stays in use for the
+     * plugin's settings; it is closed by {@code Configuration}.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+}
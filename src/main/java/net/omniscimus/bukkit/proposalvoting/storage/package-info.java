@@ -0,0 +1,4 @@
+/**
+ * Contains the classes that persist the plugin's data to disk.
+ */
+package net.omniscimus.bukkit.proposalvoting.storage;
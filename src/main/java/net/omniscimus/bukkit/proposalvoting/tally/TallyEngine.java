@@ -0,0 +1,328 @@
+package net.omniscimus.bukkit.proposalvoting.tally;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalOption;
+import net.omniscimus.bukkit.proposalvoting.model.RankedBallots;
+
+/**
+ * Determines the results of proposals from their rankings. Large sets of
+ * rankings are counted on several threads at once, by splitting them with
+ * fork/join.
+ * <p>
+ * The votes of every round are kept for the proposals that have been tallied
+ * recently. When a proposal is tallied again, only the rankings that have been
+ * cast since are counted and added to the rounds. The rounds are then decided
+ * again; only from the first round that ends differently, e.g. because
+ * another option is eliminated, are all rankings counted anew.
+ * <p>
+ * Votes that were cast before rankings were stored have no ranking; they
+ * count as rankings of just the option that was voted on.
+ */
+public class TallyEngine {
+
+    /**
+     * Up to this many rankings are counted on a single thread.
+     */
+    private static final int THRESHOLD = 4096;
+    /**
+     * The number of tallies whose rounds are kept.
+     */
+    private static final int CACHE_SIZE = 64;
+
+    private final ForkJoinPool pool;
+    private final Map<String, Progress> cache = new LinkedHashMap<String, Progress>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Progress> eldest) {
+            return size() > CACHE_SIZE;
+        }
+
+    };
+
+    /**
+     * Creates a new TallyEngine instance, which counts in the common fork/join
+     * pool.
+     */
+    public TallyEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new TallyEngine instance.
+     * 
+     * @param pool
+     *            The pool in which to count.
+     */
+    public TallyEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Determines the result of a proposal. This may be called on any thread.
+     * 
+     * @param proposal
+     *            The proposal.
+     * @param method
+     *            The method by which to determine the result.
+     * @return the result.
+     */
+    public TallyResult tally(Proposal proposal, TallyMethod method) {
+        int[] optionIds = proposal.getOptionIds();
+        // The votes are read before the rankings, so that every ranked vote
+        // that is read also has its ranking read.
+        long[] votes = new long[optionIds.length];
+        for (int index = 0; index < optionIds.length; index++) {
+            ProposalOption option = proposal.getOption(optionIds[index]);
+            votes[index] = option == null ? 0L : option.getVotes();
+        }
+        RankedBallots.Snapshot rankings = proposal.getRankings().snapshot();
+        Progress progress;
+        synchronized (cache) {
+            String key = proposal.getId() + ":" + method.getName();
+            progress = cache.get(key);
+            if (progress == null || !progress.canContinue(proposal, optionIds, rankings)) {
+                progress = new Progress(proposal, method, optionIds, rankings.getGeneration());
+                cache.put(key, progress);
+            }
+        }
+        synchronized (progress) {
+            if (!progress.canContinue(proposal, optionIds, rankings))
+                return new Progress(proposal, method, optionIds, rankings.getGeneration()).tally(rankings, votes);
+            return progress.tally(rankings, votes);
+        }
+    }
+
+    /**
+     * Forgets the rounds of all tallies.
+     */
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private long[] count(RankedBallots.Snapshot rankings, int from, int to, int[] optionIds, boolean[] eliminated,
+            boolean approval) {
+        CountTask task = new CountTask(rankings, from, to, optionIds, eliminated, approval);
+        return to - from <= THRESHOLD ? task.compute() : pool.invoke(task);
+    }
+
+    private static void add(long[] target, long[] votes) {
+        for (int index = 0; index < target.length; index++)
+            target[index] += votes[index];
+    }
+
+    /**
+     * The rounds of a tally, as far as they have been counted.
+     */
+    private final class Progress {
+
+        private final Proposal proposal;
+        private final TallyMethod method;
+        private final int[] optionIds;
+        private final int generation;
+        /**
+         * The number of rankings that have been counted.
+         */
+        private int counted;
+        /**
+         * The first preferences of the rankings that have been counted, which
+         * tell how many votes on each option have no ranking.
+         */
+        private final long[] firstPreferences;
+        private final List<RoundCount> rounds = new ArrayList<>();
+
+        Progress(Proposal proposal, TallyMethod method, int[] optionIds, int generation) {
+            this.proposal = proposal;
+            this.method = method;
+            this.optionIds = optionIds;
+            this.generation = generation;
+            this.firstPreferences = new long[optionIds.length];
+        }
+
+        boolean canContinue(Proposal proposal, int[] optionIds, RankedBallots.Snapshot rankings) {
+            return this.proposal == proposal && Arrays.equals(this.optionIds, optionIds)
+                    && generation == rankings.getGeneration() && counted <= rankings.size();
+        }
+
+        TallyResult tally(RankedBallots.Snapshot rankings, long[] votes) {
+            boolean approval = method == TallyMethod.APPROVAL;
+            int size = rankings.size();
+            if (counted < size) {
+                boolean[] none = new boolean[optionIds.length];
+                add(firstPreferences, count(rankings, counted, size, optionIds, none, false));
+                for (RoundCount round : rounds)
+                    add(round.votes, count(rankings, counted, size, optionIds, round.eliminated, approval));
+                counted = size;
+            }
+            long[] unranked = new long[optionIds.length];
+            long unrankedTotal = 0;
+            for (int index = 0; index < optionIds.length; index++) {
+                unranked[index] = Math.max(0L, votes[index] - firstPreferences[index]);
+                unrankedTotal += unranked[index];
+            }
+
+            List<TallyResult.Round> results = new ArrayList<>();
+            boolean[] eliminated = new boolean[optionIds.length];
+            Integer winner = null;
+            for (int r = 0;; r++) {
+                RoundCount round = r < rounds.size() ? rounds.get(r) : null;
+                if (round == null || !Arrays.equals(round.eliminated, eliminated)) {
+                    while (rounds.size() > r)
+                        rounds.remove(rounds.size() - 1);
+                    round = new RoundCount(eliminated.clone(),
+                            count(rankings, 0, size, optionIds, eliminated, approval));
+                    rounds.add(round);
+                }
+
+                long[] totals = new long[optionIds.length];
+                boolean[] inRace = new boolean[optionIds.length];
+                long counting = 0;
+                int remaining = 0;
+                int leader = -1;
+                boolean tied = false;
+                for (int index = 0; index < optionIds.length; index++) {
+                    if (eliminated[index])
+                        continue;
+                    inRace[index] = true;
+                    totals[index] = round.votes[index] + unranked[index];
+                    counting += totals[index];
+                    remaining++;
+                    if (leader < 0 || totals[index] > totals[leader]) {
+                        leader = index;
+                        tied = false;
+                    } else if (totals[index] == totals[leader]) {
+                        tied = true;
+                    }
+                }
+                long exhausted = approval ? 0L : size + unrankedTotal - counting;
+
+                int[] eliminatedNow = new int[0];
+                boolean decided = true;
+                if (method != TallyMethod.INSTANT_RUNOFF) {
+                    if (leader >= 0 && totals[leader] > 0 && !tied)
+                        winner = optionIds[leader];
+                } else if (counting > 0) {
+                    if (totals[leader] * 2 > counting || remaining == 1) {
+                        winner = optionIds[leader];
+                    } else {
+                        eliminatedNow = eliminate(totals, eliminated);
+                        decided = false;
+                    }
+                }
+                results.add(new TallyResult.Round(optionIds, totals, inRace, eliminatedNow, exhausted));
+                if (decided)
+                    break;
+            }
+            while (rounds.size() > results.size())
+                rounds.remove(rounds.size() - 1);
+            return new TallyResult(method, size + unrankedTotal, results, winner);
+        }
+
+        /**
+         * Eliminates the options without votes, or if every option has votes,
+         * the option with the fewest votes. Of several options with equally few
+         * votes, the one with the highest ID, which was added last, is
+         * eliminated.
+         */
+        private int[] eliminate(long[] totals, boolean[] eliminated) {
+            List<Integer> losers = new ArrayList<>();
+            int lowest = -1;
+            for (int index = 0; index < optionIds.length; index++) {
+                if (eliminated[index])
+                    continue;
+                if (totals[index] == 0)
+                    losers.add(index);
+                if (lowest < 0 || totals[index] <= totals[lowest])
+                    lowest = index;
+            }
+            if (losers.isEmpty())
+                losers.add(lowest);
+            int[] ids = new int[losers.size()];
+            for (int i = 0; i < ids.length; i++) {
+                eliminated[losers.get(i)] = true;
+                ids[i] = optionIds[losers.get(i)];
+            }
+            return ids;
+        }
+
+    }
+
+    /**
+     * The votes that the rankings give each option in a round, in which
+     * certain options have been eliminated.
+     */
+    private static final class RoundCount {
+
+        private final boolean[] eliminated;
+        private final long[] votes;
+
+        RoundCount(boolean[] eliminated, long[] votes) {
+            this.eliminated = eliminated;
+            this.votes = votes;
+        }
+
+    }
+
+    /**
+     * Counts a range of rankings, splitting it in halves that are counted in
+     * parallel while it is large.
+     */
+    private static final class CountTask extends RecursiveTask<long[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RankedBallots.Snapshot rankings;
+        private final int from;
+        private final int to;
+        private final int[] optionIds;
+        private final boolean[] eliminated;
+        private final boolean approval;
+
+        CountTask(RankedBallots.Snapshot rankings, int from, int to, int[] optionIds, boolean[] eliminated,
+                boolean approval) {
+            this.rankings = rankings;
+            this.from = from;
+            this.to = to;
+            this.optionIds = optionIds;
+            this.eliminated = eliminated;
+            this.approval = approval;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                CountTask left = new CountTask(rankings, from, middle, optionIds, eliminated, approval);
+                left.fork();
+                long[] votes = new CountTask(rankings, middle, to, optionIds, eliminated, approval).compute();
+                add(votes, left.join());
+                return votes;
+            }
+            long[] votes = new long[optionIds.length];
+            for (int ranking = from; ranking < to; ranking++) {
+                for (int position = rankings.start(ranking); position < rankings.end(ranking); position++) {
+                    int index = Arrays.binarySearch(optionIds, rankings.getPreference(position));
+                    if (index < 0 || eliminated[index])
+                        continue;
+                    votes[index]++;
+                    if (!approval)
+                        break;
+                }
+            }
+            return votes;
+        }
+
+    }
+
+}
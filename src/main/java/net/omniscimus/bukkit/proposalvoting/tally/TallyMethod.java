@@ -0,0 +1,56 @@
+package net.omniscimus.bukkit.proposalvoting.tally;
+
+/**
+ * A way of determining the result of a proposal from its rankings.
+ */
+public enum TallyMethod {
+
+    /**
+     * Every ranking counts for its first preference only. The option with the
+     * most votes wins.
+     */
+    PLURALITY("plurality"),
+    /**
+     * Every ranking counts for every option it lists, regardless of the order.
+     * The option with the most votes wins.
+     */
+    APPROVAL("approval"),
+    /**
+     * Every ranking counts for its highest preference that is still in the
+     * race. As long as no option has a majority, the option with the fewest
+     * votes is eliminated, and another round is counted.
+     */
+    INSTANT_RUNOFF("irv");
+
+    private final String name;
+
+    private TallyMethod(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of this method, as it is typed in commands.
+     * 
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets a method by its name.
+     * 
+     * @param name
+     *            The name of the method, as it is typed in commands.
+     * @return the method, or {@code null} if there is no method with this
+     *         name.
+     */
+    public static TallyMethod fromName(String name) {
+        for (TallyMethod method : values()) {
+            if (method.name.equalsIgnoreCase(name))
+                return method;
+        }
+        return null;
+    }
+
+}
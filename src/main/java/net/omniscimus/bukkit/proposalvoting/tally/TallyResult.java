@@ -0,0 +1,136 @@
+package net.omniscimus.bukkit.proposalvoting.tally;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a proposal, as determined by a {@link TallyMethod}: the votes
+ * on every option in every round that was counted, and the winner.
+ */
+public class TallyResult {
+
+    private final TallyMethod method;
+    private final long ballots;
+    private final List<Round> rounds;
+    private final Integer winner;
+
+    TallyResult(TallyMethod method, long ballots, List<Round> rounds, Integer winner) {
+        this.method = method;
+        this.ballots = ballots;
+        this.rounds = Collections.unmodifiableList(rounds);
+        this.winner = winner;
+    }
+
+    /**
+     * Gets the method by which this result was determined.
+     * 
+     * @return the TallyMethod.
+     */
+    public TallyMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * Gets the number of ballots that were counted.
+     * 
+     * @return the amount of ballots.
+     */
+    public long getBallots() {
+        return ballots;
+    }
+
+    /**
+     * Gets the rounds that were counted. Only instant-runoff voting has more
+     * than one.
+     * 
+     * @return the rounds, in the order in which they were counted.
+     */
+    public List<Round> getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Gets the option that has won.
+     * 
+     * @return the ID of the winning option, or {@code null} if no option has
+     *         won, e.g. because nobody has voted or because of a tie.
+     */
+    public Integer getWinner() {
+        return winner;
+    }
+
+    /**
+     * The votes on the options in one round of counting.
+     */
+    public static class Round {
+
+        private final int[] optionIds;
+        private final long[] votes;
+        private final boolean[] inRace;
+        private final int[] eliminated;
+        private final long exhausted;
+
+        Round(int[] optionIds, long[] votes, boolean[] inRace, int[] eliminated, long exhausted) {
+            this.optionIds = optionIds;
+            this.votes = votes;
+            this.inRace = inRace;
+            this.eliminated = eliminated;
+            this.exhausted = exhausted;
+        }
+
+        /**
+         * Gets the IDs of the options that were still in the race in this
+         * round.
+         * 
+         * @return the option IDs, in ascending order.
+         */
+        public int[] getOptionIds() {
+            int count = 0;
+            for (boolean running : inRace) {
+                if (running)
+                    count++;
+            }
+            int[] ids = new int[count];
+            int i = 0;
+            for (int index = 0; index < optionIds.length; index++) {
+                if (inRace[index])
+                    ids[i++] = optionIds[index];
+            }
+            return ids;
+        }
+
+        /**
+         * Gets the votes on an option in this round.
+         * 
+         * @param optionId
+         *            The ID of the option.
+         * @return the amount of votes; 0 if the option was not in the race.
+         */
+        public long getVotes(int optionId) {
+            int index = Arrays.binarySearch(optionIds, optionId);
+            return index >= 0 ? votes[index] : 0L;
+        }
+
+        /**
+         * Gets the options that were eliminated after this round.
+         * 
+         * @return the IDs of the eliminated options.
+         */
+        public int[] getEliminated() {
+            return eliminated.clone();
+        }
+
+        /**
+         * Gets the number of ballots that no longer counted in this round,
+         * because all options they ranked had been eliminated.
+         * 
+         * @return the amount of exhausted ballots.
+         */
+        public long getExhausted() {
+            return exhausted;
+        }
+
+    }
+
+}
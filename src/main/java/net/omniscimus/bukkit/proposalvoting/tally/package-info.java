@@ -0,0 +1,5 @@
+/**
+ * Contains the engine that determines the results of proposals from the
+ * rankings that have been cast on them.
+ */
+package net.omniscimus.bukkit.proposalvoting.tally;
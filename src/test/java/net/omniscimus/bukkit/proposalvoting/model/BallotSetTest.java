@@ -0,0 +1,213 @@
+package net.omniscimus.bukkit.proposalvoting.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/**
+ * Tests the compressed bitmap of the players who have voted.
+ */
+public class BallotSetTest {
+
+    /**
+     * The number of voters up to which a chunk is serialized as an array.
+     */
+    private static final int ARRAY_MAX = 4096;
+
+    @Test
+    public void claimsEachBallotOnce() {
+        BallotSet set = new BallotSet();
+        assertTrue(set.claim(7));
+        assertFalse(set.claim(7));
+        assertTrue(set.contains(7));
+        assertFalse(set.contains(8));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void convertsToBitmapAfterArrayMax() {
+        BallotSet set = new BallotSet();
+        for (int i = 0; i < ARRAY_MAX; i++)
+            assertTrue(set.claim(i * 2));
+        assertEquals(ARRAY_MAX, set.size());
+        // Chunk count, chunk number, type, cardinality and two bytes per voter.
+        assertEquals(4 + 4 + 1 + 2 + 2 * ARRAY_MAX, set.toByteArray().length);
+
+        assertTrue(set.claim(1));
+        assertEquals(ARRAY_MAX + 1, set.size());
+        // Chunk count, chunk number, type and 8 KiB of bits.
+        assertEquals(4 + 4 + 1 + 8192, set.toByteArray().length);
+        for (int i = 0; i < ARRAY_MAX; i++) {
+            assertTrue(set.contains(i * 2));
+            assertFalse(set.claim(i * 2));
+        }
+        assertTrue(set.contains(1));
+        assertFalse(set.contains(3));
+        assertFalse(set.contains(ARRAY_MAX * 2));
+        assertEquals(ARRAY_MAX + 1, set.size());
+    }
+
+    @Test
+    public void keepsChunksApart() {
+        BallotSet set = new BallotSet();
+        set.claim(5);
+        set.claim(65536 + 5);
+        set.claim(3 * 65536);
+        assertTrue(set.contains(65541));
+        assertFalse(set.contains(2 * 65536 + 5));
+        assertEquals(list(5, 65541, 196608), members(set));
+    }
+
+    @Test
+    public void claimsConcurrently() throws InterruptedException {
+        int players = 3 * 65536 + 1000;
+        int threads = 8;
+        BallotSet set = new BallotSet();
+        AtomicIntegerArray claims = new AtomicIntegerArray(players);
+        AtomicInteger claimed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * 997;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // Every thread tries every player, starting at a different one.
+                for (int i = 0; i < players; i++) {
+                    int player = (offset + i) % players;
+                    if (set.claim(player)) {
+                        claims.incrementAndGet(player);
+                        claimed.incrementAndGet();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+
+        assertEquals(players, claimed.get());
+        assertEquals(players, set.size());
+        for (int player = 0; player < players; player++) {
+            assertEquals("claims of player " + player, 1, claims.get(player));
+            assertTrue(set.contains(player));
+        }
+    }
+
+    @Test
+    public void andNotRemovesTheOtherVoters() {
+        BallotSet a = new BallotSet();
+        BallotSet b = new BallotSet();
+        for (int player : new int[] { 1, 2, 3, 70000, 70001, 200000 })
+            a.claim(player);
+        for (int player : new int[] { 2, 5, 70001 })
+            b.claim(player);
+        BallotSet difference = a.andNot(b);
+        assertEquals(list(1, 3, 70000, 200000), members(difference));
+        assertEquals(4, difference.size());
+        assertEquals(list(5), members(b.andNot(a)));
+        assertEquals(0, a.andNot(a).size());
+        // The operands are left alone.
+        assertEquals(6, a.size());
+        assertEquals(3, b.size());
+    }
+
+    @Test
+    public void andNotOfBitmaps() {
+        BallotSet a = new BallotSet();
+        BallotSet b = new BallotSet();
+        for (int player = 0; player < 10000; player++) {
+            a.claim(player);
+            if (player % 3 == 0)
+                b.claim(player);
+        }
+        BallotSet difference = a.andNot(b);
+        assertEquals(10000 - 3334, difference.size());
+        for (int player = 0; player < 10000; player++)
+            assertEquals(player % 3 != 0, difference.contains(player));
+    }
+
+    @Test
+    public void countsTheCombinations() {
+        BallotSet a = new BallotSet();
+        BallotSet b = new BallotSet();
+        for (int player = 0; player < 6000; player++)
+            a.claim(player);
+        for (int player = 5000; player < 70000; player += 2)
+            b.claim(player);
+        assertEquals(500, a.and(b).size());
+        assertEquals(6000 + 32500 - 500, a.or(b).size());
+        assertEquals(5500, a.andNot(b).size());
+        assertEquals(32000, b.andNot(a).size());
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        BallotSet set = new BallotSet();
+        // An array chunk, an empty chunk and a bitmap chunk.
+        for (int player = 0; player < 100; player += 3)
+            set.claim(player);
+        for (int player = 2 * 65536; player < 2 * 65536 + 5000; player++)
+            set.claim(player);
+        BallotSet copy = BallotSet.fromByteArray(set.toByteArray());
+        assertEquals(set.size(), copy.size());
+        assertEquals(members(set), members(copy));
+        assertArrayEquals(set.toByteArray(), copy.toByteArray());
+        // The copy can still be voted on.
+        assertFalse(copy.claim(2 * 65536));
+        assertTrue(copy.claim(65536));
+        assertEquals(set.size() + 1, copy.size());
+    }
+
+    @Test
+    public void roundTripsAnEmptySet() throws IOException {
+        BallotSet copy = BallotSet.fromByteArray(new BallotSet().toByteArray());
+        assertEquals(0, copy.size());
+        assertEquals(list(), members(copy));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAnUnknownContainer() throws IOException {
+        BallotSet.fromByteArray(new byte[] { 0, 0, 0, 1, 0, 0, 0, 0, 7 });
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedData() throws IOException {
+        BallotSet set = new BallotSet();
+        set.claim(1);
+        set.claim(2);
+        byte[] data = set.toByteArray();
+        byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        BallotSet.fromByteArray(truncated);
+    }
+
+    private static List<Integer> members(BallotSet set) {
+        List<Integer> members = new ArrayList<>();
+        set.forEach(members::add);
+        return members;
+    }
+
+    private static List<Integer> list(int... values) {
+        List<Integer> list = new ArrayList<>();
+        for (int value : values)
+            list.add(value);
+        return list;
+    }
+
+}
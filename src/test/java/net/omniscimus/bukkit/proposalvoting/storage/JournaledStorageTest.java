@@ -0,0 +1,290 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+import org.bukkit.Server;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.omniscimus.bukkit.proposalvoting.exceptions.StorageException;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalOption;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalRegistry;
+import net.omniscimus.bukkit.proposalvoting.model.RankedBallots;
+import net.omniscimus.bukkit.proposalvoting.model.VoterRegistry;
+
+/**
+ * Tests recovering from a crash by replaying the journal on top of the
+ * snapshot.
+ */
+public class JournaledStorageTest {
+
+    /**
+     * Long enough for the journal never to be synced or compacted on its own
+     * during a test.
+     */
+    private static final long HOUR = 3600000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private Logger logger;
+    private Plugin plugin;
+    private PlayerDictionary dictionary;
+    private ProposalTextStore texts;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("journal");
+        logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        BukkitTask task = stub(BukkitTask.class, "cancel", null);
+        BukkitScheduler scheduler = stub(BukkitScheduler.class, "runTask", task, "runTaskTimer", task);
+        Server server = stub(Server.class, "getScheduler", scheduler);
+        plugin = stub(Plugin.class, "getLogger", logger, "getName", "ProposalVoting", "getServer", server);
+        dictionary = new PlayerDictionary(folder.newFile("players.dat"));
+        dictionary.open();
+        texts = new ProposalTextStore(folder.newFile("proposal-texts.dat"));
+        texts.open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        texts.close();
+        dictionary.close();
+    }
+
+    @Test
+    public void doesNotCountVotesInTheSnapshotTwice() throws IOException, StorageException {
+        MemorySnapshot snapshot = new MemorySnapshot();
+        UUID[] players = { new UUID(0L, 1L), new UUID(0L, 2L), new UUID(0L, 3L), new UUID(0L, 4L) };
+
+        // The first run crashes after writing a snapshot, but before deleting
+        // the segment that it covers.
+        VoteJournal journal = new VoteJournal(directory, logger);
+        journal.open();
+        JournaledStorage storage = new JournaledStorage(plugin, snapshot, journal, HOUR, HOUR);
+        ProposalRegistry proposals = new ProposalRegistry(storage, dictionary, texts);
+        VoterRegistry voters = new VoterRegistry(storage, dictionary);
+        snapshot.load(proposals, voters);
+        Proposal proposal = proposals.get(1);
+        assertTrue(proposal.castVote(voters.getIndex(players[0]), new int[] { 1, 2 }));
+        assertTrue(proposal.castVote(voters.getIndex(players[1]), new int[] { 1 }));
+        assertTrue(proposal.castVote(voters.getIndex(players[2]), new int[] { 2, 1 }));
+        assertEquals(1L, journal.rotate());
+        snapshot.flushAsync().join();
+        assertTrue(proposal.castVote(voters.getIndex(players[3]), new int[] { 2 }));
+        journal.sync();
+        journal.close();
+
+        VoteJournal recovered = new VoteJournal(directory, logger);
+        JournaledStorage restarted = new JournaledStorage(plugin, snapshot, recovered, HOUR, HOUR);
+        proposals = new ProposalRegistry(restarted, dictionary, texts);
+        voters = new VoterRegistry(restarted, dictionary);
+        restarted.open();
+        restarted.load(proposals, voters);
+        proposal = proposals.get(1);
+        assertEquals(2, proposal.getOption(1).getVotes());
+        assertEquals(2, proposal.getOption(2).getVotes());
+        assertEquals(4, proposal.getRankings().size());
+        assertEquals(4, proposal.getBallots().size());
+        for (UUID player : players)
+            assertTrue(proposal.hasVoted(voters.getIndex(player)));
+        // Only the vote that was missing from the snapshot was added to it,
+        // after which the replayed segments were deleted.
+        assertEquals(4, snapshot.cast.size());
+        assertFalse(new File(directory, "journal-1.log").exists());
+        assertFalse(new File(directory, "journal-2.log").exists());
+        restarted.close();
+
+        assertEquals(4, snapshot.saved.size());
+    }
+
+    @Test
+    public void replaysTheSameJournalOnlyOnce() throws IOException, StorageException {
+        MemorySnapshot snapshot = new MemorySnapshot();
+        UUID player = new UUID(0L, 1L);
+        VoteJournal journal = new VoteJournal(directory, logger);
+        journal.open();
+        JournaledStorage storage = new JournaledStorage(plugin, snapshot, journal, HOUR, HOUR);
+        ProposalRegistry proposals = new ProposalRegistry(storage, dictionary, texts);
+        VoterRegistry voters = new VoterRegistry(storage, dictionary);
+        snapshot.load(proposals, voters);
+        assertTrue(proposals.get(1).castVote(voters.getIndex(player), new int[] { 2 }));
+        // The same vote, as if it had been journaled twice.
+        journal.appendVote(1, new int[] { 1 }, player);
+        journal.close();
+
+        VoteJournal recovered = new VoteJournal(directory, logger);
+        JournaledStorage restarted = new JournaledStorage(plugin, snapshot, recovered, HOUR, HOUR);
+        proposals = new ProposalRegistry(restarted, dictionary, texts);
+        voters = new VoterRegistry(restarted, dictionary);
+        restarted.open();
+        restarted.load(proposals, voters);
+        Proposal proposal = proposals.get(1);
+        assertEquals(0, proposal.getOption(1).getVotes());
+        assertEquals(1, proposal.getOption(2).getVotes());
+        assertEquals(1, proposal.getBallots().size());
+        restarted.close();
+    }
+
+    /**
+     * Creates an implementation of an interface that gives fixed answers, and
+     * fails on any method without one.
+     *
+     * @param type
+     *            The interface.
+     * @param answers
+     *            The names of the methods, each followed by its answer.
+     * @return the implementation.
+     */
+    private static <T> T stub(Class<T> type, Object... answers) {
+        Map<String, Object> byName = new HashMap<>();
+        for (int i = 0; i < answers.length; i += 2)
+            byName.put((String) answers[i], answers[i + 1]);
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    if (byName.containsKey(method.getName()))
+                        return byName.get(method.getName());
+                    switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return type.getSimpleName();
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }));
+    }
+
+    /**
+     * A Storage that keeps the votes of a single proposal in memory. What has
+     * been flushed stays when the journal is reopened, like a file would.
+     */
+    private static final class MemorySnapshot implements Storage {
+
+        private static final class Vote {
+
+            private final UUID playerId;
+            private final int[] ranking;
+
+            private Vote(UUID playerId, int[] ranking) {
+                this.playerId = playerId;
+                this.ranking = ranking;
+            }
+
+        }
+
+        /**
+         * The votes that have been cast since the snapshot was loaded.
+         */
+        private final List<Vote> cast = new ArrayList<>();
+        /**
+         * The votes in the last snapshot that was written.
+         */
+        private List<Vote> saved = new ArrayList<>();
+
+        @Override
+        public void open() {
+        }
+
+        /**
+         * Loads proposal 1, with options 1 and 2, and the votes that were
+         * saved.
+         */
+        @Override
+        public synchronized void load(ProposalRegistry proposals, VoterRegistry voters) {
+            cast.clear();
+            cast.addAll(saved);
+            Proposal proposal = proposals.load(1);
+            proposal.load(null, null, true);
+            int[] votes = new int[3];
+            RankedBallots rankings = new RankedBallots();
+            for (Vote vote : saved) {
+                votes[vote.ranking[0]]++;
+                proposal.loadPlayerVoted(vote.playerId);
+                rankings.add(vote.ranking);
+            }
+            proposal.loadOption(1, null, votes[1]);
+            proposal.loadOption(2, null, votes[2]);
+            proposal.loadRankings(rankings);
+        }
+
+        @Override
+        public Map<String, Map<UUID, Long>> getLegacyPlaytime() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public void removeLegacyPlaytime() {
+        }
+
+        @Override
+        public void proposalChanged(Proposal proposal) {
+        }
+
+        @Override
+        public void optionChanged(Proposal proposal, ProposalOption option) {
+        }
+
+        @Override
+        public void proposalIdReserved(int proposalId) {
+        }
+
+        @Override
+        public void proposalRemoved(int proposalId) {
+        }
+
+        @Override
+        public synchronized void voteCast(Proposal proposal, ProposalOption option, int[] ranking, UUID playerId) {
+            cast.add(new Vote(playerId, ranking));
+        }
+
+        @Override
+        public void ballotsChanged(Proposal proposal) {
+        }
+
+        @Override
+        public void optInChanged(UUID playerId, boolean optIn) {
+        }
+
+        @Override
+        public synchronized CompletableFuture<Void> flushAsync() {
+            saved = new ArrayList<>(cast);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void flush() {
+            flushAsync();
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
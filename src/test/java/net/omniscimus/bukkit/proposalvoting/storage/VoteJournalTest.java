@@ -0,0 +1,222 @@
+package net.omniscimus.bukkit.proposalvoting.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that the journal gives back what was written to it, and no more than
+ * what was written completely.
+ */
+public class VoteJournalTest {
+
+    private static final UUID PLAYER = new UUID(1L, 2L);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysTheClosedSegments() throws IOException {
+        File directory = folder.newFolder();
+        VoteJournal journal = open(directory);
+        journal.appendVote(1, new int[] { 2, 3 }, PLAYER);
+        journal.appendOptIn(PLAYER, false);
+        assertEquals(1L, journal.rotate());
+        journal.appendVote(4, new int[] { 5 }, PLAYER);
+        // The active segment is not replayed, even once it has been synced.
+        journal.sync();
+        assertEquals(Arrays.asList("vote 1 [2, 3] " + PLAYER, "optIn " + PLAYER + " false"), replay(journal));
+        journal.close();
+
+        VoteJournal reopened = open(directory);
+        assertEquals(Arrays.asList("vote 1 [2, 3] " + PLAYER, "optIn " + PLAYER + " false",
+                "vote 4 [5] " + PLAYER), replay(reopened));
+        reopened.close();
+    }
+
+    @Test
+    public void ignoresATruncatedLastRecord() throws IOException {
+        File directory = folder.newFolder();
+        VoteJournal journal = open(directory);
+        File segment = new File(directory, "journal-1.log");
+        List<Long> ends = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            journal.appendVote(1, new int[] { i, 7 }, PLAYER);
+            journal.sync();
+            ends.add(segment.length());
+        }
+        journal.close();
+        byte[] data = Files.readAllBytes(segment.toPath());
+
+        // Cut the segment at every possible byte, as a crash while writing
+        // could.
+        for (int length = 0; length <= data.length; length++) {
+            File torn = folder.newFolder();
+            Files.write(new File(torn, "journal-1.log").toPath(), Arrays.copyOf(data, length));
+            VoteJournal reopened = open(torn);
+            List<String> records = replay(reopened);
+            reopened.close();
+            int complete = 0;
+            while (complete < ends.size() && ends.get(complete) <= length)
+                complete++;
+            assertEquals("records in " + length + " bytes", complete, records.size());
+            for (int i = 0; i < complete; i++)
+                assertEquals("vote 1 [" + i + ", 7] " + PLAYER, records.get(i));
+        }
+    }
+
+    @Test
+    public void stopsTheSegmentAtACorruptRecord() throws IOException {
+        assertEquals(Arrays.asList("optIn " + PLAYER + " true", "optIn " + PLAYER + " false"),
+                replayCorrupted(0));
+    }
+
+    @Test
+    public void stopsTheSegmentAtACorruptChecksum() throws IOException {
+        assertEquals(Arrays.asList("optIn " + PLAYER + " true", "optIn " + PLAYER + " false"),
+                replayCorrupted(18 + 3));
+    }
+
+    /**
+     * Writes three opt-in records to a segment and one to the next, flips a
+     * byte of the second record, and replays the journal.
+     *
+     * @param offset
+     *            The offset of the byte to flip in the second record, past
+     *            its length.
+     * @return the records that were replayed.
+     */
+    private List<String> replayCorrupted(int offset) throws IOException {
+        File directory = folder.newFolder();
+        VoteJournal journal = open(directory);
+        File segment = new File(directory, "journal-1.log");
+        journal.appendOptIn(PLAYER, true);
+        journal.sync();
+        long second = segment.length();
+        journal.appendOptIn(PLAYER, true);
+        journal.appendOptIn(PLAYER, true);
+        journal.rotate();
+        journal.appendOptIn(PLAYER, false);
+        journal.close();
+
+        byte[] data = Files.readAllBytes(segment.toPath());
+        data[(int) second + 2 + offset] ^= 0x10;
+        Files.write(segment.toPath(), data);
+        VoteJournal reopened = open(directory);
+        List<String> records = replay(reopened);
+        reopened.close();
+        return records;
+    }
+
+    @Test
+    public void keepsEveryRecordWhileRotatingAndSyncing() throws Exception {
+        File directory = folder.newFolder();
+        VoteJournal journal = open(directory);
+        int records = 20000;
+        AtomicBoolean appending = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Long> rotated = Collections.synchronizedList(new ArrayList<>());
+
+        Thread syncer = new Thread(() -> {
+            try {
+                while (appending.get())
+                    journal.sync();
+            } catch (IOException e) {
+                failure.set(e);
+            }
+        });
+        Thread rotator = new Thread(() -> {
+            try {
+                while (appending.get()) {
+                    rotated.add(journal.rotate());
+                    Thread.sleep(1L);
+                }
+            } catch (IOException | InterruptedException e) {
+                failure.set(e);
+            }
+        });
+        syncer.start();
+        rotator.start();
+        for (int i = 0; i < records; i++)
+            journal.appendVote(1, new int[] { i }, PLAYER);
+        appending.set(false);
+        syncer.join();
+        rotator.join();
+        journal.close();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        assertFalse(rotated.isEmpty());
+        for (int i = 0; i < rotated.size(); i++)
+            assertEquals(i + 1L, (long) rotated.get(i));
+        VoteJournal reopened = open(directory);
+        List<String> replayed = replay(reopened);
+        reopened.close();
+        assertEquals(records, replayed.size());
+        for (int i = 0; i < records; i++)
+            assertEquals("vote 1 [" + i + "] " + PLAYER, replayed.get(i));
+    }
+
+    @Test
+    public void deletesOnlyTheCoveredSegments() throws IOException {
+        File directory = folder.newFolder();
+        VoteJournal journal = open(directory);
+        journal.appendOptIn(PLAYER, true);
+        long covered = journal.rotate();
+        journal.appendOptIn(PLAYER, false);
+        journal.rotate();
+        journal.deleteUpTo(covered);
+        assertFalse(new File(directory, "journal-1.log").exists());
+        assertTrue(new File(directory, "journal-2.log").exists());
+        assertEquals(Arrays.asList("optIn " + PLAYER + " false"), replay(journal));
+        journal.close();
+    }
+
+    private static VoteJournal open(File directory) throws IOException {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        VoteJournal journal = new VoteJournal(directory, logger);
+        journal.open();
+        return journal;
+    }
+
+    private static List<String> replay(VoteJournal journal) {
+        List<String> records = new ArrayList<>();
+        journal.replay(new VoteJournal.Visitor() {
+
+            @Override
+            public void vote(int proposalId, int[] ranking, UUID playerId) {
+                records.add("vote " + proposalId + " " + Arrays.toString(ranking) + " " + playerId);
+            }
+
+            @Override
+            public void optIn(UUID playerId, boolean optIn) {
+                records.add("optIn " + playerId + " " + optIn);
+            }
+
+            @Override
+            public void playtime(UUID playerId, String year_week, long playtime) {
+                records.add("playtime " + playerId + " " + year_week + " " + playtime);
+            }
+
+        });
+        return records;
+    }
+
+}
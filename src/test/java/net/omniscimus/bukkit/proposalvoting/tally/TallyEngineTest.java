@@ -0,0 +1,357 @@
+package net.omniscimus.bukkit.proposalvoting.tally;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.omniscimus.bukkit.proposalvoting.model.ModelListener;
+import net.omniscimus.bukkit.proposalvoting.model.Proposal;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalOption;
+import net.omniscimus.bukkit.proposalvoting.model.ProposalRegistry;
+import net.omniscimus.bukkit.proposalvoting.storage.PlayerDictionary;
+import net.omniscimus.bukkit.proposalvoting.storage.ProposalTextStore;
+
+/**
+ * Tests the counting of plurality, approval and instant-runoff results, and
+ * that neither the cached rounds nor the parallel count change them.
+ */
+public class TallyEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PlayerDictionary dictionary;
+    private ProposalTextStore texts;
+    private ProposalRegistry registry;
+    private ForkJoinPool pool;
+    private int voters;
+
+    @Before
+    public void setUp() throws IOException {
+        dictionary = new PlayerDictionary(folder.newFile("players.dat"));
+        dictionary.open();
+        texts = new ProposalTextStore(folder.newFile("proposal-texts.dat"));
+        texts.open();
+        registry = new ProposalRegistry(new IgnoringListener(), dictionary, texts);
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        texts.close();
+        dictionary.close();
+    }
+
+    @Test
+    public void pluralityCountsFirstPreferences() {
+        Proposal proposal = proposal(1, 1, 2, 3);
+        vote(proposal, 1, 2);
+        vote(proposal, 1);
+        vote(proposal, 2, 1);
+        vote(proposal, 3);
+        TallyResult result = new TallyEngine(pool).tally(proposal, TallyMethod.PLURALITY);
+        assertEquals(1, result.getRounds().size());
+        assertEquals("1=2 2=1 3=1", votes(result.getRounds().get(0)));
+        assertEquals(Integer.valueOf(1), result.getWinner());
+        assertEquals(4, result.getBallots());
+    }
+
+    @Test
+    public void pluralityHasNoWinnerOnATie() {
+        Proposal proposal = proposal(1, 1, 2);
+        vote(proposal, 1);
+        vote(proposal, 2);
+        assertNull(new TallyEngine(pool).tally(proposal, TallyMethod.PLURALITY).getWinner());
+        assertNull(new TallyEngine(pool).tally(proposal(2, 1, 2), TallyMethod.PLURALITY).getWinner());
+    }
+
+    @Test
+    public void approvalCountsEveryListedOption() {
+        Proposal proposal = proposal(1, 1, 2, 3);
+        vote(proposal, 1, 2);
+        vote(proposal, 3, 2);
+        vote(proposal, 2);
+        TallyResult result = new TallyEngine(pool).tally(proposal, TallyMethod.APPROVAL);
+        assertEquals("1=1 2=3 3=1", votes(result.getRounds().get(0)));
+        assertEquals(0, result.getRounds().get(0).getExhausted());
+        assertEquals(Integer.valueOf(2), result.getWinner());
+    }
+
+    @Test
+    public void instantRunoffEliminatesInOrder() {
+        Proposal proposal = proposal(1, 1, 2, 3, 4);
+        for (int i = 0; i < 4; i++)
+            vote(proposal, 1);
+        for (int i = 0; i < 3; i++)
+            vote(proposal, 2, 1);
+        for (int i = 0; i < 2; i++)
+            vote(proposal, 3, 2);
+        vote(proposal, 4, 3);
+
+        TallyResult result = new TallyEngine(pool).tally(proposal, TallyMethod.INSTANT_RUNOFF);
+        List<TallyResult.Round> rounds = result.getRounds();
+        assertEquals(3, rounds.size());
+        assertEquals("1=4 2=3 3=2 4=1", votes(rounds.get(0)));
+        assertArrayEquals(new int[] { 4 }, rounds.get(0).getEliminated());
+        // The ballot of 4 moves on to 3, which ties with 2; 3 has the highest
+        // ID, so it goes.
+        assertEquals("1=4 2=3 3=3", votes(rounds.get(1)));
+        assertArrayEquals(new int[] { 3 }, rounds.get(1).getEliminated());
+        // The ballots of 3 move on to 2, except the one that ranked 4 and 3
+        // only, which is exhausted.
+        assertEquals("1=4 2=5", votes(rounds.get(2)));
+        assertArrayEquals(new int[0], rounds.get(2).getEliminated());
+        assertEquals(1, rounds.get(2).getExhausted());
+        assertEquals(Integer.valueOf(2), result.getWinner());
+        assertEquals(10, result.getBallots());
+    }
+
+    @Test
+    public void instantRunoffEliminatesTheHighestIdOnATie() {
+        Proposal proposal = proposal(1, 1, 2, 3);
+        vote(proposal, 1);
+        vote(proposal, 1);
+        vote(proposal, 2);
+        vote(proposal, 3);
+        TallyResult result = new TallyEngine(pool).tally(proposal, TallyMethod.INSTANT_RUNOFF);
+        assertArrayEquals(new int[] { 3 }, result.getRounds().get(0).getEliminated());
+        assertEquals("1=2 2=1", votes(result.getRounds().get(1)));
+        assertEquals(1, result.getRounds().get(1).getExhausted());
+        assertEquals(Integer.valueOf(1), result.getWinner());
+    }
+
+    @Test
+    public void instantRunoffEliminatesOptionsWithoutVotesTogether() {
+        Proposal proposal = proposal(1, 1, 2, 3, 4);
+        vote(proposal, 1);
+        vote(proposal, 2);
+        TallyResult result = new TallyEngine(pool).tally(proposal, TallyMethod.INSTANT_RUNOFF);
+        List<TallyResult.Round> rounds = result.getRounds();
+        assertArrayEquals(new int[] { 3, 4 }, rounds.get(0).getEliminated());
+        assertArrayEquals(new int[] { 2 }, rounds.get(1).getEliminated());
+        assertEquals(3, rounds.size());
+        assertEquals(Integer.valueOf(1), result.getWinner());
+    }
+
+    @Test
+    public void unrankedVotesCountForTheirOptionOnly() {
+        Proposal proposal = registry.load(1);
+        proposal.load(null, null, true);
+        // Votes from before rankings were stored: one on option 3.
+        proposal.loadOption(1, null, 0);
+        proposal.loadOption(2, null, 0);
+        proposal.loadOption(3, null, 1);
+        vote(proposal, 1);
+        vote(proposal, 1);
+        vote(proposal, 2);
+        vote(proposal, 2);
+
+        TallyResult plurality = new TallyEngine(pool).tally(proposal, TallyMethod.PLURALITY);
+        assertEquals("1=2 2=2 3=1", votes(plurality.getRounds().get(0)));
+        assertEquals(5, plurality.getBallots());
+
+        TallyResult runoff = new TallyEngine(pool).tally(proposal, TallyMethod.INSTANT_RUNOFF);
+        List<TallyResult.Round> rounds = runoff.getRounds();
+        assertArrayEquals(new int[] { 3 }, rounds.get(0).getEliminated());
+        // The unranked vote has no next preference.
+        assertEquals("1=2 2=2", votes(rounds.get(1)));
+        assertEquals(1, rounds.get(1).getExhausted());
+        assertArrayEquals(new int[] { 2 }, rounds.get(1).getEliminated());
+        assertEquals(Integer.valueOf(1), runoff.getWinner());
+        assertEquals(5, runoff.getBallots());
+    }
+
+    @Test
+    public void cachedRoundsMatchARecount() {
+        Proposal proposal = proposal(1, 1, 2, 3, 4, 5);
+        TallyEngine cached = new TallyEngine(pool);
+        Random random = new Random(7L);
+        for (int step = 0; step < 60; step++) {
+            // Enough new votes per step to change which option goes first.
+            for (int i = random.nextInt(20); i >= 0; i--)
+                vote(proposal, randomRanking(random, 5));
+            for (TallyMethod method : TallyMethod.values()) {
+                String recount = describe(new TallyEngine(pool).tally(proposal, method));
+                assertEquals("step " + step + ", " + method, recount, describe(cached.tally(proposal, method)));
+            }
+        }
+    }
+
+    @Test
+    public void parallelCountMatchesASequentialCount() {
+        Proposal proposal = proposal(1, 1, 2, 3, 4, 5, 6);
+        Random random = new Random(11L);
+        List<int[]> rankings = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            int[] ranking = randomRanking(random, 6);
+            // Skew the first preferences, so that the rounds differ.
+            if (random.nextInt(4) == 0)
+                ranking = new int[] { 1 + random.nextInt(2) };
+            rankings.add(ranking);
+            vote(proposal, ranking);
+        }
+        TallyResult result = new TallyEngine(pool).tally(proposal, TallyMethod.INSTANT_RUNOFF);
+        assertEquals(sequentialRunoff(rankings, new int[] { 1, 2, 3, 4, 5, 6 }), describe(result));
+        assertEquals(describe(result), describe(new TallyEngine(new ForkJoinPool(1)).tally(proposal,
+                TallyMethod.INSTANT_RUNOFF)));
+    }
+
+    /**
+     * Counts instant-runoff rounds one ranking at a time, as a reference.
+     */
+    private static String sequentialRunoff(List<int[]> rankings, int[] optionIds) {
+        StringBuilder description = new StringBuilder();
+        boolean[] eliminated = new boolean[optionIds.length];
+        while (true) {
+            long[] totals = new long[optionIds.length];
+            for (int[] ranking : rankings) {
+                for (int optionId : ranking) {
+                    int index = optionId - optionIds[0];
+                    if (!eliminated[index]) {
+                        totals[index]++;
+                        break;
+                    }
+                }
+            }
+            long counting = 0;
+            int remaining = 0;
+            int leader = -1;
+            int lowest = -1;
+            List<Integer> losers = new ArrayList<>();
+            for (int index = 0; index < optionIds.length; index++) {
+                if (eliminated[index])
+                    continue;
+                counting += totals[index];
+                remaining++;
+                if (leader < 0 || totals[index] > totals[leader])
+                    leader = index;
+                if (lowest < 0 || totals[index] <= totals[lowest])
+                    lowest = index;
+                if (totals[index] == 0)
+                    losers.add(optionIds[index]);
+            }
+            boolean decided = totals[leader] * 2 > counting || remaining == 1;
+            if (!decided && losers.isEmpty())
+                losers.add(optionIds[lowest]);
+            description.append('[');
+            for (int index = 0; index < optionIds.length; index++) {
+                if (!eliminated[index])
+                    description.append(' ').append(optionIds[index]).append('=').append(totals[index]);
+            }
+            description.append(" out ").append(decided ? "[]" : losers.toString());
+            description.append(" exhausted ").append(rankings.size() - counting).append(']');
+            if (decided) {
+                description.append(" winner ").append(optionIds[leader]);
+                break;
+            }
+            for (int optionId : losers)
+                eliminated[optionId - optionIds[0]] = true;
+        }
+        return description.append(" ballots ").append(rankings.size()).toString();
+    }
+
+    private Proposal proposal(int id, int... optionIds) {
+        Proposal proposal = registry.load(id);
+        proposal.load(null, null, true);
+        for (int optionId : optionIds)
+            proposal.loadOption(optionId, null, 0);
+        return proposal;
+    }
+
+    /**
+     * Casts a vote of a new player.
+     */
+    private void vote(Proposal proposal, int... ranking) {
+        int player = dictionary.getOrAssignIndex(new UUID(0L, ++voters));
+        if (!proposal.castVote(player, ranking))
+            throw new IllegalStateException("The vote was not cast");
+    }
+
+    private static int[] randomRanking(Random random, int options) {
+        List<Integer> left = new ArrayList<>();
+        for (int optionId = 1; optionId <= options; optionId++)
+            left.add(optionId);
+        int[] ranking = new int[1 + random.nextInt(options)];
+        for (int i = 0; i < ranking.length; i++)
+            ranking[i] = left.remove(random.nextInt(left.size()));
+        return ranking;
+    }
+
+    private static String votes(TallyResult.Round round) {
+        StringBuilder votes = new StringBuilder();
+        for (int optionId : round.getOptionIds()) {
+            if (votes.length() > 0)
+                votes.append(' ');
+            votes.append(optionId).append('=').append(round.getVotes(optionId));
+        }
+        return votes.toString();
+    }
+
+    /**
+     * Describes a result in the same format as
+     * {@link #sequentialRunoff(List, int[])}.
+     */
+    private static String describe(TallyResult result) {
+        StringBuilder description = new StringBuilder();
+        for (TallyResult.Round round : result.getRounds()) {
+            description.append("[ ").append(votes(round)).append(" out [");
+            int[] eliminated = round.getEliminated();
+            for (int i = 0; i < eliminated.length; i++)
+                description.append(i == 0 ? "" : ", ").append(eliminated[i]);
+            description.append("] exhausted ").append(round.getExhausted()).append(']');
+        }
+        if (result.getWinner() != null)
+            description.append(" winner ").append(result.getWinner());
+        return description.append(" ballots ").append(result.getBallots()).toString();
+    }
+
+    /**
+     * A listener that ignores every change, as there is no storage.
+     */
+    private static final class IgnoringListener implements ModelListener {
+
+        @Override
+        public void proposalChanged(Proposal proposal) {
+        }
+
+        @Override
+        public void optionChanged(Proposal proposal, ProposalOption option) {
+        }
+
+        @Override
+        public void proposalIdReserved(int proposalId) {
+        }
+
+        @Override
+        public void proposalRemoved(int proposalId) {
+        }
+
+        @Override
+        public void voteCast(Proposal proposal, ProposalOption option, int[] ranking, UUID playerId) {
+        }
+
+        @Override
+        public void ballotsChanged(Proposal proposal) {
+        }
+
+        @Override
+        public void optInChanged(UUID playerId, boolean optIn) {
+        }
+
+    }
+
+}